@@ -45,7 +45,6 @@ import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.Outlink;
-import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.persistence.Status;
@@ -63,7 +62,7 @@ public class FeedParserBolt extends StatusEmitterBolt {
 
     private boolean sniffWhenNoMDKey = false;
 
-    private ParseFilter parseFilters;
+    private ParseFilters parseFilters;
     private int filterHoursSincePub = -1;
 
     private String protocolMDprefix;
@@ -150,8 +149,7 @@ public class FeedParserBolt extends StatusEmitterBolt {
 
         // send to status stream
         for (Outlink ol : parse.getOutlinks()) {
-            Values v = new Values(ol.getTargetURL(), ol.getMetadata(), Status.DISCOVERED);
-            collector.emit(Constants.StatusStreamName, tuple, v);
+            emitOutlink(tuple, ol);
         }
 
         LOG.info("Feed parser done {}", url);
@@ -231,6 +229,7 @@ public class FeedParserBolt extends StatusEmitterBolt {
         sniffWhenNoMDKey = ConfUtils.getBoolean(stormConf, "feed.sniffContent", false);
         filterHoursSincePub = ConfUtils.getInt(stormConf, "feed.filter.hours.since.published", -1);
         parseFilters = ParseFilters.fromConf(stormConf);
+        parseFilters.registerMetrics(context);
         protocolMDprefix =
                 ConfUtils.getString(stormConf, ProtocolResponse.PROTOCOL_MD_PREFIX_PARAM, "");
     }
@@ -243,6 +242,7 @@ public class FeedParserBolt extends StatusEmitterBolt {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         if (parseFilters != null) {
             parseFilters.cleanup();
         }
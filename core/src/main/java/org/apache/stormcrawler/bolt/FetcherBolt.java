@@ -16,7 +16,6 @@
  */
 package org.apache.stormcrawler.bolt;
 
-import crawlercommons.domains.PaidLevelDomain;
 import crawlercommons.robots.BaseRobotRules;
 import java.io.File;
 import java.net.InetAddress;
@@ -59,6 +58,8 @@ import org.apache.stormcrawler.protocol.ProtocolFactory;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
 import org.apache.stormcrawler.protocol.RobotRules;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.PaidLevelDomains;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.apache.stormcrawler.util.PerSecondReducer;
 import org.slf4j.LoggerFactory;
 
@@ -126,11 +127,13 @@ public class FetcherBolt extends StatusEmitterBolt {
 
         String queueID;
         String url;
+        ParsedURL u;
         Tuple t;
         long creationTime;
 
-        private FetchItem(String url, Tuple t, String queueID) {
-            this.url = url;
+        private FetchItem(ParsedURL u, Tuple t, String queueID) {
+            this.url = u.toString();
+            this.u = u;
             this.queueID = queueID;
             this.t = t;
             this.creationTime = System.currentTimeMillis();
@@ -140,7 +143,7 @@ public class FetcherBolt extends StatusEmitterBolt {
          * Create an item. Queue id will be created based on <code>queueMode</code> argument, either
          * as a protocol + hostname pair, protocol + IP address pair or protocol+domain pair.
          */
-        public static FetchItem create(URL u, String url, Tuple t, String queueMode) {
+        public static FetchItem create(ParsedURL u, Tuple t, String queueMode) {
 
             String queueID;
 
@@ -152,7 +155,7 @@ public class FetcherBolt extends StatusEmitterBolt {
             }
             if (StringUtils.isNotBlank(key)) {
                 queueID = key.toLowerCase(Locale.ROOT);
-                return new FetchItem(url, t, queueID);
+                return new FetchItem(u, t, queueID);
             }
 
             if (FetchItemQueues.QUEUE_MODE_IP.equalsIgnoreCase(queueMode)) {
@@ -164,9 +167,9 @@ public class FetcherBolt extends StatusEmitterBolt {
                     key = u.getHost();
                 }
             } else if (FetchItemQueues.QUEUE_MODE_DOMAIN.equalsIgnoreCase(queueMode)) {
-                key = PaidLevelDomain.getPLD(u.getHost());
+                key = u.getPLD();
                 if (key == null) {
-                    LOG.warn("Unknown domain for url: {}, using hostname as key", url);
+                    LOG.warn("Unknown domain for url: {}, using hostname as key", u);
                     key = u.getHost();
                 }
             } else {
@@ -174,12 +177,12 @@ public class FetcherBolt extends StatusEmitterBolt {
             }
 
             if (key == null) {
-                LOG.warn("Unknown host for url: {}, using URL string as key", url);
-                key = u.toExternalForm();
+                LOG.warn("Unknown host for url: {}, using URL string as key", u);
+                key = u.getURL().toExternalForm();
             }
 
             queueID = key.toLowerCase(Locale.ROOT);
-            return new FetchItem(url, t, queueID);
+            return new FetchItem(u, t, queueID);
         }
     }
 
@@ -304,8 +307,8 @@ public class FetcherBolt extends StatusEmitterBolt {
         /**
          * @return true if the URL has been added, false otherwise *
          */
-        public synchronized boolean addFetchItem(URL u, String url, Tuple input) {
-            FetchItem it = FetchItem.create(u, url, input, queueMode);
+        public synchronized boolean addFetchItem(ParsedURL u, Tuple input) {
+            FetchItem it = FetchItem.create(u, input, queueMode);
             final Metadata metadata = (Metadata) input.getValueByField("metadata");
             FetchItemQueue fiq = getFetchItemQueue(it.queueID, metadata);
             boolean added = fiq.addFetchItem(it);
@@ -313,7 +316,7 @@ public class FetcherBolt extends StatusEmitterBolt {
                 inQueues.incrementAndGet();
             }
 
-            LOG.debug("{} added to queue {}", url, it.queueID);
+            LOG.debug("{} added to queue {}", it.url, it.queueID);
 
             return added;
         }
@@ -515,7 +518,7 @@ public class FetcherBolt extends StatusEmitterBolt {
                 boolean asap = false;
 
                 try {
-                    URL url = new URL(fit.url);
+                    URL url = fit.u.getURL();
                     Protocol protocol = protocolFactory.getProtocol(url);
 
                     if (protocol == null)
@@ -862,6 +865,13 @@ public class FetcherBolt extends StatusEmitterBolt {
                         new MultiReducedMetric(new PerSecondReducer()),
                         metricsTimeBucketSecs);
 
+        PaidLevelDomains.configure(conf);
+        if (FetchItemQueues.QUEUE_MODE_DOMAIN.equalsIgnoreCase(
+                ConfUtils.getString(conf, "fetcher.queue.mode", FetchItemQueues.QUEUE_MODE_HOST))) {
+            context.registerMetric(
+                    "pld_cache", PaidLevelDomains.getMetric(), metricsTimeBucketSecs);
+        }
+
         protocolFactory = ProtocolFactory.getInstance(conf);
 
         this.fetchQueues = new FetchItemQueues(conf);
@@ -916,6 +926,7 @@ public class FetcherBolt extends StatusEmitterBolt {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         protocolFactory.cleanup();
     }
 
@@ -961,10 +972,10 @@ public class FetcherBolt extends StatusEmitterBolt {
 
         LOG.debug("Received in Fetcher {}", urlString);
 
-        URL url;
+        ParsedURL url;
 
         try {
-            url = new URL(urlString);
+            url = ParsedURL.parse(urlString);
         } catch (MalformedURLException e) {
             LOG.error("{} is a malformed URL", urlString);
 
@@ -982,7 +993,7 @@ public class FetcherBolt extends StatusEmitterBolt {
             return;
         }
 
-        boolean added = fetchQueues.addFetchItem(url, urlString, input);
+        boolean added = fetchQueues.addFetchItem(url, input);
         if (!added) {
             collector.fail(input);
         }
@@ -44,19 +44,19 @@ import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.DocumentFragmentBuilder;
-import org.apache.stormcrawler.parse.JSoupFilter;
 import org.apache.stormcrawler.parse.JSoupFilters;
 import org.apache.stormcrawler.parse.JSoupTextExtractor;
 import org.apache.stormcrawler.parse.Outlink;
 import org.apache.stormcrawler.parse.ParseData;
-import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.parse.TextExtractor;
+import org.apache.stormcrawler.parse.UnchangedContentCheck;
 import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
 import org.apache.stormcrawler.util.CharsetIdentification;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.DetectionCache;
 import org.apache.stormcrawler.util.RefreshTag;
 import org.apache.stormcrawler.util.RobotsTags;
 import org.apache.stormcrawler.util.URLUtil;
@@ -83,9 +83,9 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     private MultiCountMetric eventCounter;
 
-    private ParseFilter parseFilters = null;
+    private ParseFilters parseFilters = null;
 
-    private JSoupFilter jsoupFilters = null;
+    private JSoupFilters jsoupFilters = null;
 
     private final Detector detector = TikaConfig.getDefaultConfig().getDetector();
 
@@ -124,6 +124,11 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     private boolean ignoreMetaRedirections;
 
+    /** Per-host predictions of the mime-type and charset, null if not activated */
+    private DetectionCache detectionCache;
+
+    private UnchangedContentCheck unchangedCheck;
+
     @Override
     public void prepare(
             Map<String, Object> conf, TopologyContext context, OutputCollector collector) {
@@ -134,11 +139,15 @@ public class JSoupParserBolt extends StatusEmitterBolt {
                 context.registerMetric(this.getClass().getSimpleName(), new MultiCountMetric(), 10);
 
         parseFilters = ParseFilters.fromConf(conf);
+        parseFilters.registerMetrics(context);
 
         jsoupFilters = JSoupFilters.fromConf(conf);
+        jsoupFilters.registerMetrics(context);
 
         emitOutlinks = ConfUtils.getBoolean(conf, "parser.emitOutlinks", true);
 
+        unchangedCheck = new UnchangedContentCheck(conf);
+
         trackAnchors = ConfUtils.getBoolean(conf, "track.anchors", true);
 
         robots_noFollow_strict =
@@ -163,6 +172,15 @@ public class JSoupParserBolt extends StatusEmitterBolt {
         ignoreMetaRedirections =
                 ConfUtils.getBoolean(conf, "jsoup.ignore.meta.redirections", false);
 
+        int detectionCacheSize = ConfUtils.getInt(conf, "detect.cache.max.entries", 0);
+        if (detectionCacheSize > 0) {
+            detectionCache =
+                    new DetectionCache(
+                            detectionCacheSize,
+                            ConfUtils.getBoolean(conf, "detect.cache.path.prefix", false));
+            context.registerMetric("detection_cache_size", () -> detectionCache.size(), 10);
+        }
+
         final String clazz =
                 ConfUtils.getString(
                         conf, "textextractor.class", JSoupTextExtractor.class.getName());
@@ -194,17 +212,45 @@ public class JSoupParserBolt extends StatusEmitterBolt {
         final String url = tuple.getStringByField("url");
         final Metadata metadata = (Metadata) tuple.getValueByField("metadata");
 
+        // same content as the previous fetch: nothing to parse or index
+        final String contentHash = unchangedCheck.hash(content);
+        if (unchangedCheck.isUnchanged(contentHash, metadata)) {
+            LOG.info("Parsing : skipping unchanged {}", url);
+            collector.emit(StatusStreamName, tuple, new Values(url, metadata, Status.FETCHED));
+            collector.ack(tuple);
+            eventCounter.scope("skipped_unchanged").incr();
+            return;
+        }
+
         LOG.info("Parsing : starting {}", url);
 
         // check that its content type is HTML
         // look at value found in HTTP headers
         boolean CT_OK = false;
 
-        String mimeType = metadata.getFirstValue(HttpHeaders.CONTENT_TYPE, this.protocolMDprefix);
+        final String httpCT =
+                metadata.getFirstValue(HttpHeaders.CONTENT_TYPE, this.protocolMDprefix);
+
+        String mimeType = httpCT;
+
+        final String cacheKey = detectionCache != null ? detectionCache.getKey(url) : null;
+
+        // whether a full detection had to be done for the mimetype or charset
+        boolean detected = false;
 
         if (detectMimeType) {
             try {
-                mimeType = guessMimeType(url, mimeType, content);
+                String predicted = null;
+                if (cacheKey != null) {
+                    predicted = detectionCache.getMimeType(cacheKey, httpCT, content);
+                    countPrediction("mimetype", cacheKey, predicted);
+                }
+                if (predicted != null) {
+                    mimeType = predicted;
+                } else {
+                    mimeType = guessMimeType(url, httpCT, content);
+                    detected = true;
+                }
             } catch (Exception e) {
                 String errorMessage = "Exception while guessing mimetype on " + url + ": " + e;
                 handleException(url, e, metadata, tuple, "mimetype guessing", errorMessage);
@@ -239,15 +285,34 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
         long start = System.currentTimeMillis();
 
-        String charset;
+        String charset = null;
 
-        if (fastCharsetDetection) {
+        if (cacheKey != null) {
             charset =
-                    CharsetIdentification.getCharsetFast(
+                    detectionCache.getCharset(
+                            cacheKey, metadata, content, maxLengthCharsetDetection);
+            countPrediction("charset", cacheKey, charset);
+        }
+
+        if (charset == null) {
+            detected = true;
+            if (fastCharsetDetection) {
+                charset =
+                        CharsetIdentification.getCharsetFast(
+                                metadata, content, maxLengthCharsetDetection);
+            } else {
+                charset =
+                        CharsetIdentification.getCharset(
+                                metadata, content, maxLengthCharsetDetection);
+            }
+        }
+
+        if (cacheKey != null && detected) {
+            String declared =
+                    CharsetIdentification.getDeclaredCharset(
                             metadata, content, maxLengthCharsetDetection);
-        } else {
-            charset =
-                    CharsetIdentification.getCharset(metadata, content, maxLengthCharsetDetection);
+            detectionCache.put(
+                    cacheKey, httpCT, detectMimeType ? mimeType : null, charset, declared);
         }
 
         LOG.debug(
@@ -424,14 +489,13 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
         if (emitOutlinks) {
             for (Outlink outlink : parse.getOutlinks()) {
-                collector.emit(
-                        StatusStreamName,
-                        tuple,
-                        new Values(
-                                outlink.getTargetURL(), outlink.getMetadata(), Status.DISCOVERED));
+                emitOutlink(tuple, outlink);
             }
         }
 
+        // only now that the document is known to be parsed and indexed successfully
+        unchangedCheck.setHash(contentHash, metadata);
+
         // emit each document/subdocument in the ParseResult object
         // there should be at least one ParseData item for the "parent" URL
 
@@ -473,6 +537,17 @@ public class JSoupParserBolt extends StatusEmitterBolt {
         eventCounter.scope("parse exception").incrBy(1);
     }
 
+    /** Counts the predictions used, overridden by a full detection or missing */
+    private void countPrediction(String type, String key, String predicted) {
+        if (predicted != null) {
+            eventCounter.scope("detection_cache_hit_" + type).incr();
+        } else if (detectionCache.contains(key)) {
+            eventCounter.scope("detection_cache_override_" + type).incr();
+        } else {
+            eventCounter.scope("detection_cache_miss_" + type).incr();
+        }
+    }
+
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
         super.declareOutputFields(declarer);
@@ -568,8 +643,12 @@ public class JSoupParserBolt extends StatusEmitterBolt {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         if (parseFilters != null) {
             parseFilters.cleanup();
         }
+        if (jsoupFilters != null) {
+            jsoupFilters.cleanup();
+        }
     }
 }
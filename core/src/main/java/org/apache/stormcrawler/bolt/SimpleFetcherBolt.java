@@ -18,7 +18,6 @@ package org.apache.stormcrawler.bolt;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import crawlercommons.domains.PaidLevelDomain;
 import crawlercommons.robots.BaseRobotRules;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
@@ -51,6 +50,7 @@ import org.apache.stormcrawler.protocol.ProtocolFactory;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
 import org.apache.stormcrawler.protocol.RobotRules;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.PaidLevelDomains;
 import org.apache.stormcrawler.util.PerSecondReducer;
 import org.slf4j.LoggerFactory;
 
@@ -146,6 +146,8 @@ public class SimpleFetcherBolt extends StatusEmitterBolt {
 
         checkConfiguration();
 
+        PaidLevelDomains.configure(stormConf);
+
         this.taskID = context.getThisTaskId();
 
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ENGLISH);
@@ -235,6 +237,7 @@ public class SimpleFetcherBolt extends StatusEmitterBolt {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         protocolFactory.cleanup();
     }
 
@@ -567,7 +570,7 @@ public class SimpleFetcherBolt extends StatusEmitterBolt {
                 return null;
             }
         } else if (QUEUE_MODE_DOMAIN.equalsIgnoreCase(queueMode)) {
-            key = PaidLevelDomain.getPLD(u.getHost());
+            key = PaidLevelDomains.getPLD(u.getHost());
             if (key == null) {
                 LOG.warn("Unknown domain for url: {}, using hostname as key", u.toExternalForm());
                 key = u.getHost();
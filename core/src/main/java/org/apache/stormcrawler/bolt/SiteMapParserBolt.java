@@ -55,7 +55,6 @@ import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.parse.Outlink;
-import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.persistence.DefaultScheduler;
@@ -80,7 +79,7 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
 
     private SiteMapParser parser;
 
-    private ParseFilter parseFilters;
+    private ParseFilters parseFilters;
     private int filterHoursSinceModified = -1;
 
     private int maxOffsetGuess = 300;
@@ -168,8 +167,7 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
 
         // send to status stream
         for (Outlink ol : parse.getOutlinks()) {
-            Values v = new Values(ol.getTargetURL(), ol.getMetadata(), Status.DISCOVERED);
-            collector.emit(Constants.StatusStreamName, tuple, v);
+            emitOutlink(tuple, ol);
         }
 
         // marking the main URL as successfully fetched
@@ -344,6 +342,7 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
         filterHoursSinceModified =
                 ConfUtils.getInt(stormConf, "sitemap.filter.hours.since.modified", -1);
         parseFilters = ParseFilters.fromConf(stormConf);
+        parseFilters.registerMetrics(context);
         maxOffsetGuess = ConfUtils.getInt(stormConf, "sitemap.offset.guess", 300);
         averagedMetrics =
                 context.registerMetric(
@@ -384,6 +383,7 @@ public class SiteMapParserBolt extends StatusEmitterBolt {
 
     @Override
     public void cleanup() {
+        super.cleanup();
         if (parseFilters != null) {
             parseFilters.cleanup();
         }
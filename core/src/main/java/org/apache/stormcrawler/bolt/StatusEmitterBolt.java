@@ -18,7 +18,9 @@ package org.apache.stormcrawler.bolt;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
+import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -31,15 +33,37 @@ import org.apache.stormcrawler.filtering.URLFilters;
 import org.apache.stormcrawler.parse.Outlink;
 import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.Fingerprint;
 import org.apache.stormcrawler.util.MetadataTransfer;
-import org.apache.stormcrawler.util.URLUtil;
+import org.apache.stormcrawler.util.ParsedURL;
+import org.apache.stormcrawler.util.RotatingBloomFilter;
 
 /**
  * Provides common functionalities for Bolts which emit tuples to the status stream, e.g. Fetchers,
  * Parsers. Encapsulates the logic of URL filtering and metadata transfer to outlinks.
+ *
+ * <p>Optionally, outlinks which have been emitted recently by the same task can be suppressed
+ * instead of being sent to the status updater only to be dropped by its cache. This is activated by
+ * setting <i>outlinks.recent.filter.memory.mb</i> to a positive value; the URLs are kept in a
+ * {@link RotatingBloomFilter} for <i>outlinks.recent.filter.ttl.sec</i> seconds. Since a false
+ * positive means that a new URL does not get emitted, the false positive probability
+ * <i>outlinks.recent.filter.fpp</i> should be kept low.
+ *
+ * <p>The filter also keeps track of the pairs of source and target URLs, an outlink is only
+ * suppressed if it was found recently on <i>another</i> page. A page which is replayed after a
+ * failure, or refetched within the TTL, emits all its outlinks again so that none of them gets lost
+ * if the tuples emitted the first time failed. Redirections are never suppressed.
  */
 public abstract class StatusEmitterBolt extends BaseRichBolt {
 
+    public static final String RECENT_FILTER_MEMORY_PARAM_NAME = "outlinks.recent.filter.memory.mb";
+
+    public static final String RECENT_FILTER_TTL_PARAM_NAME = "outlinks.recent.filter.ttl.sec";
+
+    public static final String RECENT_FILTER_FPP_PARAM_NAME = "outlinks.recent.filter.fpp";
+
+    private static final int RECENT_FILTER_GENERATIONS = 4;
+
     private URLFilters urlFilters;
 
     private MetadataTransfer metadataTransfer;
@@ -48,15 +72,56 @@ public abstract class StatusEmitterBolt extends BaseRichBolt {
 
     protected OutputCollector collector;
 
+    /** URLs recently emitted as DISCOVERED, null if not activated */
+    private RotatingBloomFilter recentOutlinks;
+
+    private long outlinksEmitted = 0;
+
+    private long outlinksSuppressed = 0;
+
     @Override
     public void prepare(
             Map<String, Object> stormConf, TopologyContext context, OutputCollector collector) {
         this.collector = collector;
         urlFilters = URLFilters.fromConf(stormConf);
+        urlFilters.registerMetrics(context);
         metadataTransfer = MetadataTransfer.getInstance(stormConf);
         allowRedirs =
                 ConfUtils.getBoolean(
                         stormConf, org.apache.stormcrawler.Constants.AllowRedirParamName, true);
+
+        int memoryMB = ConfUtils.getInt(stormConf, RECENT_FILTER_MEMORY_PARAM_NAME, 0);
+        if (memoryMB > 0) {
+            long ttl = ConfUtils.getLong(stormConf, RECENT_FILTER_TTL_PARAM_NAME, 3600) * 1000;
+            double fpp = ConfUtils.getFloat(stormConf, RECENT_FILTER_FPP_PARAM_NAME, 0.0001f);
+            recentOutlinks =
+                    new RotatingBloomFilter(
+                            memoryMB * 1024L * 1024L,
+                            RECENT_FILTER_GENERATIONS,
+                            ttl,
+                            fpp,
+                            System.currentTimeMillis());
+            context.registerMetric(
+                    "outlinks_recent_filter",
+                    new IMetric() {
+                        @Override
+                        public Object getValueAndReset() {
+                            Map<String, Object> statsMap = new HashMap<>();
+                            synchronized (StatusEmitterBolt.this) {
+                                long total = outlinksEmitted + outlinksSuppressed;
+                                statsMap.put("emitted", outlinksEmitted);
+                                statsMap.put("suppressed", outlinksSuppressed);
+                                statsMap.put(
+                                        "suppression_rate",
+                                        total == 0 ? 0d : (double) outlinksSuppressed / total);
+                                outlinksEmitted = 0;
+                                outlinksSuppressed = 0;
+                            }
+                            return statsMap;
+                        }
+                    },
+                    30);
+        }
     }
 
     @Override
@@ -68,7 +133,7 @@ public abstract class StatusEmitterBolt extends BaseRichBolt {
 
     /**
      * Used for redirections or when discovering sitemap URLs. The custom key / values are added to
-     * the target metadata post-filtering.
+     * the target metadata post-filtering. The outlink is emitted even if it was found recently.
      */
     protected void emitOutlink(
             Tuple t, URL sURL, String newUrl, Metadata sourceMetadata, String... customKeyVals) {
@@ -76,24 +141,62 @@ public abstract class StatusEmitterBolt extends BaseRichBolt {
         Outlink ol = filterOutlink(sURL, newUrl, sourceMetadata, customKeyVals);
         if (ol == null) return;
 
+        emitDiscovered(t, ol);
+    }
+
+    /**
+     * Sends an outlink to the status stream with a DISCOVERED status, unless it has been emitted
+     * recently by this task for another page. The tuple must have the URL of the page in its
+     * <i>url</i> field.
+     *
+     * @return true if the outlink was emitted, false if it was suppressed
+     */
+    protected boolean emitOutlink(Tuple t, Outlink ol) {
+        if (recentOutlinks != null && !isNewOutlink(t.getStringByField("url"), ol.getTargetURL())) {
+            return false;
+        }
+        emitDiscovered(t, ol);
+        return true;
+    }
+
+    private void emitDiscovered(Tuple t, Outlink ol) {
         collector.emit(
                 org.apache.stormcrawler.Constants.StatusStreamName,
                 t,
                 new Values(ol.getTargetURL(), ol.getMetadata(), Status.DISCOVERED));
     }
 
+    /**
+     * Returns true if the target hasn't been found recently or if it was found on the same source
+     * page, which is then being replayed or refetched.
+     */
+    private synchronized boolean isNewOutlink(String source, String target) {
+        long now = System.currentTimeMillis();
+        long targetKey = Fingerprint.hash64(target);
+        long pairKey = Fingerprint.mix64(Fingerprint.hash64(source) ^ targetKey);
+        boolean newTarget = recentOutlinks.add(targetKey, now);
+        boolean newPair = recentOutlinks.add(pairKey, now);
+        boolean emit = newTarget || !newPair;
+        if (emit) {
+            outlinksEmitted++;
+        } else {
+            outlinksSuppressed++;
+        }
+        return emit;
+    }
+
     protected Outlink filterOutlink(
             URL sURL, String newUrl, Metadata sourceMetadata, String... customKeyVals) {
         // build an absolute URL
+        ParsedURL tmpURL;
         try {
-            URL tmpURL = URLUtil.resolveURL(sURL, newUrl);
-            newUrl = tmpURL.toExternalForm();
+            tmpURL = ParsedURL.resolve(sURL, newUrl);
         } catch (MalformedURLException e) {
             return null;
         }
 
         // apply URL filters
-        newUrl = this.urlFilters.filter(sURL, sourceMetadata, newUrl);
+        newUrl = this.urlFilters.filter(sURL, sourceMetadata, tmpURL);
 
         // filtered
         if (newUrl == null) {
@@ -115,4 +218,11 @@ public abstract class StatusEmitterBolt extends BaseRichBolt {
     protected boolean allowRedirs() {
         return allowRedirs;
     }
+
+    @Override
+    public void cleanup() {
+        if (urlFilters != null) {
+            urlFilters.cleanup();
+        }
+    }
 }
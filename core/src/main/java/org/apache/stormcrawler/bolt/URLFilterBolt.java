@@ -118,5 +118,13 @@ public class URLFilterBolt extends BaseRichBolt {
         } else {
             urlFilters = URLFilters.fromConf(stormConf);
         }
+        urlFilters.registerMetrics(context);
+    }
+
+    @Override
+    public void cleanup() {
+        if (urlFilters != null) {
+            urlFilters.cleanup();
+        }
     }
 }
@@ -16,7 +16,6 @@
  */
 package org.apache.stormcrawler.bolt;
 
-import crawlercommons.domains.PaidLevelDomain;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -35,6 +34,7 @@ import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.PaidLevelDomains;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -93,7 +93,7 @@ public class URLPartitionerBolt extends BaseRichBolt {
 
         // partition by domain : needs fixing
         else if (mode.equalsIgnoreCase(Constants.PARTITION_MODE_DOMAIN)) {
-            partitionKey = PaidLevelDomain.getPLD(host);
+            partitionKey = PaidLevelDomains.getPLD(host);
         }
 
         // partition by IP
@@ -161,6 +161,11 @@ public class URLPartitionerBolt extends BaseRichBolt {
         // topology
         this.eventCounter = context.registerMetric("URLPartitioner", new MultiCountMetric(), 10);
 
+        PaidLevelDomains.configure(stormConf);
+        if (mode.equalsIgnoreCase(Constants.PARTITION_MODE_DOMAIN)) {
+            context.registerMetric("pld_cache", PaidLevelDomains.getMetric(), 30);
+        }
+
         final int MAX_ENTRIES = 500;
         cache =
                 new LinkedHashMap(MAX_ENTRIES + 1, .75F, true) {
@@ -19,6 +19,7 @@ package org.apache.stormcrawler.filtering;
 import java.net.URL;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.AbstractConfigurable;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -45,4 +46,47 @@ public abstract class URLFilter extends AbstractConfigurable {
             @Nullable URL sourceUrl,
             @Nullable Metadata sourceMetadata,
             @NotNull String urlToFilter);
+
+    /**
+     * Same as {@link #filter(URL, Metadata, String)} but for a URL which has already been parsed,
+     * so that filters needing its parts (host, path...) don't have to parse it again. The default
+     * implementation delegates to the String-based method; filters which can make use of the parsed
+     * URL should override this method.
+     *
+     * @param sourceUrl the URL of the page where the URL was found. Can be null.
+     * @param sourceMetadata the metadata collected for the page
+     * @param urlToFilter the URL to be filtered
+     * @return null if the url is to be removed or a normalised representation which can correspond
+     *     to the input URL
+     * @since 3.4.1
+     */
+    @Nullable
+    public String filter(
+            @Nullable URL sourceUrl,
+            @Nullable Metadata sourceMetadata,
+            @NotNull ParsedURL urlToFilter) {
+        return filter(sourceUrl, sourceMetadata, urlToFilter.toString());
+    }
+
+    /**
+     * Whether the outcome of this filter depends only on the URL to filter and on the host of the
+     * source URL and does not change over time, i.e. it does not use the source metadata, the rest
+     * of the source URL or any mutable state. The decisions of a chain of filters can be cached by
+     * {@link URLFilters} if all of them are cacheable. Returns false by default.
+     *
+     * @since 3.4.1
+     */
+    public boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Might be used to clean any resources associated with this {@link URLFilter}. See {@link
+     * org.apache.storm.task.IBolt#cleanup()} for more details.
+     *
+     * @since 3.4.1
+     */
+    public void cleanup() {
+        // nothing to do here
+    }
 }
@@ -20,11 +20,17 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -32,11 +38,15 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.storm.Config;
+import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.utils.Utils;
 import org.apache.stormcrawler.JSONResource;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.apache.stormcrawler.util.Configurable;
+import org.apache.stormcrawler.util.FilterMetrics;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.LoggerFactory;
@@ -54,8 +64,32 @@ public class URLFilters extends URLFilter implements JSONResource {
 
     private URLFilter[] filters;
 
+    /** whether the filter at the same position overrides the method taking a ParsedURL */
+    private boolean[] usesParsedURL;
+
+    /** Memory used by the cache of decisions in MB, 0 to deactivate */
+    public static final String CACHE_MEMORY_PARAM_NAME = "urlfilters.cache.memory.mb";
+
+    /** Cached value for the URLs which were removed by the filters */
+    private static final String REJECTED = new String(new char[] {'-'});
+
+    /** Cached value for the URLs which were left unchanged by the filters */
+    private static final String UNCHANGED = new String(new char[] {'='});
+
+    /**
+     * Decisions of the filters keyed by source host and URL, null if not all the filters are
+     * cacheable or if not activated
+     */
+    private Cache<CacheKey, String> cache;
+
+    private CacheStats lastStats = CacheStats.empty();
+
+    /** Per-filter metrics, null if not registered */
+    private FilterMetrics metrics;
+
     private URLFilters() {
         filters = new URLFilters[0];
+        usesParsedURL = new boolean[0];
     }
 
     private String configFile = "urlfilters.json";
@@ -110,21 +144,185 @@ public class URLFilters extends URLFilter implements JSONResource {
             @Nullable URL sourceUrl,
             @Nullable Metadata sourceMetadata,
             @NotNull String urlToFilter) {
-        String normalizedURL = urlToFilter;
+        // parsed lazily, if a filter uses the parsed form and the decision is not cached
+        return filter(sourceUrl, sourceMetadata, urlToFilter, null);
+    }
+
+    @Override
+    public @Nullable String filter(
+            @Nullable URL sourceUrl,
+            @Nullable Metadata sourceMetadata,
+            @NotNull ParsedURL urlToFilter) {
+        return filter(sourceUrl, sourceMetadata, urlToFilter.toString(), urlToFilter);
+    }
+
+    /**
+     * Runs the URL through the filters, unless the decision for the same URL and source host is in
+     * the cache.
+     */
+    private String filter(
+            URL sourceUrl, Metadata sourceMetadata, String urlToFilter, ParsedURL parsed) {
+        CacheKey key = null;
+        if (cache != null) {
+            key = new CacheKey(sourceUrl == null ? null : sourceUrl.getHost(), urlToFilter);
+            String cached = cache.getIfPresent(key);
+            if (cached == REJECTED) return null;
+            if (cached == UNCHANGED) return urlToFilter;
+            if (cached != null) return cached;
+        }
+
+        String filtered;
+        try {
+            filtered = runFilters(sourceUrl, sourceMetadata, urlToFilter, parsed);
+        } catch (FilterException e) {
+            LOG.error("URL filtering threw exception", e.getCause());
+            return e.partiallyFiltered;
+        }
+
+        if (key != null) {
+            if (filtered == null) {
+                cache.put(key, REJECTED);
+            } else if (filtered.equals(urlToFilter)) {
+                cache.put(key, UNCHANGED);
+            } else {
+                cache.put(key, filtered);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Runs the URL through the filters. The parsed form of the URL is passed to the filters which
+     * can use it and is only rebuilt when a filter has modified the URL and the next one needs it.
+     */
+    private String runFilters(
+            URL sourceUrl, Metadata sourceMetadata, String normalizedURL, ParsedURL parsed)
+            throws FilterException {
         try {
-            for (URLFilter filter : filters) {
-                long start = System.currentTimeMillis();
-                normalizedURL = filter.filter(sourceUrl, sourceMetadata, normalizedURL);
-                long end = System.currentTimeMillis();
-                LOG.debug("URLFilter {} took {} msec", filter.getClass().getName(), end - start);
-                if (normalizedURL == null) break;
+            final FilterMetrics metrics = this.metrics;
+            for (int i = 0; i < filters.length; i++) {
+                URLFilter filter = filters[i];
+                boolean sampled = metrics != null && metrics.sample();
+                // also timed for the debug log, which doesn't go into the sampled metrics
+                boolean timed = sampled || LOG.isDebugEnabled();
+                long start = timed ? System.nanoTime() : 0;
+                String filtered;
+                if (usesParsedURL[i] && parsed == null) {
+                    try {
+                        parsed = ParsedURL.parse(normalizedURL);
+                    } catch (MalformedURLException e) {
+                        // fall back to the String-based method
+                    }
+                }
+                if (usesParsedURL[i] && parsed != null) {
+                    filtered = filter.filter(sourceUrl, sourceMetadata, parsed);
+                } else {
+                    filtered = filter.filter(sourceUrl, sourceMetadata, normalizedURL);
+                }
+                long nanos = timed ? System.nanoTime() - start : -1;
+                LOG.debug("URLFilter {} took {} nsec", filter.getClass().getName(), nanos);
+                if (metrics != null) {
+                    metrics.record(
+                            i,
+                            sampled ? nanos : -1,
+                            filtered == null,
+                            filtered != null && !filtered.equals(normalizedURL));
+                }
+                if (filtered == null) return null;
+                // normalised: the parsed form is stale
+                if (parsed != null && !filtered.equals(normalizedURL)) {
+                    parsed = null;
+                }
+                normalizedURL = filtered;
             }
         } catch (Exception e) {
-            LOG.error("URL filtering threw exception", e);
+            throw new FilterException(normalizedURL, e);
         }
         return normalizedURL;
     }
 
+    /** Exception in one of the filters, the URL is returned as it was before that filter */
+    private static class FilterException extends Exception {
+        private final String partiallyFiltered;
+
+        FilterException(String partiallyFiltered, Exception cause) {
+            super(cause);
+            this.partiallyFiltered = partiallyFiltered;
+        }
+    }
+
+    private static final class CacheKey {
+        private final String sourceHost;
+        private final String url;
+        private final int hash;
+
+        CacheKey(String sourceHost, String url) {
+            this.sourceHost = sourceHost;
+            this.url = url;
+            this.hash = 31 * Objects.hashCode(sourceHost) + url.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey k = (CacheKey) o;
+            return hash == k.hash && url.equals(k.url) && Objects.equals(sourceHost, k.sourceHost);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /** Approximate number of bytes used by the key and its value in the cache */
+        int weight(String value) {
+            int weight = 128 + url.length();
+            if (sourceHost != null) weight += 40 + sourceHost.length();
+            if (value != REJECTED && value != UNCHANGED) weight += 40 + value.length();
+            return weight;
+        }
+    }
+
+    /**
+     * Registers the per-filter metrics (see {@link FilterMetrics}) as well as a metric reporting
+     * the hits, misses and evictions of the cache of decisions, if it is activated.
+     *
+     * @since 3.4.1
+     */
+    public void registerMetrics(@NotNull TopologyContext context) {
+        // the empty instance is shared
+        if (filters.length == 0) return;
+
+        int sampling = FilterMetrics.getSampling(stormConf);
+        if (sampling > 0) {
+            metrics = new FilterMetrics(filters, sampling);
+            context.registerMetric("url_filters", metrics, 30);
+        }
+
+        if (cache == null) return;
+        context.registerMetric(
+                "url_filters_cache",
+                new IMetric() {
+                    @Override
+                    public Object getValueAndReset() {
+                        CacheStats current = cache.stats();
+                        CacheStats stats;
+                        synchronized (URLFilters.this) {
+                            stats = current.minus(lastStats);
+                            lastStats = current;
+                        }
+                        Map<String, Object> statsMap = new HashMap<>();
+                        statsMap.put("hits", stats.hitCount());
+                        statsMap.put("misses", stats.missCount());
+                        statsMap.put("hit_rate", stats.hitRate());
+                        statsMap.put("evictions", stats.evictionCount());
+                        statsMap.put("size", cache.estimatedSize());
+                        return statsMap;
+                    }
+                },
+                30);
+    }
+
     @Override
     public String getResourceFile() {
         return this.configFile;
@@ -136,6 +334,52 @@ public class URLFilters extends URLFilter implements JSONResource {
                 Configurable.createConfiguredInstance(
                         this.getClass(), URLFilter.class, stormConf, filtersConf);
         filters = list.toArray(new URLFilter[0]);
+        usesParsedURL = new boolean[filters.length];
+        boolean cacheable = filters.length > 0;
+        for (int i = 0; i < filters.length; i++) {
+            usesParsedURL[i] = overridesParsedURLMethod(filters[i].getClass());
+            cacheable &= filters[i].isCacheable();
+        }
+
+        int memoryMB = ConfUtils.getInt(stormConf, CACHE_MEMORY_PARAM_NAME, 0);
+        cache = null;
+        if (memoryMB > 0) {
+            if (cacheable) {
+                cache =
+                        Caffeine.newBuilder()
+                                .maximumWeight(memoryMB * 1024L * 1024L)
+                                .<CacheKey, String>weigher((k, v) -> k.weight(v))
+                                .recordStats()
+                                .build();
+            } else {
+                LOG.info("Decisions not cached as some of the URL filters are not cacheable");
+            }
+        }
+    }
+
+    @Override
+    public boolean isCacheable() {
+        for (URLFilter filter : filters) {
+            if (!filter.isCacheable()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void cleanup() {
+        for (URLFilter filter : filters) {
+            filter.cleanup();
+        }
+    }
+
+    private static boolean overridesParsedURLMethod(Class<?> clazz) {
+        try {
+            return clazz.getMethod("filter", URL.class, Metadata.class, ParsedURL.class)
+                            .getDeclaringClass()
+                    != URLFilter.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
     /** Utility to check the filtering of a URL * */
@@ -70,6 +70,11 @@ public class BasicURLFilter extends URLFilter {
         return urlToFilter;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode filterParams) {
         JsonNode repeat = filterParams.get("maxPathRepetition");
@@ -38,6 +38,7 @@ import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.URLFilter;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -89,11 +90,37 @@ public class BasicURLNormalizer extends URLFilter {
     private boolean hostIDNtoASCII = false;
     final Set<String> queryElementsToRemove = new TreeSet<>();
 
+    /** handles the common cases without parsing the URL, null if disabled */
+    private SinglePassNormalizer singlePass;
+
     @Override
     public @Nullable String filter(
             @Nullable URL sourceUrl,
             @Nullable Metadata sourceMetadata,
             @NotNull String urlToFilter) {
+        return normalize(urlToFilter, null);
+    }
+
+    @Override
+    public @Nullable String filter(
+            @Nullable URL sourceUrl,
+            @Nullable Metadata sourceMetadata,
+            @NotNull ParsedURL urlToFilter) {
+        return normalize(urlToFilter.toString(), urlToFilter);
+    }
+
+    /**
+     * @param parsed the URL already parsed, reused if the steps prior to the normalisation of the
+     *     host and path have not modified the URL. Can be null.
+     */
+    private @Nullable String normalize(@NotNull String urlToFilter, @Nullable ParsedURL parsed) {
+
+        if (singlePass != null) {
+            String normalized = singlePass.normalize(urlToFilter);
+            if (normalized != null) {
+                return normalized;
+            }
+        }
 
         urlToFilter = urlToFilter.trim();
 
@@ -111,13 +138,18 @@ public class BasicURLNormalizer extends URLFilter {
         }
 
         if (!queryElementsToRemove.isEmpty() || removeHashes) {
-            urlToFilter = processQueryElements(urlToFilter);
+            urlToFilter = processQueryElements(urlToFilter, parsed);
         }
 
         if (urlToFilter == null) return null;
 
         try {
-            URL theURL = new URL(urlToFilter);
+            URL theURL;
+            if (parsed != null && urlToFilter.equals(parsed.toString())) {
+                theURL = parsed.getURL();
+            } else {
+                theURL = new URL(urlToFilter);
+            }
             String file = theURL.getFile();
             String protocol = theURL.getProtocol();
             String host = theURL.getHost();
@@ -168,6 +200,11 @@ public class BasicURLNormalizer extends URLFilter {
         return urlToFilter;
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode paramNode) {
         JsonNode node = paramNode.get("removeAnchorPart");
@@ -208,6 +245,17 @@ public class BasicURLNormalizer extends URLFilter {
         if (node != null) {
             hostIDNtoASCII = node.booleanValue();
         }
+
+        // the removal of query elements is not handled in a single pass
+        boolean useSinglePass = queryElementsToRemove.isEmpty() && !removeHashes;
+        node = paramNode.get("singlePass");
+        if (node != null) {
+            useSinglePass &= node.booleanValue();
+        }
+        singlePass =
+                useSinglePass
+                        ? new SinglePassNormalizer(removeAnchorPart, unmangleQueryString)
+                        : null;
     }
 
     /**
@@ -216,11 +264,16 @@ public class BasicURLNormalizer extends URLFilter {
      * "utm_campaign" which might have several different values for a url that points to the same
      * content. This is also called when removing attributes where the value is a hash.
      */
-    private String processQueryElements(String urlToFilter) {
+    private String processQueryElements(String urlToFilter, @Nullable ParsedURL parsed) {
         try {
             // Handle illegal characters by making a url first
             // this will clean illegal characters like |
-            final URL url = new URL(urlToFilter);
+            final URL url;
+            if (parsed != null && urlToFilter.equals(parsed.toString())) {
+                url = parsed.getURL();
+            } else {
+                url = new URL(urlToFilter);
+            }
 
             String query = url.getQuery();
             String path = url.getPath();
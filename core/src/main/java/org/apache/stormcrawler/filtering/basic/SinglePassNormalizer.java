@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.filtering.basic;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Normalises http and https URLs in a single pass over a reusable buffer, producing the same output
+ * as the regular implementation of the {@link BasicURLNormalizer} (trimming, removal of the anchor,
+ * lowercasing of the protocol and host, unescaping and escaping of the path and query) without
+ * parsing the URL with java.net.URL or java.net.URI.
+ *
+ * <p>Only the URLs for which the output is known to be identical are handled, the others (userinfo,
+ * dot segments or redundant slashes, mangled query strings, invalid escapes or characters, non
+ * ASCII hosts...) are left to the regular implementation, signalled by a null result.
+ */
+final class SinglePassNormalizer {
+
+    /** characters which should be unescaped according to RFC3986 */
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    /** characters which can be found as-is in the path and query of a java.net.URI */
+    private static final boolean[] URI_LEGAL = new boolean[128];
+
+    /** characters allowed in the hosts handled here */
+    private static final boolean[] HOST = new boolean[128];
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            boolean alphanum =
+                    (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            UNRESERVED[c] = alphanum || c == '-' || c == '.' || c == '_' || c == '~';
+            URI_LEGAL[c] = alphanum || "-_.!~*'();/?:@&=+$,".indexOf(c) != -1;
+            HOST[c] = alphanum || c == '-' || c == '.' || c == '_';
+        }
+    }
+
+    private final boolean removeAnchorPart;
+
+    private final boolean unmangleQueryString;
+
+    private final ThreadLocal<StringBuilder> buffers =
+            ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    SinglePassNormalizer(boolean removeAnchorPart, boolean unmangleQueryString) {
+        this.removeAnchorPart = removeAnchorPart;
+        this.unmangleQueryString = unmangleQueryString;
+    }
+
+    /**
+     * @return the normalised URL or null if it must be handled by the regular implementation
+     */
+    @Nullable
+    String normalize(@NotNull String url) {
+        int start = 0;
+        int end = url.length();
+        while (start < end && url.charAt(start) <= ' ') start++;
+        while (end > start && url.charAt(end - 1) <= ' ') end--;
+
+        int hash = url.lastIndexOf('#', end - 1);
+        if (hash >= start) {
+            if (!removeAnchorPart) return null;
+            end = hash;
+            // would not be trimmed
+            if (end > start && url.charAt(end - 1) <= ' ') return null;
+        }
+
+        if (unmangleQueryString && isMangled(url, start, end)) return null;
+
+        // protocol
+        int i = start;
+        while (i < end && i - start < 6 && isLetter(url.charAt(i))) i++;
+        int protocolLength = i - start;
+        if (!(protocolLength == 4 || protocolLength == 5)
+                || !url.regionMatches(true, start, "https", 0, protocolLength)
+                || !url.startsWith("://", i)) {
+            return null;
+        }
+
+        StringBuilder sb = buffers.get();
+        sb.setLength(0);
+
+        boolean changed = false;
+        for (int j = start; j < i; j++) {
+            char c = url.charAt(j);
+            if (c <= 'Z') {
+                c += 'a' - 'A';
+                changed = true;
+            }
+            sb.append(c);
+        }
+        sb.append("://");
+        i += 3;
+
+        // host
+        int hostStart = i;
+        while (i < end) {
+            char c = url.charAt(i);
+            if (c >= 128 || !HOST[c]) break;
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+                changed = true;
+            }
+            sb.append(c);
+            i++;
+        }
+        if (i == hostStart) return null;
+
+        // port
+        if (i < end && url.charAt(i) == ':') {
+            int portStart = ++i;
+            int port = 0;
+            while (i < end && url.charAt(i) >= '0' && url.charAt(i) <= '9') {
+                port = port * 10 + (url.charAt(i) - '0');
+                i++;
+                if (i - portStart > 5) return null;
+            }
+            int portLength = i - portStart;
+            // empty or would be rewritten by java.net.URL
+            if (portLength == 0 || port > 65535 || (portLength > 1 && url.charAt(portStart) == '0'))
+                return null;
+            sb.append(':').append(url, portStart, i);
+        }
+        if (i < end && url.charAt(i) != '/' && url.charAt(i) != '?') return null;
+
+        // path and query
+        int fileStart = sb.length();
+        int queryStart = -1;
+        while (i < end) {
+            char c = url.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= end) return null;
+                int h1 = hexValue(url.charAt(i + 1));
+                int h2 = hexValue(url.charAt(i + 2));
+                // invalid escapes and %uXXXX are left to the regular implementation
+                if (h1 == -1 || h2 == -1) return null;
+                int decoded = h1 * 16 + h2;
+                if (decoded < 128 && UNRESERVED[decoded]) {
+                    sb.append((char) decoded);
+                    changed = true;
+                } else {
+                    sb.append('%').append(HEX_DIGITS[h1]).append(HEX_DIGITS[h2]);
+                    if (url.charAt(i + 1) != HEX_DIGITS[h1]
+                            || url.charAt(i + 2) != HEX_DIGITS[h2]) {
+                        changed = true;
+                    }
+                }
+                i += 3;
+                continue;
+            }
+            if (c == ' ' || c == '[' || c == '\\' || c == ']' || c == '|') {
+                appendEscaped(sb, c);
+                changed = true;
+            } else if (c < 128) {
+                if (!URI_LEGAL[c]) return null;
+                if (c == '?' && queryStart == -1) {
+                    queryStart = sb.length();
+                }
+                sb.append(c);
+            } else {
+                if (Character.isSurrogate(c)) return null;
+                // percent-encoded UTF-8 bytes
+                if (c < 0x800) {
+                    appendEscaped(sb, 0xC0 | (c >> 6));
+                    appendEscaped(sb, 0x80 | (c & 0x3F));
+                } else {
+                    appendEscaped(sb, 0xE0 | (c >> 12));
+                    appendEscaped(sb, 0x80 | ((c >> 6) & 0x3F));
+                    appendEscaped(sb, 0x80 | (c & 0x3F));
+                }
+                changed = true;
+            }
+            i++;
+        }
+
+        // java.net.URI would remove dot segments and redundant slashes
+        if (needsPathNormalization(sb, fileStart, queryStart == -1 ? sb.length() : queryStart)) {
+            return null;
+        }
+
+        if (!changed) {
+            return start == 0 && end == url.length() ? url : url.substring(start, end);
+        }
+        return sb.toString();
+    }
+
+    /** Whether the query string starts with an & which the regular implementation would fix */
+    private static boolean isMangled(String url, int start, int end) {
+        // trailing slashes are ignored when looking for the last path element
+        int e = end;
+        while (e > start && url.charAt(e - 1) == '/') e--;
+        if (e == start) return true;
+        int segmentStart = Math.max(start, url.lastIndexOf('/', e - 1) + 1);
+        boolean amp = false;
+        boolean equals = false;
+        for (int j = segmentStart; j < e; j++) {
+            char c = url.charAt(j);
+            if (c == '?') return false;
+            if (c == '&') amp = true;
+            if (c == '=' && j > segmentStart) equals = true;
+        }
+        return amp && equals;
+    }
+
+    private static boolean needsPathNormalization(CharSequence s, int start, int end) {
+        int segmentStart = start;
+        for (int j = start; j <= end; j++) {
+            if (j < end && s.charAt(j) != '/') continue;
+            int length = j - segmentStart;
+            if (j < end && length == 0 && j > start) return true;
+            if (length == 1 && s.charAt(segmentStart) == '.') return true;
+            if (length == 2 && s.charAt(segmentStart) == '.' && s.charAt(segmentStart + 1) == '.')
+                return true;
+            segmentStart = j + 1;
+        }
+        return false;
+    }
+
+    private static void appendEscaped(StringBuilder sb, int b) {
+        sb.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        return -1;
+    }
+}
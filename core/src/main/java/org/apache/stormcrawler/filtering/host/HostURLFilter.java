@@ -17,12 +17,13 @@
 package org.apache.stormcrawler.filtering.host;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import crawlercommons.domains.PaidLevelDomain;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.URLFilter;
+import org.apache.stormcrawler.util.PaidLevelDomains;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -47,8 +48,14 @@ public class HostURLFilter extends URLFilter {
     private String previousSourceHost;
     private String previousSourceDomain;
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode filterParams) {
+        PaidLevelDomains.configure(stormConf);
         JsonNode filterByHostNode = filterParams.get("ignoreOutsideHost");
         if (filterByHostNode == null) {
             ignoreOutsideHost = false;
@@ -79,12 +86,21 @@ public class HostURLFilter extends URLFilter {
             return urlToFilter;
         }
 
-        URL tURL;
+        ParsedURL tURL;
         try {
-            tURL = new URL(urlToFilter);
+            tURL = ParsedURL.parse(urlToFilter);
         } catch (MalformedURLException e1) {
             return null;
         }
+        return filter(sourceUrl, sourceMetadata, tURL);
+    }
+
+    @Override
+    public @Nullable String filter(
+            @Nullable URL sourceUrl, @Nullable Metadata sourceMetadata, @NotNull ParsedURL tURL) {
+        if (sourceUrl == null || (!ignoreOutsideHost && !ignoreOutsideDomain)) {
+            return tURL.toString();
+        }
 
         String fromHost;
         String fromDomain = null;
@@ -97,7 +113,7 @@ public class HostURLFilter extends URLFilter {
         } else {
             fromHost = sourceUrl.getHost();
             if (ignoreOutsideDomain) {
-                fromDomain = PaidLevelDomain.getPLD(fromHost);
+                fromDomain = PaidLevelDomains.getPLD(fromHost);
             }
             previousSourceHost = fromHost;
             previousSourceDomain = fromDomain;
@@ -114,12 +130,12 @@ public class HostURLFilter extends URLFilter {
         }
 
         if (ignoreOutsideDomain) {
-            String toDomain = PaidLevelDomain.getPLD(toHost);
+            String toDomain = tURL.getPLD();
             if (toDomain == null || !toDomain.equals(fromDomain)) {
                 return null;
             }
         }
 
-        return urlToFilter;
+        return tURL.toString();
     }
 }
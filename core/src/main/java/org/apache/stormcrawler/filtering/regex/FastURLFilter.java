@@ -20,10 +20,12 @@ import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -31,11 +33,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import org.apache.stormcrawler.JSONResource;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.URLFilter;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -63,7 +69,13 @@ import org.slf4j.LoggerFactory;
  * }
  * </pre>
  *
- * Partly inspired by https://github.com/commoncrawl/nutch/blob/cc-fast-url-filter
+ * The host and domain scopes are indexed in a trie of reversed hostname labels so that the cost of
+ * a lookup depends on the number of labels in the hostname and not on the number of scopes. The
+ * resource can be reloaded periodically by setting <i>refresh</i> in the params (or
+ * <i>fast.urlfilter.refresh</i> in the configuration) to an interval in seconds; the file is then
+ * checked for modifications and the rules replaced without interrupting the filtering.
+ *
+ * <p>Partly inspired by https://github.com/commoncrawl/nutch/blob/cc-fast-url-filter
  * /src/plugin/urlfilter -fast/src/java/org/apache/nutch/urlfilter/fast/FastURLFilter.java
  */
 public class FastURLFilter extends URLFilter implements JSONResource {
@@ -72,7 +84,16 @@ public class FastURLFilter extends URLFilter implements JSONResource {
 
     private String resourceFile;
 
-    private Rules rules = new Rules();
+    /** Replaced as a whole when the resource is reloaded so that filtering is never blocked */
+    private volatile Rules rules = new Rules();
+
+    private long lastModified;
+
+    /** Interval in seconds between checks for modifications of the resource, 0 to deactivate */
+    private int refresh;
+
+    /** Checks the resource for modifications, null if it is not reloaded */
+    private Timer refreshTimer;
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -91,12 +112,98 @@ public class FastURLFilter extends URLFilter implements JSONResource {
                     ConfUtils.getString(stormConf, "fast.urlfilter.file", "fast.urlfilter.json");
         }
 
+        refresh = ConfUtils.getInt(stormConf, "fast.urlfilter.refresh", 0);
+        if (filterParams != null) {
+            JsonNode node = filterParams.get("refresh");
+            if (node != null && node.isInt()) {
+                refresh = node.asInt();
+            }
+        }
+
         try {
             loadJSONResources();
         } catch (Exception e) {
             LOG.error("Exception while loading JSON resources from jar", e);
             throw new RuntimeException(e);
         }
+
+        if (refresh > 0) {
+            refreshTimer = new Timer("FastURLFilter-refresh", true);
+            refreshTimer.schedule(
+                    new TimerTask() {
+                        public void run() {
+                            reloadIfModified();
+                        }
+                    },
+                    refresh * 1000L,
+                    refresh * 1000L);
+        }
+    }
+
+    /**
+     * Loads the resource from the classpath or, if it can't be found there, from the file system.
+     */
+    @Override
+    public void loadJSONResources() throws Exception {
+        URL resource = getClass().getClassLoader().getResource(resourceFile);
+        if (resource == null && new File(resourceFile).isFile()) {
+            resource = new File(resourceFile).toURI().toURL();
+        }
+        if (resource == null) {
+            throw new IOException("Can't find resource " + resourceFile);
+        }
+        URLConnection connection = resource.openConnection();
+        connection.setUseCaches(false);
+        long modified = connection.getLastModified();
+        try (InputStream inputStream = connection.getInputStream()) {
+            loadJSONResources(inputStream);
+        }
+        lastModified = modified;
+    }
+
+    /**
+     * Reloads the resource if it has changed since it was last loaded. The new rules are built
+     * aside and swapped in when complete, the previous ones are kept if the resource is invalid.
+     */
+    private void reloadIfModified() {
+        long modified = 0;
+        try {
+            URL resource = getClass().getClassLoader().getResource(resourceFile);
+            if (resource == null) {
+                File file = new File(resourceFile);
+                if (!file.isFile()) {
+                    LOG.warn("Can't reload {}: resource not found", resourceFile);
+                    return;
+                }
+                resource = file.toURI().toURL();
+            }
+            URLConnection connection = resource.openConnection();
+            connection.setUseCaches(false);
+            modified = connection.getLastModified();
+            if (modified == lastModified) {
+                return;
+            }
+            LOG.info("Reloading {}", resourceFile);
+            loadJSONResources();
+        } catch (Exception e) {
+            LOG.error("Can't reload {}", resourceFile, e);
+            // don't try again until the resource is modified
+            lastModified = modified;
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (refreshTimer != null) {
+            refreshTimer.cancel();
+            refreshTimer = null;
+        }
+    }
+
+    /** Cacheable unless the rules depend on the metadata or can be reloaded */
+    @Override
+    public boolean isCacheable() {
+        return refresh <= 0 && !rules.hasMetadataRules();
     }
 
     @Override
@@ -118,6 +225,8 @@ public class FastURLFilter extends URLFilter implements JSONResource {
         }
 
         final Rules rules = new Rules();
+        // identical patterns are shared between scopes
+        final Map<String, Rule> compiled = new HashMap<>();
 
         Iterator<JsonNode> iter = rootNode.elements();
         while (iter.hasNext()) {
@@ -153,7 +262,12 @@ public class FastURLFilter extends URLFilter implements JSONResource {
             Iterator<JsonNode> iterPatterns = patternsNode.elements();
             while (iterPatterns.hasNext()) {
                 JsonNode patternNode = iterPatterns.next();
-                rlist.add(new Rule(patternNode.asText()));
+                Rule rule = compiled.computeIfAbsent(patternNode.asText(), Rule::new);
+                if (rule.getType() == null) {
+                    LOG.warn("Ignoring invalid pattern {} for scope {}", patternNode, scopeval);
+                    continue;
+                }
+                rlist.add(rule);
             }
 
             scope.setRules(rlist);
@@ -169,60 +283,60 @@ public class FastURLFilter extends URLFilter implements JSONResource {
             @Nullable URL sourceUrl,
             @Nullable Metadata sourceMetadata,
             @NotNull String urlToFilter) {
+        ParsedURL u;
         try {
-            if (rules.filter(urlToFilter, sourceMetadata)) return null;
+            u = ParsedURL.parse(urlToFilter);
         } catch (MalformedURLException e) {
             return null;
         }
-        return urlToFilter;
+        return filter(sourceUrl, sourceMetadata, u);
+    }
+
+    @Override
+    public @Nullable String filter(
+            @Nullable URL sourceUrl,
+            @Nullable Metadata sourceMetadata,
+            @NotNull ParsedURL urlToFilter) {
+        if (rules.filter(urlToFilter, sourceMetadata)) return null;
+        return urlToFilter.toString();
     }
 }
 
 class Rules {
 
     private Scope globalRules;
-    private Map<String, Scope> domainRules = new HashMap<>();
-    private Map<String, Scope> hostNameRules = new HashMap<>();
-    private List<MDScope> metadataRules = new ArrayList<>();
+    private final DomainTrie domainRules = new DomainTrie();
+    private final List<MDScope> metadataRules = new ArrayList<>();
+
+    public boolean hasMetadataRules() {
+        return !metadataRules.isEmpty();
+    }
 
     public void addScope(Scope s, Scope.Type t, String value) {
         if (t.equals(Scope.Type.GLOBAL)) {
             globalRules = s;
         } else if (t.equals(Scope.Type.DOMAIN)) {
-            domainRules.put(value, s);
+            domainRules.getOrCreate(value).domainScope = s;
         } else if (t.equals(Scope.Type.HOSTNAME)) {
-            hostNameRules.put(value, s);
+            domainRules.getOrCreate(value).hostScope = s;
         } else if (t.equals(Scope.Type.METADATA)) {
             metadataRules.add(new MDScope(value, s.getRules()));
         }
     }
 
     /**
-     * Try the rules from the hostname, domain name, metadata and global scopes in this order.
-     * Returns true if the URL should be removed, false otherwise. The value returns the value of
-     * the first matching rule, be it positive or negative.
-     *
-     * @throws MalformedURLException
+     * Try the rules from the hostname, domain name, metadata and global scopes. Returns true if the
+     * URL should be removed, false otherwise. Within a scope, the first matching rule determines
+     * the outcome for that scope; the URL is removed as soon as one of the scopes denies it.
      */
-    public boolean filter(String url, Metadata metadata) throws MalformedURLException {
-        URL u = new URL(url);
+    public boolean filter(ParsedURL u, Metadata metadata) {
+        final Haystack haystack = new Haystack(u);
 
-        // first try the full hostname
-        String hostname = u.getHost();
-        if (checkScope(hostNameRules.get(hostname), u)) {
+        // the host and the various components of the domain, from the shortest suffix
+        if (domainRules.filter(u.getHost(), haystack)) {
             return true;
         }
 
-        // then on the various components of the domain
-        final String[] domainParts = hostname.split("\\.");
-        String domain = null;
-        for (int i = domainParts.length - 1; i >= 0; i--) {
-            domain = domainParts[i] + (domain == null ? "" : "." + domain);
-            if (checkScope(domainRules.get(domain), u)) {
-                return true;
-            }
-        }
-
         // check on parent's URL metadata
         for (MDScope scope : metadataRules) {
             final String[] vals = metadata.getValues(scope.getKey());
@@ -233,42 +347,186 @@ class Rules {
                 if (v.equalsIgnoreCase(scope.getValue())) {
                     FastURLFilter.LOG.debug(
                             "Filtering {} matching metadata {}:{}",
-                            url,
+                            u,
                             scope.getKey(),
                             scope.getValue());
-                    if (checkScope(scope, u)) {
+                    if (checkScope(scope, haystack)) {
                         return true;
                     }
                 }
             }
         }
 
-        if (checkScope(globalRules, u)) {
-            return true;
-        }
-
-        return false;
+        return checkScope(globalRules, haystack);
     }
 
-    private boolean checkScope(Scope s, URL u) {
+    static boolean checkScope(Scope s, Haystack haystack) {
         if (s == null) return false;
         for (Rule r : s.getRules()) {
-            String haystack = u.getPath();
-            // whether to include the query as well?
-            if (r.getType().toString().endsWith("QUERY")) {
-                if (u.getQuery() != null) {
-                    haystack += "?" + u.getQuery();
-                }
-            }
-            if (r.getPattern().matcher(haystack).find()) {
+            String h = r.includesQuery() ? haystack.pathAndQuery() : haystack.path();
+            if (r.getPattern().matcher(h).find()) {
                 // matches! returns true for DENY, false for ALLOW
-                return r.getType().toString().startsWith("DENY");
+                return r.isDeny();
             }
         }
         return false;
     }
 }
 
+/** Strings the patterns are matched against, built once per URL and only if needed */
+final class Haystack {
+
+    private final ParsedURL url;
+    private String path;
+    private String pathAndQuery;
+
+    Haystack(ParsedURL url) {
+        this.url = url;
+    }
+
+    String path() {
+        if (path == null) {
+            path = url.getPath();
+        }
+        return path;
+    }
+
+    String pathAndQuery() {
+        if (pathAndQuery == null) {
+            String query = url.getQuery();
+            pathAndQuery = query == null ? path() : path() + "?" + query;
+        }
+        return pathAndQuery;
+    }
+}
+
+/**
+ * Trie of the host and domain scopes keyed by the labels of the hostnames in reverse order, e.g.
+ * <i>www.example.com</i> is stored under <i>com</i> &gt; <i>example</i> &gt; <i>www</i>. A lookup
+ * walks the labels of the host from the TLD without creating any substrings, the children of a node
+ * are kept in an open-addressing table whose keys are compared to a region of the hostname.
+ */
+final class DomainTrie {
+
+    static final class Node {
+        Scope domainScope;
+        Scope hostScope;
+
+        private String[] labels;
+        private int[] hashes;
+        private Node[] children;
+        private int size;
+
+        Node child(String host, int start, int end) {
+            if (labels == null) return null;
+            int length = end - start;
+            int mask = labels.length - 1;
+            int h = hash(host, start, end);
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                String label = labels[i];
+                if (label == null) return null;
+                // compare the hashes first to avoid loading the labels which can't match
+                if (hashes[i] == h
+                        && label.length() == length
+                        && host.regionMatches(start, label, 0, length)) {
+                    return children[i];
+                }
+            }
+        }
+
+        Node getOrCreateChild(String label) {
+            Node existing = child(label, 0, label.length());
+            if (existing != null) return existing;
+            if (labels == null) {
+                labels = new String[2];
+                hashes = new int[2];
+                children = new Node[2];
+            } else if ((size + 1) * 2 > labels.length) {
+                String[] oldLabels = labels;
+                Node[] oldChildren = children;
+                labels = new String[oldLabels.length * 2];
+                hashes = new int[oldLabels.length * 2];
+                children = new Node[oldLabels.length * 2];
+                for (int i = 0; i < oldLabels.length; i++) {
+                    if (oldLabels[i] != null) insert(oldLabels[i], oldChildren[i]);
+                }
+            }
+            Node n = new Node();
+            insert(label, n);
+            size++;
+            return n;
+        }
+
+        private void insert(String label, Node n) {
+            int mask = labels.length - 1;
+            int h = hash(label, 0, label.length());
+            int i = h & mask;
+            while (labels[i] != null) i = (i + 1) & mask;
+            labels[i] = label;
+            hashes[i] = h;
+            children[i] = n;
+        }
+
+        private static int hash(String s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) h = 31 * h + s.charAt(i);
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private final Node root = new Node();
+
+    /** Returns the node for a hostname or domain, creating it and its parents if needed */
+    Node getOrCreate(String domain) {
+        Node n = root;
+        int end = domain.length();
+        while (true) {
+            int dot = domain.lastIndexOf('.', end - 1);
+            n = n.getOrCreateChild(domain.substring(dot + 1, end));
+            if (dot == -1) return n;
+            end = dot;
+        }
+    }
+
+    /**
+     * Checks the host scope for the hostname and the domain scopes of all its suffixes, from the
+     * shortest one. Returns true as soon as one of them denies the URL.
+     */
+    boolean filter(String hostname, Haystack haystack) {
+        // labels are split on dots and trailing empty ones ignored for the domains
+        int end = hostname.length();
+        while (end > 0 && hostname.charAt(end - 1) == '.') end--;
+        boolean exact = end == hostname.length();
+
+        Node n = end > 0 ? root : null;
+        Node host = null;
+        while (n != null) {
+            int dot = hostname.lastIndexOf('.', end - 1);
+            n = n.child(hostname, dot + 1, end);
+            if (n == null) break;
+            if (dot == -1 && exact) host = n;
+            if (Rules.checkScope(n.domainScope, haystack)) {
+                return true;
+            }
+            if (dot == -1) break;
+            end = dot;
+        }
+
+        // a hostname ending with a dot can only match a host scope declared with it
+        if (!exact) {
+            host = root;
+            end = hostname.length();
+            while (host != null) {
+                int dot = hostname.lastIndexOf('.', end - 1);
+                host = host.child(hostname, dot + 1, end);
+                if (dot == -1) break;
+                end = dot;
+            }
+        }
+        return host != null && Rules.checkScope(host.hostScope, haystack);
+    }
+}
+
 class Scope {
 
     public enum Type {
@@ -325,6 +583,8 @@ class Rule {
 
     private Type type;
     private Pattern pattern;
+    private boolean deny;
+    private boolean includesQuery;
 
     public Rule(String line) {
         int offset = 0;
@@ -342,7 +602,17 @@ class Rule {
         if (type == null) return;
 
         String patternString = line.substring(offset).trim();
-        pattern = Pattern.compile(patternString);
+        try {
+            pattern = Pattern.compile(patternString);
+        } catch (PatternSyntaxException e) {
+            // the rule is skipped as if its type was not recognised
+            FastURLFilter.LOG.error(
+                    "Invalid regular expression {}: {}", patternString, e.getMessage());
+            type = null;
+            return;
+        }
+        deny = type == Type.DENYPATH || type == Type.DENYPATHQUERY;
+        includesQuery = type == Type.DENYPATHQUERY || type == Type.ALLOWPATHQUERY;
     }
 
     public Type getType() {
@@ -352,4 +622,14 @@ class Rule {
     public Pattern getPattern() {
         return pattern;
     }
+
+    /** Whether a match means that the URL must be removed */
+    public boolean isDeny() {
+        return deny;
+    }
+
+    /** Whether the pattern is matched against the query as well as the path */
+    public boolean includesQuery() {
+        return includesQuery;
+    }
 }
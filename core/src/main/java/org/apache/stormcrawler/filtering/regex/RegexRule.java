@@ -16,6 +16,8 @@
  */
 package org.apache.stormcrawler.filtering.regex;
 
+import java.util.regex.Pattern;
+
 /** A generic regular expression rule. Borrowed from Apache Nutch 1.9. */
 public abstract class RegexRule {
 
@@ -51,4 +53,16 @@ public abstract class RegexRule {
      *     </code>.
      */
     protected abstract boolean match(String url);
+
+    /**
+     * Returns the compiled pattern if the rule is based on a {@link java.util.regex} expression
+     * matched with {@link java.util.regex.Matcher#find()}, null otherwise. When available, the
+     * literals required by the pattern are used to skip the evaluation of the rule for the URLs
+     * which can't match it.
+     *
+     * @since 3.4.1
+     */
+    protected Pattern getPattern() {
+        return null;
+    }
 }
@@ -49,5 +49,10 @@ public class RegexURLFilter extends RegexURLFilterBase {
         protected boolean match(String url) {
             return pattern.matcher(url).find();
         }
+
+        @Override
+        protected Pattern getPattern() {
+            return pattern;
+        }
     }
 }
@@ -26,10 +26,13 @@ import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.URLFilter;
+import org.apache.stormcrawler.util.MultiPatternMatcher;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -43,6 +46,14 @@ public abstract class RegexURLFilterBase extends URLFilter {
     /** A list of applicable rules */
     private List<RegexRule> rules;
 
+    /** Finds the rules which can match a given URL */
+    private MultiPatternMatcher prefilter;
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode paramNode) {
         JsonNode node = paramNode.get("urlFilters");
@@ -58,6 +69,16 @@ public abstract class RegexURLFilterBase extends URLFilter {
             }
             rules = readRules(rulesFileName);
         }
+
+        List<Pattern> patterns = new ArrayList<>(rules.size());
+        for (RegexRule rule : rules) {
+            patterns.add(rule.getPattern());
+        }
+        prefilter = new MultiPatternMatcher(patterns);
+        LOG.info(
+                "Loaded {} rules, {} of which can't be prefiltered",
+                rules.size(),
+                prefilter.getUnfilteredCount());
     }
 
     /** Populates a List of Rules off of JsonNode. */
@@ -142,7 +163,10 @@ public abstract class RegexURLFilterBase extends URLFilter {
     @Override
     public @Nullable String filter(
             @Nullable URL pageUrl, @Nullable Metadata sourceMetadata, @NotNull String url) {
-        for (RegexRule rule : rules) {
+        // only the rules which can match are evaluated, in their original order
+        BitSet candidates = prefilter.candidates(url);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            RegexRule rule = rules.get(i);
             if (rule.match(url)) {
                 return rule.accept() ? url : null;
             }
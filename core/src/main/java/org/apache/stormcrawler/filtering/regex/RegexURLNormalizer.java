@@ -27,8 +27,8 @@ import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -38,6 +38,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.apache.commons.lang.StringUtils;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.URLFilter;
+import org.apache.stormcrawler.util.MultiPatternMatcher;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -68,13 +69,21 @@ public class RegexURLNormalizer extends URLFilter {
 
     private List<Rule> rules;
 
+    /** Finds the rules which can modify a given URL */
+    private MultiPatternMatcher prefilter;
+
     private static final List<Rule> EMPTY_RULES = Collections.emptyList();
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode paramNode) {
         JsonNode node = paramNode.get("urlNormalizers");
         if (node != null && node.isArray()) {
-            rules = readRules((ArrayNode) node);
+            setRules(readRules((ArrayNode) node));
         } else {
             JsonNode filenameNode = paramNode.get("regexNormalizerFile");
             String rulesFileName;
@@ -83,8 +92,17 @@ public class RegexURLNormalizer extends URLFilter {
             } else {
                 rulesFileName = "default-regex-normalizers.xml";
             }
-            rules = readRules(rulesFileName);
+            setRules(readRules(rulesFileName));
+        }
+    }
+
+    private void setRules(List<Rule> rules) {
+        List<Pattern> patterns = new ArrayList<>(rules.size());
+        for (Rule r : rules) {
+            patterns.add(r.pattern);
         }
+        this.prefilter = new MultiPatternMatcher(patterns);
+        this.rules = rules;
     }
 
     /**
@@ -101,13 +119,19 @@ public class RegexURLNormalizer extends URLFilter {
     public @Nullable String filter(
             @Nullable URL sourceUrl, @Nullable Metadata sourceMetadata, @NotNull String urlString) {
 
-        Iterator<Rule> i = rules.iterator();
-        while (i.hasNext()) {
-            Rule r = i.next();
+        // skip the rules which can't match
+        BitSet candidates = prefilter.candidates(urlString);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Rule r = rules.get(i);
 
             Matcher matcher = r.pattern.matcher(urlString);
 
-            urlString = matcher.replaceAll(r.substitution);
+            String normalized = matcher.replaceAll(r.substitution);
+            if (!normalized.equals(urlString)) {
+                urlString = normalized;
+                // the remaining rules must be checked against the new value
+                candidates = prefilter.candidates(urlString);
+            }
         }
 
         if (urlString.equals("")) {
@@ -205,7 +229,9 @@ public class RegexURLNormalizer extends URLFilter {
                 }
                 if (patternValue != null && subValue != null) {
                     Rule rule = createRule(patternValue, subValue);
-                    rules.add(rule);
+                    if (rule != null) {
+                        rules.add(rule);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -239,8 +265,8 @@ public class RegexURLNormalizer extends URLFilter {
      */
     public static void main(String[] args) throws FileNotFoundException, IOException {
         RegexURLNormalizer normalizer = new RegexURLNormalizer();
-        normalizer.rules =
-                normalizer.readConfiguration(new FileReader(args[0], StandardCharsets.UTF_8));
+        normalizer.setRules(
+                normalizer.readConfiguration(new FileReader(args[0], StandardCharsets.UTF_8)));
 
         String output = normalizer.filter(null, null, args[1]);
 
@@ -16,7 +16,6 @@
  */
 package org.apache.stormcrawler.indexing;
 
-import crawlercommons.domains.PaidLevelDomain;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -37,6 +36,7 @@ import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.PaidLevelDomains;
 import org.apache.stormcrawler.util.RobotsTags;
 import org.apache.stormcrawler.util.URLUtil;
 import org.slf4j.Logger;
@@ -282,8 +282,8 @@ public abstract class AbstractIndexerBolt extends BaseRichBolt {
             URL sURL = new URL(url);
             URL canonical = URLUtil.resolveURL(sURL, canonicalValue);
 
-            String sDomain = PaidLevelDomain.getPLD(sURL.getHost());
-            String canonicalDomain = PaidLevelDomain.getPLD(canonical.getHost());
+            String sDomain = PaidLevelDomains.getPLD(sURL.getHost());
+            String canonicalDomain = PaidLevelDomains.getPLD(canonical.getHost());
 
             // check that the domain is the same
             if (sDomain.equalsIgnoreCase(canonicalDomain)) {
@@ -128,4 +128,9 @@ public class LinkParseFilter extends XPathFilter {
         this.metadataTransfer = MetadataTransfer.getInstance(stormConf);
         this.urlFilters = URLFilters.fromConf(stormConf);
     }
+
+    @Override
+    public void cleanup() {
+        urlFilters.cleanup();
+    }
 }
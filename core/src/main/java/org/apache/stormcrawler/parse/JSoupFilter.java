@@ -37,4 +37,14 @@ public interface JSoupFilter extends Configurable {
             byte[] content,
             @NotNull org.jsoup.nodes.Document doc,
             @NotNull ParseResult parse);
+
+    /**
+     * Might be used to clean any resources associated with this {@link JSoupFilter}. See {@link
+     * org.apache.storm.task.IBolt#cleanup()} for more details.
+     *
+     * @since 3.4.1
+     */
+    default void cleanup() {
+        // nothing to do here
+    }
 }
@@ -32,11 +32,13 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.storm.Config;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.utils.Utils;
 import org.apache.stormcrawler.JSONResource;
 import org.apache.stormcrawler.util.AbstractConfigurable;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.apache.stormcrawler.util.Configurable;
+import org.apache.stormcrawler.util.FilterMetrics;
 import org.jetbrains.annotations.NotNull;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -51,6 +53,9 @@ public class JSoupFilters extends AbstractConfigurable implements JSoupFilter, J
 
     private JSoupFilter[] filters;
 
+    /** Per-filter metrics, null if not registered */
+    private FilterMetrics metrics;
+
     private JSoupFilters() {
         filters = new JSoupFilter[0];
     }
@@ -110,17 +115,47 @@ public class JSoupFilters extends AbstractConfigurable implements JSoupFilter, J
         filters = list.toArray(new JSoupFilter[0]);
     }
 
+    /**
+     * Registers the per-filter metrics, see {@link FilterMetrics}.
+     *
+     * @since 3.4.1
+     */
+    public void registerMetrics(@NotNull TopologyContext context) {
+        // the empty instance is shared
+        if (filters.length == 0) return;
+        int sampling = FilterMetrics.getSampling(stormConf);
+        if (sampling > 0) {
+            metrics = new FilterMetrics(filters, sampling);
+            context.registerMetric("jsoup_filters", metrics, 30);
+        }
+    }
+
     @Override
     public void filter(
             @NotNull String url,
             byte[] content,
             @NotNull Document doc,
             @NotNull ParseResult parse) {
-        for (JSoupFilter filter : filters) {
-            long start = System.currentTimeMillis();
+        final FilterMetrics metrics = this.metrics;
+        for (int i = 0; i < filters.length; i++) {
+            JSoupFilter filter = filters[i];
+            boolean sampled = metrics != null && metrics.sample();
+            // also timed for the debug log, which doesn't go into the sampled metrics
+            boolean timed = sampled || LOG.isDebugEnabled();
+            long start = timed ? System.nanoTime() : 0;
             filter.filter(url, content, doc, parse);
-            long end = System.currentTimeMillis();
-            LOG.debug("JSoupFilter {} took {} msec", filter.getClass().getName(), end - start);
+            long nanos = timed ? System.nanoTime() - start : -1;
+            LOG.debug("JSoupFilter {} took {} nsec", filter.getClass().getName(), nanos);
+            if (metrics != null) {
+                metrics.record(i, sampled ? nanos : -1, false, false);
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        for (JSoupFilter filter : filters) {
+            filter.cleanup();
         }
     }
 
@@ -34,10 +34,12 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.storm.Config;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.utils.Utils;
 import org.apache.stormcrawler.JSONResource;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.apache.stormcrawler.util.Configurable;
+import org.apache.stormcrawler.util.FilterMetrics;
 import org.jetbrains.annotations.NotNull;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -57,6 +59,9 @@ public class ParseFilters extends ParseFilter implements JSONResource {
 
     private ParseFilter[] filters;
 
+    /** Per-filter metrics, null if not registered */
+    private FilterMetrics metrics;
+
     private ParseFilters() {
         filters = new ParseFilter[0];
     }
@@ -117,6 +122,21 @@ public class ParseFilters extends ParseFilter implements JSONResource {
         filters = list.toArray(new ParseFilter[0]);
     }
 
+    /**
+     * Registers the per-filter metrics, see {@link FilterMetrics}.
+     *
+     * @since 3.4.1
+     */
+    public void registerMetrics(@NotNull TopologyContext context) {
+        // the empty instance is shared
+        if (filters.length == 0) return;
+        int sampling = FilterMetrics.getSampling(stormConf);
+        if (sampling > 0) {
+            metrics = new FilterMetrics(filters, sampling);
+            context.registerMetric("parse_filters", metrics, 30);
+        }
+    }
+
     @Override
     public boolean needsDOM() {
         for (ParseFilter filter : filters) {
@@ -131,8 +151,9 @@ public class ParseFilters extends ParseFilter implements JSONResource {
     @Override
     public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
 
-        for (ParseFilter filter : filters) {
-            long start = System.currentTimeMillis();
+        final FilterMetrics metrics = this.metrics;
+        for (int i = 0; i < filters.length; i++) {
+            ParseFilter filter = filters[i];
             if (doc == null && filter.needsDOM()) {
                 LOG.info(
                         "ParseFilter {} needs DOM but has none to work on - skip : {}",
@@ -140,9 +161,16 @@ public class ParseFilters extends ParseFilter implements JSONResource {
                         URL);
                 continue;
             }
+            boolean sampled = metrics != null && metrics.sample();
+            // also timed for the debug log, which doesn't go into the sampled metrics
+            boolean timed = sampled || LOG.isDebugEnabled();
+            long start = timed ? System.nanoTime() : 0;
             filter.filter(URL, content, doc, parse);
-            long end = System.currentTimeMillis();
-            LOG.debug("ParseFilter {} took {} msec", filter.getClass().getName(), end - start);
+            long nanos = timed ? System.nanoTime() - start : -1;
+            LOG.debug("ParseFilter {} took {} nsec", filter.getClass().getName(), nanos);
+            if (metrics != null) {
+                metrics.record(i, sampled ? nanos : -1, false, false);
+            }
         }
     }
 
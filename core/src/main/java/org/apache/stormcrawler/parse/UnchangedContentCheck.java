@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse;
+
+import java.util.Map;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.persistence.AdaptiveScheduler;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Allows the parser bolts to skip the documents whose content has not changed since the previous
+ * fetch. A 64-bit hash of the fetched bytes is stored in the metadata under {@value #HASH_KEY},
+ * which must be persisted, and compared with the one of the previous fetch. When they are
+ * identical, the parsing, parse filters and indexing can be skipped and only the status update is
+ * sent.
+ *
+ * <p>The signature from the previous fetch is carried forward as the old signature, so that the
+ * schedulers relying on the signatures (e.g. {@link AdaptiveScheduler}) see the document as
+ * unchanged.
+ *
+ * <pre>
+ * parser.skip.unchanged: true
+ *
+ * metadata.persist:
+ *  - ...
+ *  - content.hash
+ *  - signature
+ * </pre>
+ *
+ * @since 3.4.1
+ */
+public class UnchangedContentCheck {
+
+    /** Whether the documents with an unchanged content should be skipped, default false. */
+    public static final String SKIP_UNCHANGED_PARAM = "parser.skip.unchanged";
+
+    /** Metadata key of the hash of the content, must be persisted */
+    public static final String HASH_KEY = "content.hash";
+
+    private final boolean enabled;
+
+    public UnchangedContentCheck(Map<String, Object> conf) {
+        enabled = ConfUtils.getBoolean(conf, SKIP_UNCHANGED_PARAM, false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the hash of the content, to be passed to {@link #isUnchanged(String, Metadata)} and
+     * {@link #setHash(String, Metadata)}, or null if the check is disabled or there is no content.
+     */
+    @Nullable
+    public String hash(byte[] content) {
+        if (!enabled || content == null || content.length == 0) {
+            return null;
+        }
+        return Long.toHexString(Fingerprint.hash64(content));
+    }
+
+    /**
+     * Returns true if the hash is identical to the one of the content fetched previously, in which
+     * case the previous signature is copied as the old one. The metadata are left untouched
+     * otherwise, so that a document passed on by one parser to another gets checked again.
+     */
+    public boolean isUnchanged(@Nullable String hash, Metadata metadata) {
+        if (hash == null || !hash.equals(metadata.getFirstValue(HASH_KEY))) {
+            return false;
+        }
+        String signature = metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_KEY);
+        if (signature != null) {
+            metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, signature);
+        }
+        return true;
+    }
+
+    /**
+     * Stores the hash of the new content in the metadata, to be called by the parser which actually
+     * handles the document once it has been parsed successfully. A document ending as an error or a
+     * redirection must not get the hash, otherwise it would be skipped as unchanged when refetched.
+     */
+    public void setHash(@Nullable String hash, Metadata metadata) {
+        if (hash != null) {
+            metadata.setValue(HASH_KEY, hash);
+        }
+    }
+}
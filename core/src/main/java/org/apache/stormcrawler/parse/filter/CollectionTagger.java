@@ -23,7 +23,11 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -32,6 +36,7 @@ import org.apache.stormcrawler.JSONResource;
 import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseResult;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.MultiPatternMatcher;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -114,7 +119,9 @@ public class CollectionTagger extends ParseFilter implements JSONResource {
     @Override
     public void loadJSONResources(InputStream inputStream)
             throws JsonParseException, JsonMappingException, IOException {
-        collections = (Collections) objectMapper.readValue(inputStream, reference);
+        Collections loaded = (Collections) objectMapper.readValue(inputStream, reference);
+        loaded.compile();
+        collections = loaded;
     }
 
     @Override
@@ -130,14 +137,27 @@ class Collections {
 
     private Set<Collection> collections;
 
+    /** Finds the patterns of all the collections which can match a URL */
+    private MultiPatternMatcher prefilter;
+
     public void setCollections(Set<Collection> collections) {
         this.collections = collections;
     }
 
+    /** Indexes the patterns of the collections, must be called once they have been set */
+    void compile() {
+        List<Pattern> patterns = new ArrayList<>();
+        for (Collection collection : collections) {
+            collection.compile(patterns);
+        }
+        prefilter = new MultiPatternMatcher(patterns);
+    }
+
     public String[] tag(String url) {
         Set<String> tags = new HashSet<String>();
+        BitSet candidates = prefilter.candidates(url);
         for (Collection collection : collections) {
-            if (collection.matches(url)) {
+            if (collection.matches(url, candidates)) {
                 tags.add(collection.getName());
             }
         }
@@ -159,13 +179,37 @@ class Collection {
         this.name = name;
     }
 
+    private Pattern[] includes = new Pattern[0];
+    private Pattern[] excludes = new Pattern[0];
+
+    /** position of the first include and exclude patterns in the list passed to compile */
+    private int includesOffset;
+
+    private int excludesOffset;
+
+    /** Adds the patterns of the collection to the list of all the patterns */
+    void compile(List<Pattern> patterns) {
+        includes = includePatterns.toArray(new Pattern[0]);
+        includesOffset = patterns.size();
+        patterns.addAll(Arrays.asList(includes));
+        if (excludePatterns != null) {
+            excludes = excludePatterns.toArray(new Pattern[0]);
+        }
+        excludesOffset = patterns.size();
+        patterns.addAll(Arrays.asList(excludes));
+    }
+
     /**
+     * @param candidates indices of the patterns which can match the URL
      * @return true if the URL matches a pattern for this collection and no exclusion patterns
      */
-    public boolean matches(String url) {
+    public boolean matches(String url, BitSet candidates) {
         boolean matches = false;
-        for (Pattern includeP : includePatterns) {
-            Matcher m = includeP.matcher(url);
+        for (int i = 0; i < includes.length; i++) {
+            if (!candidates.get(includesOffset + i)) {
+                continue;
+            }
+            Matcher m = includes[i].matcher(url);
             if (m.matches()) {
                 matches = true;
                 break;
@@ -176,13 +220,12 @@ class Collection {
             return false;
         }
 
-        if (excludePatterns == null) {
-            return true;
-        }
-
         // check for antipatterns
-        for (Pattern excludeP : excludePatterns) {
-            Matcher m = excludeP.matcher(url);
+        for (int i = 0; i < excludes.length; i++) {
+            if (!candidates.get(excludesOffset + i)) {
+                continue;
+            }
+            Matcher m = excludes[i].matcher(url);
             if (m.matches()) {
                 return false;
             }
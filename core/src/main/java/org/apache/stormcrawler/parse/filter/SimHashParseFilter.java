@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Map;
+import java.util.OptionalLong;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.parse.ParseData;
+import org.apache.stormcrawler.parse.ParseFilter;
+import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.apache.stormcrawler.util.RobotsTags;
+import org.apache.stormcrawler.util.SimHashIndex;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.DocumentFragment;
+
+/**
+ * Computes a SimHash of the text of a page over shingles of words and looks it up in a {@link
+ * SimHashIndex} shared by the instances running in the same worker, in order to detect the pages
+ * which are near-duplicates of a page seen previously, e.g. differing only by session IDs,
+ * timestamps or ads.
+ *
+ * <p>Near-duplicates are marked in the metadata, which can be used to skip them at indexing time
+ * with the noIndex parameter, or to refetch them less often with a custom interval in the
+ * configuration of the {@link org.apache.stormcrawler.persistence.DefaultScheduler} e.g. <code>
+ * fetchInterval.nearDuplicate=true: 43200</code>.
+ *
+ * <p>Configuration properties:
+ *
+ * <dl>
+ *   <dt>keyName
+ *   <dd>name of the metadata field to hold the SimHash in hexadecimal (default:
+ *       &quot;simhash&quot;)
+ *   <dt>duplicateKeyName
+ *   <dd>name of the metadata field set to true for near-duplicates (default:
+ *       &quot;nearDuplicate&quot;)
+ *   <dt>duplicateOfKeyName
+ *   <dd>name of the metadata field holding the SimHash of the page it is a near-duplicate of
+ *       (default: &quot;nearDuplicateOf&quot;)
+ *   <dt>maxDistance
+ *   <dd>max number of bits by which the SimHashes of near-duplicates differ (default: 3)
+ *   <dt>shingleSize
+ *   <dd>number of words per shingle (default: 3)
+ *   <dt>minWords
+ *   <dd>min number of words for a page to be checked, so that short pages with little more than
+ *       boilerplate are not considered as duplicates of each other (default: 20)
+ *   <dt>indexName
+ *   <dd>name of the shared index, instances with different names use different indices (default:
+ *       &quot;default&quot;)
+ *   <dt>capacity
+ *   <dd>number of fingerprints per generation of the index, the index holds up to twice as many
+ *       (default: 1000000)
+ *   <dt>noIndex
+ *   <dd>whether near-duplicates should not be indexed (default: false)
+ * </dl>
+ *
+ * @since 3.4.1
+ */
+public class SimHashParseFilter extends ParseFilter {
+
+    private String keyName = "simhash";
+
+    private String duplicateKeyName = "nearDuplicate";
+
+    private String duplicateOfKeyName = "nearDuplicateOf";
+
+    private int maxDistance = 3;
+
+    private int shingleSize = 3;
+
+    private int minWords = 20;
+
+    private boolean noIndex = false;
+
+    private SimHashIndex index;
+
+    @Override
+    public void filter(String URL, byte[] content, DocumentFragment doc, ParseResult parse) {
+        ParseData parseData = parse.get(URL);
+        Metadata metadata = parseData.getMetadata();
+        metadata.remove(duplicateKeyName);
+        metadata.remove(duplicateOfKeyName);
+
+        String text = parseData.getText();
+        if (text == null) return;
+
+        int[] weights = new int[64];
+        int words = simhash(text, shingleSize, weights);
+        if (words < minWords) return;
+
+        long simhash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) simhash |= 1L << bit;
+        }
+        metadata.setValue(keyName, Long.toHexString(simhash));
+
+        OptionalLong duplicateOf = index.findOrAdd(simhash, Fingerprint.hash64(URL));
+        if (duplicateOf.isPresent()) {
+            metadata.setValue(duplicateKeyName, "true");
+            metadata.setValue(duplicateOfKeyName, Long.toHexString(duplicateOf.getAsLong()));
+            if (noIndex) {
+                metadata.setValue(RobotsTags.ROBOTS_NO_INDEX, "true");
+            }
+        }
+    }
+
+    /**
+     * Adds the hashes of the shingles of lowercased words of the text to the weights of the bits,
+     * returns the number of words
+     */
+    static int simhash(CharSequence text, int shingleSize, int[] weights) {
+        long[] window = new long[shingleSize];
+        int words = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i == length) break;
+            long h = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                h ^= Character.toLowerCase(text.charAt(i++));
+                h *= 0x100000001b3L;
+            }
+            window[words % shingleSize] = h;
+            words++;
+            if (words >= shingleSize) {
+                addShingle(window, words, weights);
+            }
+        }
+        // texts shorter than a shingle
+        if (words > 0 && words < shingleSize) {
+            addShingle(window, words, weights);
+        }
+        return words;
+    }
+
+    private static void addShingle(long[] window, int words, int[] weights) {
+        int size = Math.min(words, window.length);
+        long h = 0;
+        for (int j = words - size; j < words; j++) {
+            h = Fingerprint.mix64(h ^ window[j % window.length]);
+        }
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((h >>> bit) & 1) == 1 ? 1 : -1;
+        }
+    }
+
+    @Override
+    public void configure(@NotNull Map<String, Object> stormConf, @NotNull JsonNode filterParams) {
+        JsonNode node = filterParams.get("keyName");
+        if (node != null && node.isTextual()) {
+            keyName = node.asText();
+        }
+        node = filterParams.get("duplicateKeyName");
+        if (node != null && node.isTextual()) {
+            duplicateKeyName = node.asText();
+        }
+        node = filterParams.get("duplicateOfKeyName");
+        if (node != null && node.isTextual()) {
+            duplicateOfKeyName = node.asText();
+        }
+        node = filterParams.get("maxDistance");
+        if (node != null) {
+            maxDistance = node.asInt(maxDistance);
+        }
+        node = filterParams.get("shingleSize");
+        if (node != null) {
+            shingleSize = Math.max(1, node.asInt(shingleSize));
+        }
+        node = filterParams.get("minWords");
+        if (node != null) {
+            minWords = node.asInt(minWords);
+        }
+        node = filterParams.get("noIndex");
+        if (node != null) {
+            noIndex = node.asBoolean(noIndex);
+        }
+        String indexName = "default";
+        node = filterParams.get("indexName");
+        if (node != null && node.isTextual()) {
+            indexName = node.asText();
+        }
+        int capacity = 1_000_000;
+        node = filterParams.get("capacity");
+        if (node != null) {
+            capacity = node.asInt(capacity);
+        }
+        index = SimHashIndex.getInstance(indexName, maxDistance, capacity);
+    }
+}
@@ -19,12 +19,17 @@ package org.apache.stormcrawler.persistence;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import org.apache.storm.metric.api.MultiCountMetric;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
@@ -41,7 +46,9 @@ import org.slf4j.LoggerFactory;
 /**
  * Common features of spouts which query a backend to generate tuples. Tracks the URLs being
  * processes, with an optional delay before they are removed from the cache. Throttles the rate a
- * which queries are emitted and provides a buffer to store the URLs waiting to be sent.
+ * which queries are emitted and provides a buffer to store the URLs waiting to be sent. The next
+ * query can be sent before the buffer is empty, when the number of URLs left in it reaches a low
+ * watermark.
  *
  * @since 1.11
  */
@@ -55,6 +62,15 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
      */
     protected static final String StatusTTLPurgatory = "spout.ttl.purgatory";
 
+    /**
+     * Whether the URLs being processed and in the purgatory are tracked as 64-bit fingerprints in
+     * primitive sets, see {@link InFlightURLs}, instead of keeping the strings in a map and a
+     * cache. Reduces the memory used and the garbage created with large numbers of URLs in flight,
+     * but the values associated with the URLs in {@link #beingProcessed} are not kept. Default
+     * false.
+     */
+    protected static final String CompactInProcessParamName = "spout.inprocess.compact";
+
     /**
      * Min time to allow between 2 successive queries to the backend. Value in msecs, default 2000.
      */
@@ -79,6 +95,52 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
 
     protected Instant lastTimeResetToNOW;
 
+    /**
+     * Number of URLs left in the buffer at or below which the next query is sent, without waiting
+     * for the buffer to be empty, default 0.
+     */
+    protected static final String LowWatermarkParamName = "spout.buffer.low.watermark";
+
+    protected int lowWatermark = 0;
+
+    /**
+     * Whether the low watermark is raised to the number of URLs emitted during the time a query
+     * takes, based on the observed rates, so that the results arrive before the buffer runs out.
+     * The delay between queries is also derived from the observed rates: it is the time taken to
+     * emit the URLs returned by the previous query minus the time a query takes, capped by {@link
+     * #StatusMinDelayParamName}, which still applies as is when the previous query returned
+     * nothing. Default false.
+     */
+    protected static final String AdaptivePrefetchParamName = "spout.buffer.adaptive.prefetch";
+
+    protected boolean adaptivePrefetch = false;
+
+    /** Weight of the latest measurement in the averages of the drain rate and query latency */
+    private static final double RATE_WEIGHT = 0.3;
+
+    /** URLs emitted per msec, averaged over windows of a second */
+    private double drainRate = 0;
+
+    private long drainWindowStart = 0;
+
+    private long drainWindowEmitted = 0;
+
+    /** URLs taken from the buffer, emitted or not */
+    private long taken = 0;
+
+    /** Size of the buffer and URLs taken from it when the current query was sent */
+    private int bufferSizeAtQuery = 0;
+
+    private long takenAtQuery = 0;
+
+    /** Number of URLs returned by the last query */
+    private long lastQueryResults = 0;
+
+    /** Average time taken by the queries in msec */
+    private double queryLatency = 0;
+
+    private long timeQueryStarted = 0;
+
     private long timeLastQuerySent = 0;
     private long timeLastQueryReceived = 0;
 
@@ -108,7 +170,9 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         maxDelayBetweenQueries =
                 ConfUtils.getLong(stormConf, StatusMaxDelayParamName, maxDelayBetweenQueries);
 
-        beingProcessed = new InProcessMap<>(ttlPurgatory, TimeUnit.SECONDS);
+        boolean compact = ConfUtils.getBoolean(stormConf, CompactInProcessParamName, false);
+
+        beingProcessed = new InProcessMap<>(ttlPurgatory, TimeUnit.SECONDS, compact);
 
         eventCounter = context.registerMetric("counters", new MultiCountMetric(), 10);
 
@@ -126,6 +190,10 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         resetFetchDateAfterNSecs =
                 ConfUtils.getInt(stormConf, resetFetchDateParamName, resetFetchDateAfterNSecs);
 
+        lowWatermark = ConfUtils.getInt(stormConf, LowWatermarkParamName, lowWatermark);
+        adaptivePrefetch =
+                ConfUtils.getBoolean(stormConf, AdaptivePrefetchParamName, adaptivePrefetch);
+
         _collector = collector;
     }
 
@@ -145,17 +213,38 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
 
     private boolean active;
 
-    /** Map which holds elements some additional time after the removal. */
+    /**
+     * Map which holds elements some additional time after the removal. In compact mode, the keys
+     * are tracked as fingerprints by an {@link InFlightURLs} and the values are not kept: only
+     * containsKey, put, remove, size and isEmpty are supported, the other methods of the map throw
+     * an {@link UnsupportedOperationException}.
+     */
     public class InProcessMap<K, V> extends HashMap<K, V> {
 
         private final Cache<K, Optional<V>> deletionCache;
 
+        private final InFlightURLs fingerprints;
+
         public InProcessMap(long maxDuration, TimeUnit timeUnit) {
-            deletionCache = Caffeine.newBuilder().expireAfterWrite(maxDuration, timeUnit).build();
+            this(maxDuration, timeUnit, false);
+        }
+
+        public InProcessMap(long maxDuration, TimeUnit timeUnit, boolean compact) {
+            if (compact) {
+                deletionCache = null;
+                fingerprints = new InFlightURLs(maxDuration, timeUnit);
+            } else {
+                deletionCache =
+                        Caffeine.newBuilder().expireAfterWrite(maxDuration, timeUnit).build();
+                fingerprints = null;
+            }
         }
 
         @Override
         public boolean containsKey(Object key) {
+            if (fingerprints != null) {
+                return fingerprints.contains(key.toString());
+            }
             boolean inCache = super.containsKey(key);
             if (!inCache) {
                 inCache = deletionCache.getIfPresent((K) key) != null;
@@ -163,13 +252,171 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
             return inCache;
         }
 
+        /**
+         * Returns true if the URL with the given fingerprint, as computed by {@link
+         * org.apache.stormcrawler.util.Fingerprint#hash64(CharSequence)}, is being processed or in
+         * the purgatory. Only available in compact mode.
+         */
+        public boolean containsFingerprint(long fingerprint) {
+            if (fingerprints == null) {
+                throw new UnsupportedOperationException("Only available in compact mode");
+            }
+            return fingerprints.contains(fingerprint);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (fingerprints != null) {
+                fingerprints.add(key.toString());
+                return null;
+            }
+            return super.put(key, value);
+        }
+
         @Override
         public V remove(Object key) {
+            if (fingerprints != null) {
+                fingerprints.remove(key.toString());
+                return null;
+            }
             deletionCache.put((K) key, Optional.empty());
             return super.remove(key);
         }
 
+        @Override
+        public int size() {
+            if (fingerprints != null) {
+                return fingerprints.size();
+            }
+            return super.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /** Throws an exception in compact mode, where the keys and values are not kept */
+        private void checkNotCompact() {
+            if (fingerprints != null) {
+                throw new UnsupportedOperationException("Not supported in compact mode");
+            }
+        }
+
+        @Override
+        public V get(Object key) {
+            checkNotCompact();
+            return super.get(key);
+        }
+
+        @Override
+        public V getOrDefault(Object key, V defaultValue) {
+            checkNotCompact();
+            return super.getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            checkNotCompact();
+            return super.containsValue(value);
+        }
+
+        @Override
+        public Set<K> keySet() {
+            checkNotCompact();
+            return super.keySet();
+        }
+
+        @Override
+        public Collection<V> values() {
+            checkNotCompact();
+            return super.values();
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            checkNotCompact();
+            return super.entrySet();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            checkNotCompact();
+            super.forEach(action);
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            checkNotCompact();
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> m) {
+            checkNotCompact();
+            super.putAll(m);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            checkNotCompact();
+            return super.remove(key, value);
+        }
+
+        @Override
+        public V replace(K key, V value) {
+            checkNotCompact();
+            return super.replace(key, value);
+        }
+
+        @Override
+        public boolean replace(K key, V oldValue, V newValue) {
+            checkNotCompact();
+            return super.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+            checkNotCompact();
+            super.replaceAll(function);
+        }
+
+        @Override
+        public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+            checkNotCompact();
+            return super.computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public V computeIfPresent(
+                K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            checkNotCompact();
+            return super.computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            checkNotCompact();
+            return super.compute(key, remappingFunction);
+        }
+
+        @Override
+        public V merge(
+                K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+            checkNotCompact();
+            return super.merge(key, value, remappingFunction);
+        }
+
+        @Override
+        public void clear() {
+            checkNotCompact();
+            super.clear();
+        }
+
         public long inCache() {
+            if (fingerprints != null) {
+                return fingerprints.inPurgatory();
+            }
             return deletionCache.estimatedSize();
         }
     }
@@ -180,8 +427,12 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
 
         // force the refresh of the buffer even if the buffer is not empty
         if (!isInQuery.get() && triggerQueries()) {
-            populateBuffer();
-            timeLastQuerySent = System.currentTimeMillis();
+            query();
+        }
+        // or prefetch the next URLs before it gets empty
+        else if (!isInQuery.get() && belowLowWatermark() && throttleQueries() < 0) {
+            eventCounter.scope("prefetch").incrBy(1);
+            query();
         }
 
         if (buffer.hasNext()) {
@@ -193,10 +444,20 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
                 timestampEmptyBuffer = -1;
             }
             List<Object> fields = buffer.next();
+            if (fields == null) {
+                return;
+            }
+            taken++;
             String url = fields.get(0).toString();
+            // returned again by a query sent before it was acked
+            if (beingProcessed.containsKey(url)) {
+                eventCounter.scope("already_being_processed").incrBy(1);
+                return;
+            }
             this._collector.emit(fields, url);
             beingProcessed.put(url, null);
             eventCounter.scope("emitted").incrBy(1);
+            trackDrainRate();
             return;
         } else if (timestampEmptyBuffer == -1) {
             timestampEmptyBuffer = System.currentTimeMillis();
@@ -211,9 +472,69 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         }
 
         // re-populate the buffer
-        populateBuffer();
+        query();
+    }
 
+    private void query() {
+        timeQueryStarted = System.currentTimeMillis();
+        bufferSizeAtQuery = buffer.size();
+        takenAtQuery = taken;
+        populateBuffer();
         timeLastQuerySent = System.currentTimeMillis();
+        // synchronous query, already completed
+        if (!isInQuery.get()) {
+            trackQuery(timeLastQuerySent - timeQueryStarted);
+        }
+    }
+
+    /**
+     * Indicates whether the number of URLs in the buffer is low enough for the next query to be
+     * sent. With adaptive prefetching, the threshold is at least the number of URLs expected to be
+     * emitted while the query is running.
+     */
+    private boolean belowLowWatermark() {
+        long watermark = lowWatermark;
+        if (adaptivePrefetch) {
+            watermark = Math.max(watermark, (long) Math.ceil(drainRate * queryLatency));
+        }
+        // an empty buffer gets populated anyway
+        int size = buffer.size();
+        return watermark > 0 && size > 0 && size <= watermark;
+    }
+
+    private void trackDrainRate() {
+        long now = System.currentTimeMillis();
+        if (drainWindowStart == 0) {
+            drainWindowStart = now;
+        }
+        drainWindowEmitted++;
+        long elapsed = now - drainWindowStart;
+        if (elapsed >= 1000) {
+            double rate = (double) drainWindowEmitted / elapsed;
+            drainRate = drainRate == 0 ? rate : drainRate + RATE_WEIGHT * (rate - drainRate);
+            drainWindowStart = now;
+            drainWindowEmitted = 0;
+        }
+    }
+
+    /** Records the latency of the query which has just completed and the number of results */
+    private void trackQuery(long msec) {
+        queryLatency =
+                queryLatency == 0 ? msec : queryLatency + RATE_WEIGHT * (msec - queryLatency);
+        lastQueryResults = buffer.size() - bufferSizeAtQuery + (taken - takenAtQuery);
+    }
+
+    /**
+     * Returns the min time between two queries. With adaptive prefetching, it is the time needed to
+     * emit the URLs returned by the last query minus the time a query takes, so that the next
+     * results arrive as the buffer runs out, without exceeding minDelayBetweenQueries.
+     */
+    private long delayBetweenQueries() {
+        if (!adaptivePrefetch || drainRate == 0 || lastQueryResults <= 0) {
+            return minDelayBetweenQueries;
+        }
+        long delay = (long) (lastQueryResults / drainRate - queryLatency);
+        return Math.max(0, Math.min(delay, minDelayBetweenQueries));
     }
 
     /**
@@ -223,9 +544,10 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
     private long throttleQueries() {
         if (timeLastQuerySent != 0) {
             // check that we allowed some time between queries
+            long delay = delayBetweenQueries();
             long difference = System.currentTimeMillis() - timeLastQuerySent;
-            if (difference < minDelayBetweenQueries) {
-                return minDelayBetweenQueries - difference;
+            if (difference < delay) {
+                return delay - difference;
             }
         }
         return -1;
@@ -254,6 +576,9 @@ public abstract class AbstractQueryingSpout extends BaseRichSpout {
         isInQuery.set(false);
         LOG.trace("{} isInquery set to false");
         timeLastQueryReceived = System.currentTimeMillis();
+        if (timeQueryStarted != 0) {
+            trackQuery(timeLastQueryReceived - timeQueryStarted);
+        }
     }
 
     @Override
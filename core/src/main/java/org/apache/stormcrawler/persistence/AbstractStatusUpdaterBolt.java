@@ -20,12 +20,11 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import org.apache.commons.lang.time.DateUtils;
+import java.util.concurrent.TimeUnit;
 import org.apache.storm.metric.api.IMetric;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
@@ -37,12 +36,15 @@ import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.FingerprintCache;
 import org.apache.stormcrawler.util.MetadataTransfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Abstract bolt used to store the status of URLs. Uses the DefaultScheduler and MetadataTransfer.
+ * Subclasses store the updates one by one, see {@link BatchingStatusUpdaterBolt} to store them in
+ * batches.
  */
 public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
 
@@ -64,6 +66,18 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
      */
     public static String cacheConfigParamName = "status.updater.cache.spec";
 
+    /**
+     * Parameter name for the memory in MB used by a cache of URL fingerprints, which replaces the
+     * one configured with {@link #cacheConfigParamName} if set to a positive value. Costs about 10
+     * bytes per URL instead of the URL itself; entries are evicted when the cache is full but do
+     * not expire.
+     */
+    public static String cacheFingerprintsMemoryParamName = "status.updater.cache.fingerprints.mb";
+
+    /** Whether the cache of URL fingerprints is allocated outside the Java heap */
+    public static String cacheFingerprintsOffHeapParamName =
+            "status.updater.cache.fingerprints.offheap";
+
     /**
      * Used for rounding nextFetchDates. Values are hour, minute or second, the latter is the
      * default value.
@@ -84,6 +98,10 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
     private MetadataTransfer mdTransfer;
 
     private Cache<Object, Object> cache;
+
+    /** Used instead of the cache above if configured */
+    private FingerprintCache fingerprints;
+
     private boolean useCache = true;
 
     private int maxFetchErrors = 3;
@@ -91,7 +109,8 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
     private long cacheHits = 0;
     private long cacheMisses = 0;
 
-    private int roundDateUnit = Calendar.SECOND;
+    /** unit in msec to which the nextFetchDates are rounded */
+    private long roundDateMsec = 1000;
 
     @Override
     public void prepare(
@@ -105,8 +124,17 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         useCache = ConfUtils.getBoolean(stormConf, useCacheParamName, true);
 
         if (useCache) {
-            String spec = ConfUtils.getString(stormConf, cacheConfigParamName);
-            cache = Caffeine.from(spec).build();
+            int fingerprintsMB = ConfUtils.getInt(stormConf, cacheFingerprintsMemoryParamName, 0);
+            if (fingerprintsMB > 0) {
+                fingerprints =
+                        new FingerprintCache(
+                                fingerprintsMB * 1024L * 1024L,
+                                ConfUtils.getBoolean(
+                                        stormConf, cacheFingerprintsOffHeapParamName, false));
+            } else {
+                String spec = ConfUtils.getString(stormConf, cacheConfigParamName);
+                cache = Caffeine.from(spec).build();
+            }
 
             context.registerMetric(
                     "cache",
@@ -116,7 +144,11 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
                             Map<String, Long> statsMap = new HashMap<>();
                             statsMap.put("hits", cacheHits);
                             statsMap.put("misses", cacheMisses);
-                            statsMap.put("size", cache.estimatedSize());
+                            statsMap.put(
+                                    "size",
+                                    fingerprints != null
+                                            ? fingerprints.size()
+                                            : cache.estimatedSize());
                             cacheHits = 0;
                             cacheMisses = 0;
                             return statsMap;
@@ -129,9 +161,9 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
 
         String tmpdateround = ConfUtils.getString(stormConf, roundDateParamName, "SECOND");
         if (tmpdateround.equalsIgnoreCase("MINUTE")) {
-            roundDateUnit = Calendar.MINUTE;
+            roundDateMsec = TimeUnit.MINUTES.toMillis(1);
         } else if (tmpdateround.equalsIgnoreCase("HOUR")) {
-            roundDateUnit = Calendar.HOUR;
+            roundDateMsec = TimeUnit.HOURS.toMillis(1);
         }
     }
 
@@ -148,7 +180,9 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         // if so we've already seen it and don't need to
         // store it again
         if (potentiallyNew && useCache) {
-            if (cache.getIfPresent(url) != null) {
+            if (fingerprints != null
+                    ? fingerprints.contains(url)
+                    : cache.getIfPresent(url) != null) {
                 // no need to add it to the queue
                 LOG.debug("URL {} already in cache", url);
                 cacheHits++;
@@ -167,14 +201,8 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
         String dateInMetadata = metadata.getFirstValue(AS_IS_NEXTFETCHDATE_METADATA);
         if (dateInMetadata != null) {
             Date nextFetch = Date.from(Instant.parse(dateInMetadata));
-            try {
-                store(url, status, mdTransfer.filter(metadata), Optional.of(nextFetch), tuple);
-                return;
-            } catch (Exception e) {
-                LOG.error("Exception caught when storing", e);
-                _collector.fail(tuple);
-                return;
-            }
+            dispatch(url, status, mdTransfer.filter(metadata), Optional.of(nextFetch), tuple);
+            return;
         }
 
         // store last processed or discovery date in UTC
@@ -228,11 +256,17 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
 
         // round next fetch date - unless it is never
         if (nextFetch.isPresent()) {
-            nextFetch = Optional.of(DateUtils.round(nextFetch.get(), this.roundDateUnit));
+            long time = nextFetch.get().getTime();
+            long rounded = Math.floorDiv(time + roundDateMsec / 2, roundDateMsec) * roundDateMsec;
+            nextFetch = Optional.of(new Date(rounded));
         }
 
-        // extensions of this class will handle the storage
-        // on a per document basis
+        dispatch(url, status, metadata, nextFetch, tuple);
+    }
+
+    /** Extensions of this class handle the storage on a per document basis */
+    private void dispatch(
+            String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple tuple) {
         try {
             store(url, status, metadata, nextFetch, tuple);
         } catch (Exception e) {
@@ -255,7 +289,9 @@ public abstract class AbstractStatusUpdaterBolt extends BaseRichBolt {
     /** Must be called by extending classes to store and collect in one go */
     protected final void ack(Tuple t, String url) {
         // keep the URL in the cache
-        if (useCache) {
+        if (fingerprints != null) {
+            fingerprints.add(url);
+        } else if (useCache) {
             cache.put(url, "");
         }
 
@@ -16,13 +16,11 @@
  */
 package org.apache.stormcrawler.persistence;
 
-import java.time.Duration;
-import java.util.Calendar;
+import java.time.Instant;
 import java.util.Date;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 import org.apache.http.HttpHeaders;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
@@ -225,15 +223,13 @@ public class AdaptiveScheduler extends DefaultScheduler {
             return super.schedule(status, metadata);
         }
 
-        Calendar now = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ROOT);
+        final long now = System.currentTimeMillis();
 
         String signatureModified = metadata.getFirstValue(SIGNATURE_MODIFIED_KEY);
 
         boolean changed = false;
 
-        final String modifiedTimeString = now.toInstant().toString();
-
-        if (metadata.getFirstValue("fetch.statusCode").equals("304")) {
+        if ("304".equals(metadata.getFirstValue("fetch.statusCode"))) {
             // HTTP 304 Not Modified
             // - no new signature calculated because no content fetched
             // - do not compare persisted signatures
@@ -247,23 +243,22 @@ public class AdaptiveScheduler extends DefaultScheduler {
             LOG.debug("No signature for FETCHED page: {}", metadata);
             if (setLastModified && signature != null) {
                 // set last-modified time for first fetch
-                metadata.setValue(HttpHeaders.LAST_MODIFIED, modifiedTimeString);
+                metadata.setValue(HttpHeaders.LAST_MODIFIED, Instant.ofEpochMilli(now).toString());
             }
-            Optional<Date> nextFetch = super.schedule(status, metadata);
-            if (nextFetch.isPresent()) {
-                long fetchIntervalMinutes =
-                        Duration.between(now.toInstant(), nextFetch.get().toInstant()).toMinutes();
-                metadata.setValue(FETCH_INTERVAL_KEY, Long.toString(fetchIntervalMinutes));
+            int fetchIntervalMinutes = getIntervalMinutes(status, metadata);
+            if (fetchIntervalMinutes == -1) {
+                return Optional.empty();
             }
-            return nextFetch;
+            metadata.setValue(FETCH_INTERVAL_KEY, Integer.toString(fetchIntervalMinutes));
+            return Optional.of(new Date(now + TimeUnit.MINUTES.toMillis(fetchIntervalMinutes)));
         } else if (signature.equals(oldSignature)) {
             // unchanged
         } else {
             // change detected by signature comparison
             changed = true;
-            signatureModified = modifiedTimeString;
+            signatureModified = Instant.ofEpochMilli(now).toString();
             if (setLastModified) {
-                metadata.setValue(HttpHeaders.LAST_MODIFIED, modifiedTimeString);
+                metadata.setValue(HttpHeaders.LAST_MODIFIED, signatureModified);
             }
         }
 
@@ -304,15 +299,13 @@ public class AdaptiveScheduler extends DefaultScheduler {
             // remove old signature (do not keep same signature twice)
             metadata.remove(SIGNATURE_OLD_KEY);
             if (signatureModified == null) {
-                signatureModified = modifiedTimeString;
+                signatureModified = Instant.ofEpochMilli(now).toString();
             }
         }
 
         metadata.setValue(FETCH_INTERVAL_KEY, Integer.toString(interval));
         metadata.setValue(SIGNATURE_MODIFIED_KEY, signatureModified);
 
-        now.add(Calendar.MINUTE, interval);
-
-        return Optional.of(now.getTime());
+        return Optional.of(new Date(now + TimeUnit.MINUTES.toMillis(interval)));
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.storm.Config;
+import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Status updater which stores the updates in batches. The updates are accumulated until {@link
+ * #batchSizeParamName} of them are waiting or the oldest one has been waiting for {@link
+ * #batchMaxDelayParamName} msec, which is checked on every tuple and on tick tuples sent every
+ * second. The tuples of a batch are acked once it has been stored or failed if storing it threw an
+ * exception, subclasses only have to implement {@link #storeBatch(List)}. A DISCOVERED URL which is
+ * already in the current batch is acked straight away instead of being added to it again.
+ *
+ * @since 3.4.1
+ */
+public abstract class BatchingStatusUpdaterBolt extends AbstractStatusUpdaterBolt {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingStatusUpdaterBolt.class);
+
+    /** Max number of updates passed at once to {@link #storeBatch(List)}. Default value is 100. */
+    public static String batchSizeParamName = "status.updater.batch.size";
+
+    /**
+     * Max time in msec an update can be kept in a batch before it is stored. Default value is 1000.
+     */
+    public static String batchMaxDelayParamName = "status.updater.batch.max.delay.msec";
+
+    /** Updates waiting to be passed to storeBatch */
+    private List<StatusUpdate> batch = new ArrayList<>();
+
+    /** URLs in the current batch */
+    private final Set<String> batchURLs = new HashSet<>();
+
+    private int batchSize = 100;
+
+    private long batchMaxDelay = 1000;
+
+    /** Time at which the first update was added to the current batch */
+    private long batchStart;
+
+    private final BatchStats batchStats = new BatchStats();
+
+    /** Activity of the batches since the metrics were last collected */
+    private static class BatchStats implements IMetric {
+        private long batches;
+        private long updates;
+        private long failed;
+        private long totalMsec;
+        private long maxMsec;
+
+        synchronized void add(int size, long msec, boolean success) {
+            batches++;
+            updates += size;
+            if (!success) failed += size;
+            totalMsec += msec;
+            maxMsec = Math.max(maxMsec, msec);
+        }
+
+        @Override
+        public synchronized Object getValueAndReset() {
+            Map<String, Object> statsMap = new HashMap<>();
+            statsMap.put("batches", batches);
+            statsMap.put("updates", updates);
+            statsMap.put("failed", failed);
+            statsMap.put("avg_size", batches == 0 ? 0d : (double) updates / batches);
+            statsMap.put("avg_msec", batches == 0 ? 0d : (double) totalMsec / batches);
+            statsMap.put("max_msec", maxMsec);
+            batches = updates = failed = totalMsec = maxMsec = 0;
+            return statsMap;
+        }
+    }
+
+    @Override
+    public void prepare(
+            Map<String, Object> stormConf, TopologyContext context, OutputCollector collector) {
+        super.prepare(stormConf, context, collector);
+        batchSize = ConfUtils.getInt(stormConf, batchSizeParamName, 100);
+        batchMaxDelay = ConfUtils.getLong(stormConf, batchMaxDelayParamName, 1000);
+        batch = new ArrayList<>(batchSize);
+        context.registerMetric("status_batches", batchStats, 30);
+    }
+
+    /** Tick tuples are used to store the batches which have been waiting for too long */
+    @Override
+    public Map<String, Object> getComponentConfiguration() {
+        Config conf = new Config();
+        conf.put(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, 1);
+        return conf;
+    }
+
+    @Override
+    public void execute(Tuple tuple) {
+        if (TupleUtils.isTick(tuple)) {
+            if (!batch.isEmpty() && System.currentTimeMillis() - batchStart >= batchMaxDelay) {
+                flushBatch();
+            }
+            return;
+        }
+        super.execute(tuple);
+    }
+
+    /**
+     * Adds the update to the current batch and stores the latter if it is full or too old.
+     * Subclasses overriding it must call it for the update to be stored.
+     */
+    @Override
+    protected void store(
+            String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple t) {
+        // the URL is either discovered already or has a status which takes precedence
+        if (!batchURLs.add(url) && status.equals(Status.DISCOVERED)) {
+            LOG.debug("URL {} already in the batch", url);
+            _collector.ack(t);
+            return;
+        }
+        if (batch.isEmpty()) {
+            batchStart = System.currentTimeMillis();
+        }
+        batch.add(new StatusUpdate(url, status, metadata, nextFetch, t));
+        if (batch.size() >= batchSize || System.currentTimeMillis() - batchStart >= batchMaxDelay) {
+            flushBatch();
+        }
+    }
+
+    /** Stores the current batch, acks its tuples if successful or fails them otherwise */
+    private void flushBatch() {
+        List<StatusUpdate> updates = batch;
+        batch = new ArrayList<>(batchSize);
+        batchURLs.clear();
+        long start = System.currentTimeMillis();
+        boolean success = true;
+        try {
+            storeBatch(updates);
+        } catch (Exception e) {
+            LOG.error("Exception caught when storing a batch of {} updates", updates.size(), e);
+            success = false;
+        }
+        batchStats.add(updates.size(), System.currentTimeMillis() - start, success);
+        for (StatusUpdate update : updates) {
+            if (success) {
+                ack(update.getTuple(), update.getUrl());
+            } else {
+                _collector.fail(update.getTuple());
+            }
+        }
+    }
+
+    /** Stores the pending updates, subclasses overriding it must call it before closing */
+    @Override
+    public void cleanup() {
+        if (!batch.isEmpty()) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Stores a batch of updates in one go. The tuples are acked by this class once the method
+     * returns or failed if it throws an exception, implementations must not ack or fail them.
+     */
+    protected abstract void storeBatch(List<StatusUpdate> updates) throws Exception;
+}
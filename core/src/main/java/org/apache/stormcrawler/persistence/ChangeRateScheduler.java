@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.parse.filter.MD5SignatureParseFilter;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler estimating how often each page changes and refetching it just often enough to keep the
+ * copy fresh with a target probability.
+ *
+ * <p>The changes of a page are modelled as a Poisson process of rate λ, the copy fetched at time 0
+ * is still fresh at time t with probability exp(-λt) and its average freshness over an interval of
+ * length I is (1 - exp(-λI)) / λI. The scheduler picks, for each page, the interval for which that
+ * average equals the target freshness, so pages which rarely change are rarely refetched.
+ *
+ * <p>Whether a page has changed is detected by comparing its signature with the previous one, as
+ * done by the {@link AdaptiveScheduler}. A refetch only tells whether at least one change happened
+ * since the previous fetch, the change rate is therefore estimated from the number of observations
+ * n, the number of them where a change was detected X and the mean interval between the fetches Ī
+ * with the estimator of Cho and Garcia-Molina: λ = -ln((n - X + 0.5) / (n + 0.5)) / Ī. The counts
+ * decay so that the estimate follows pages whose change rate varies over time. The history is
+ * stored compactly in a single metadata field, which must be persisted:
+ *
+ * <pre>
+ * changeRate: observations,changes,observedMinutes,lastFetch,lastChange
+ * </pre>
+ *
+ * with the timestamps in epoch milliseconds.
+ *
+ * <p>A global budget of refetches per minute can be set. The scheduler measures the rate at which
+ * the pages it schedules are refetched and stretches all the intervals uniformly when it exceeds
+ * the budget. As each scheduler instance only sees the URLs going through its status updater bolt,
+ * the budget applies per instance.
+ *
+ * <h2>Configuration</h2>
+ *
+ * <pre>
+ * scheduler.class: "org.apache.stormcrawler.persistence.ChangeRateScheduler"
+ * # target average freshness of the pages (0.0 &lt; freshness &lt; 1.0)
+ * scheduler.changerate.freshness: 0.9
+ * # min. and max. interval in minutes
+ * scheduler.changerate.fetchInterval.min: 60
+ * scheduler.changerate.fetchInterval.max: 43200
+ * # max. factor by which the interval can grow compared to the mean observed one
+ * scheduler.changerate.max.growth: 2.0
+ * # number of observations after which the old ones start to be forgotten
+ * scheduler.changerate.history.size: 32
+ * # max. number of refetches per minute planned by a scheduler instance, 0 for no limit
+ * scheduler.changerate.budget: 0
+ *
+ * metadata.persist:
+ *  - ...
+ *  - signature
+ *  - fetch.statusCode
+ *  - changeRate
+ * </pre>
+ *
+ * <p>The signature and a copy of the previous one are generated by the {@link
+ * MD5SignatureParseFilter}, configured as for the {@link AdaptiveScheduler}. Until a page has been
+ * observed twice, and for the statuses other than FETCHED, the intervals are the ones of the {@link
+ * DefaultScheduler}.
+ *
+ * @since 3.4.1
+ */
+public class ChangeRateScheduler extends DefaultScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeRateScheduler.class);
+
+    /** Configuration property (float) for the target average freshness of the pages. */
+    public static final String FRESHNESS = "scheduler.changerate.freshness";
+
+    /** Configuration property (int) to set the minimum fetch interval in minutes. */
+    public static final String INTERVAL_MIN = "scheduler.changerate.fetchInterval.min";
+
+    /** Configuration property (int) to set the maximum fetch interval in minutes. */
+    public static final String INTERVAL_MAX = "scheduler.changerate.fetchInterval.max";
+
+    /**
+     * Configuration property (float) for the maximum ratio between the next interval and the mean
+     * observed one, so that a page is not pushed back to the maximum interval after a couple of
+     * fetches without change.
+     */
+    public static final String MAX_GROWTH = "scheduler.changerate.max.growth";
+
+    /** Configuration property (int) for the number of observations kept in the history. */
+    public static final String HISTORY_SIZE = "scheduler.changerate.history.size";
+
+    /**
+     * Configuration property (float) for the maximum number of refetches per minute planned by the
+     * scheduler, 0 for no limit.
+     */
+    public static final String BUDGET = "scheduler.changerate.budget";
+
+    /** Key of the change history in the metadata, must be listed in "metadata.persist". */
+    public static final String HISTORY_KEY = "changeRate";
+
+    protected double freshness = 0.9;
+    protected int minFetchInterval = 60;
+    protected int maxFetchInterval = 60 * 24 * 30;
+    protected double maxGrowth = 2.0;
+    protected int historySize = 32;
+    protected double budget = 0;
+
+    /** λI giving an average freshness equal to the target */
+    private double exposure;
+
+    /** Factor applied to the intervals to stay within the budget */
+    private double stretch = 1.0;
+
+    private long budgetWindowStart = -1;
+    private long budgetWindowCount = 0;
+
+    @Override
+    public void init(Map<String, Object> stormConf) {
+        super.init(stormConf);
+        freshness = ConfUtils.getFloat(stormConf, FRESHNESS, (float) freshness);
+        if (freshness <= 0 || freshness >= 1) {
+            throw new IllegalArgumentException(FRESHNESS + " must be between 0 and 1");
+        }
+        minFetchInterval = ConfUtils.getInt(stormConf, INTERVAL_MIN, minFetchInterval);
+        maxFetchInterval = ConfUtils.getInt(stormConf, INTERVAL_MAX, maxFetchInterval);
+        maxGrowth = ConfUtils.getFloat(stormConf, MAX_GROWTH, (float) maxGrowth);
+        historySize = Math.max(1, ConfUtils.getInt(stormConf, HISTORY_SIZE, historySize));
+        budget = ConfUtils.getFloat(stormConf, BUDGET, (float) budget);
+        exposure = solveExposure(freshness);
+    }
+
+    /**
+     * Returns x such that (1 - exp(-x)) / x = freshness, the function is decreasing from 1 to 0 for
+     * x > 0.
+     */
+    static double solveExposure(double freshness) {
+        double low = 0;
+        double high = 1;
+        while (averageFreshness(high) > freshness) {
+            high *= 2;
+        }
+        for (int i = 0; i < 60; i++) {
+            double mid = (low + high) / 2;
+            if (averageFreshness(mid) > freshness) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    private static double averageFreshness(double x) {
+        return x == 0 ? 1 : -Math.expm1(-x) / x;
+    }
+
+    @Override
+    public Optional<Date> schedule(Status status, Metadata metadata) {
+        return schedule(status, metadata, System.currentTimeMillis());
+    }
+
+    Optional<Date> schedule(Status status, Metadata metadata, long now) {
+        if (status != Status.FETCHED) {
+            if (status == Status.ERROR) {
+                metadata.remove(HISTORY_KEY);
+            }
+            return super.schedule(status, metadata);
+        }
+
+        History history = History.parse(metadata.getFirstValue(HISTORY_KEY));
+
+        Boolean changed = hasChanged(metadata);
+        if (history != null && changed != null && now > history.lastFetch) {
+            history.observe(now, changed, 1.0 - 1.0 / historySize);
+        } else if (history == null) {
+            history = new History(now);
+        }
+        history.lastFetch = now;
+        metadata.setValue(HISTORY_KEY, history.toString());
+        // temporary copy, no need to keep it
+        metadata.remove(AdaptiveScheduler.SIGNATURE_OLD_KEY);
+
+        long intervalMsec;
+        if (history.observations == 0 || history.observedMinutes <= 0) {
+            int minutes = getIntervalMinutes(status, metadata);
+            if (minutes == -1) {
+                return Optional.empty();
+            }
+            intervalMsec = TimeUnit.MINUTES.toMillis(minutes);
+        } else {
+            intervalMsec = TimeUnit.MINUTES.toMillis(computeInterval(history));
+        }
+
+        updateStretch(now);
+
+        LOG.debug("Next fetch in {} msec for {}", intervalMsec, history);
+
+        return Optional.of(new Date(now + intervalMsec));
+    }
+
+    /**
+     * @return whether the content has changed since the previous fetch or null if it can't be
+     *     determined
+     */
+    private static Boolean hasChanged(Metadata metadata) {
+        if ("304".equals(metadata.getFirstValue("fetch.statusCode"))) {
+            return false;
+        }
+        String signature = metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_KEY);
+        String oldSignature = metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_OLD_KEY);
+        if (signature == null || oldSignature == null) {
+            return null;
+        }
+        return !signature.equals(oldSignature);
+    }
+
+    /** Interval in minutes for a page with at least one observation */
+    int computeInterval(History history) {
+        double meanInterval = history.observedMinutes / history.observations;
+        double unchanged =
+                (history.observations - history.changes + 0.5) / (history.observations + 0.5);
+        double rate = -Math.log(unchanged) / meanInterval;
+        double interval = rate > 0 ? exposure / rate : Double.MAX_VALUE;
+        interval = Math.min(interval, maxGrowth * meanInterval);
+        interval *= stretch;
+        interval = Math.max(minFetchInterval, Math.min(maxFetchInterval, interval));
+        return (int) Math.round(interval);
+    }
+
+    /**
+     * Counts the pages scheduled over windows of a minute, which at steady state is the rate at
+     * which they are refetched, and adjusts the stretch factor so that it stays within the budget.
+     */
+    private void updateStretch(long now) {
+        if (budget <= 0) return;
+        if (budgetWindowStart == -1) {
+            budgetWindowStart = now;
+        }
+        budgetWindowCount++;
+        long elapsed = now - budgetWindowStart;
+        if (elapsed < 60_000) return;
+        double ratePerMinute = budgetWindowCount * 60_000d / elapsed;
+        // move half way in log scale towards the ratio to the budget
+        stretch *= Math.sqrt(ratePerMinute / budget);
+        stretch = Math.max(1.0, Math.min(stretch, (double) maxFetchInterval / minFetchInterval));
+        budgetWindowStart = now;
+        budgetWindowCount = 0;
+    }
+
+    double getStretch() {
+        return stretch;
+    }
+
+    /** Decayed counts of the observations of a page */
+    static class History {
+        double observations;
+        double changes;
+        double observedMinutes;
+        long lastFetch;
+        long lastChange;
+
+        History(long now) {
+            this.lastFetch = now;
+            this.lastChange = now;
+        }
+
+        void observe(long now, boolean changed, double decay) {
+            observations = observations * decay + 1;
+            changes = changes * decay + (changed ? 1 : 0);
+            observedMinutes = observedMinutes * decay + (now - lastFetch) / 60_000d;
+            if (changed) {
+                lastChange = now;
+            }
+        }
+
+        static History parse(String value) {
+            if (value == null) return null;
+            String[] fields = value.split(",");
+            if (fields.length != 5) return null;
+            try {
+                History history = new History(Long.parseLong(fields[3]));
+                history.observations = Double.parseDouble(fields[0]);
+                history.changes = Double.parseDouble(fields[1]);
+                history.observedMinutes = Double.parseDouble(fields[2]);
+                history.lastChange = Long.parseLong(fields[4]);
+                return history;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.ROOT,
+                    "%.3f,%.3f,%.1f,%d,%d",
+                    observations,
+                    changes,
+                    observedMinutes,
+                    lastFetch,
+                    lastChange);
+        }
+    }
+}
@@ -16,14 +16,13 @@
  */
 package org.apache.stormcrawler.persistence;
 
-import java.util.Calendar;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.stormcrawler.Constants;
@@ -44,7 +43,11 @@ public class DefaultScheduler extends Scheduler {
     private int fetchErrorFetchInterval;
     private int errorFetchInterval;
 
-    private CustomInterval[] customIntervals;
+    /**
+     * Custom intervals indexed by metadata key then value, so that the cost of finding the one
+     * matching a URL does not depend on the number of values configured per key.
+     */
+    private Map<String, Map<String, CustomInterval>> customIntervals = new HashMap<>();
 
     /*
      * (non-Javadoc)
@@ -65,7 +68,7 @@ public class DefaultScheduler extends Scheduler {
         // must be of form fetchInterval(.STATUS)?.keyname=value
         // e.g. fetchInterval.isFeed=true
         // e.g. fetchInterval.FETCH_ERROR.isFeed=true
-        Map<String, CustomInterval> intervals = new HashMap<>();
+        Map<String, Map<String, CustomInterval>> intervals = new HashMap<>();
         Pattern pattern = Pattern.compile("^fetchInterval(\\..+?)?\\.(.+)=(.+)");
         Iterator<String> keyIter = stormConf.keySet().iterator();
         while (keyIter.hasNext()) {
@@ -83,17 +86,19 @@ public class DefaultScheduler extends Scheduler {
             String mdvalue = m.group(3);
             int customInterval = ConfUtils.getInt(stormConf, key, Integer.MIN_VALUE);
             if (customInterval != Integer.MIN_VALUE) {
-                CustomInterval interval = intervals.get(mdname + mdvalue);
+                Map<String, CustomInterval> forKey =
+                        intervals.computeIfAbsent(mdname, k -> new HashMap<>());
+                CustomInterval interval = forKey.get(mdvalue);
                 if (interval == null) {
-                    interval = new CustomInterval(mdname, mdvalue, status, customInterval);
+                    interval = new CustomInterval(status, customInterval);
+                    forKey.put(mdvalue, interval);
                 } else {
+                    // specify particular interval for this status
                     interval.setDurationForStatus(status, customInterval);
                 }
-                // specify particular interval for this status
-                intervals.put(mdname + mdvalue, interval);
             }
         }
-        customIntervals = intervals.values().toArray(new CustomInterval[0]);
+        customIntervals = intervals;
     }
 
     /**
@@ -101,65 +106,62 @@ public class DefaultScheduler extends Scheduler {
      */
     @Override
     public Optional<Date> schedule(Status status, Metadata metadata) {
+        int minutesIncrement = getIntervalMinutes(status, metadata);
 
-        int minutesIncrement = 0;
+        // a value of -1 means never fetch
+        // we return null
+        if (minutesIncrement == -1) {
+            return Optional.empty();
+        }
 
-        Optional<Integer> customInterval = Optional.empty();
+        return Optional.of(
+                new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(minutesIncrement)));
+    }
 
+    /**
+     * Returns the interval in minutes before the next fetch, from the metadata, the custom
+     * intervals or the default values for the status, -1 if the URL must never be fetched again.
+     */
+    protected final int getIntervalMinutes(Status status, Metadata metadata) {
         // try with a value set in the metadata
         String customInMetadata = metadata.getFirstValue(DELAY_METADATA);
         if (customInMetadata != null) {
-            customInterval = Optional.of(Integer.parseInt(customInMetadata));
-        }
-        // try with the rules from the configuration
-        if (!customInterval.isPresent()) {
-            customInterval = checkCustomInterval(metadata, status);
+            return Integer.parseInt(customInMetadata);
         }
 
+        // try with the rules from the configuration
+        Optional<Integer> customInterval = checkCustomInterval(metadata, status);
         if (customInterval.isPresent()) {
-            minutesIncrement = customInterval.get();
-        } else {
-            switch (status) {
-                case FETCHED:
-                    minutesIncrement = defaultfetchInterval;
-                    break;
-                case FETCH_ERROR:
-                    minutesIncrement = fetchErrorFetchInterval;
-                    break;
-                case ERROR:
-                    minutesIncrement = errorFetchInterval;
-                    break;
-                case REDIRECTION:
-                    minutesIncrement = defaultfetchInterval;
-                    break;
-                default:
-                    // leave it to now e.g. DISCOVERED
-            }
+            return customInterval.get();
         }
 
-        // a value of -1 means never fetch
-        // we return null
-        if (minutesIncrement == -1) {
-            return Optional.empty();
+        switch (status) {
+            case FETCHED:
+                return defaultfetchInterval;
+            case FETCH_ERROR:
+                return fetchErrorFetchInterval;
+            case ERROR:
+                return errorFetchInterval;
+            case REDIRECTION:
+                return defaultfetchInterval;
+            default:
+                // leave it to now e.g. DISCOVERED
+                return 0;
         }
-
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ROOT);
-        cal.add(Calendar.MINUTE, minutesIncrement);
-
-        return Optional.of(cal.getTime());
     }
 
     /** Returns the first matching custom interval */
     protected final Optional<Integer> checkCustomInterval(Metadata metadata, Status s) {
-        if (customIntervals == null) return Optional.empty();
+        if (customIntervals.isEmpty()) return Optional.empty();
 
-        for (CustomInterval customInterval : customIntervals) {
-            String[] values = metadata.getValues(customInterval.key);
+        for (Map.Entry<String, Map<String, CustomInterval>> forKey : customIntervals.entrySet()) {
+            String[] values = metadata.getValues(forKey.getKey());
             if (values == null) {
                 continue;
             }
             for (String v : values) {
-                if (v.equals(customInterval.value)) {
+                CustomInterval customInterval = forKey.getValue().get(v);
+                if (customInterval != null) {
                     return customInterval.getDurationForStatus(s);
                 }
             }
@@ -168,16 +170,11 @@ public class DefaultScheduler extends Scheduler {
         return Optional.empty();
     }
 
-    private class CustomInterval {
-        private String key;
-        private String value;
-        private Map<Status, Integer> durationPerStatus;
+    private static class CustomInterval {
+        private final Map<Status, Integer> durationPerStatus = new EnumMap<>(Status.class);
         private Integer defaultDuration = null;
 
-        private CustomInterval(String key, String value, Status status, int minutes) {
-            this.key = key;
-            this.value = value;
-            this.durationPerStatus = new HashMap<>();
+        private CustomInterval(Status status, int minutes) {
             setDurationForStatus(status, minutes);
         }
 
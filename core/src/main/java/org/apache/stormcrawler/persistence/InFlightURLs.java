@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.apache.stormcrawler.util.FingerprintSet;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compact tracking of the URLs being processed by a spout, storing 64-bit fingerprints of the URLs
+ * in primitive hash sets instead of the strings themselves. URLs removed from the set are kept in a
+ * purgatory for a given time, held in a ring of time buckets: each bucket contains the URLs removed
+ * during a fraction of the TTL and is cleared in one go once it becomes older than the TTL. The
+ * lifetime of the URLs in the purgatory is between (buckets-1)/buckets and 1 times the TTL.
+ *
+ * <p>Two distinct URLs sharing the same fingerprint would be considered as the same, which is
+ * negligible with 64 bits for the number of URLs a spout has in flight.
+ *
+ * @since 3.4.1
+ */
+public class InFlightURLs {
+
+    private static final int NUM_BUCKETS = 10;
+
+    private final FingerprintSet inFlight = new FingerprintSet();
+
+    private final FingerprintSet[] buckets;
+
+    /** duration covered by a bucket in msec */
+    private final long bucketSpan;
+
+    /** index of the time slice the current bucket corresponds to */
+    private long currentSlice = -1;
+
+    public InFlightURLs(long ttl, TimeUnit timeUnit) {
+        long ttlMsec = timeUnit.toMillis(ttl);
+        if (ttlMsec <= 0) {
+            buckets = new FingerprintSet[0];
+            bucketSpan = 0;
+        } else {
+            buckets = new FingerprintSet[NUM_BUCKETS];
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                buckets[i] = new FingerprintSet();
+            }
+            bucketSpan = Math.max(1, (ttlMsec + NUM_BUCKETS - 1) / NUM_BUCKETS);
+        }
+    }
+
+    /** Marks the URL as being processed */
+    public synchronized void add(@NotNull String url) {
+        inFlight.add(Fingerprint.hash64(url));
+    }
+
+    /** Returns true if the URL is being processed or was removed less than TTL ago */
+    public boolean contains(@NotNull String url) {
+        return contains(url, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns true if the URL with the given fingerprint, as computed by {@link
+     * Fingerprint#hash64(CharSequence)}, is being processed or was removed less than TTL ago
+     */
+    public boolean contains(long fingerprint) {
+        return contains(fingerprint, System.currentTimeMillis());
+    }
+
+    /** Removes the URL from the ones being processed and puts it in the purgatory */
+    public void remove(@NotNull String url) {
+        remove(url, System.currentTimeMillis());
+    }
+
+    /** Number of URLs being processed */
+    public synchronized int size() {
+        return inFlight.size();
+    }
+
+    /** Number of URLs in the purgatory, the same URL removed several times can be counted twice */
+    public synchronized long inPurgatory() {
+        long total = 0;
+        for (FingerprintSet bucket : buckets) {
+            total += bucket.size();
+        }
+        return total;
+    }
+
+    boolean contains(String url, long now) {
+        return contains(Fingerprint.hash64(url), now);
+    }
+
+    synchronized boolean contains(long fingerprint, long now) {
+        if (inFlight.contains(fingerprint)) return true;
+        expire(now);
+        for (FingerprintSet bucket : buckets) {
+            if (bucket.contains(fingerprint)) return true;
+        }
+        return false;
+    }
+
+    synchronized void remove(String url, long now) {
+        long fingerprint = Fingerprint.hash64(url);
+        inFlight.remove(fingerprint);
+        if (buckets.length == 0) return;
+        expire(now);
+        buckets[(int) (currentSlice % buckets.length)].add(fingerprint);
+    }
+
+    /** Clears the buckets which have become older than the TTL since the last call */
+    private void expire(long now) {
+        if (buckets.length == 0) return;
+        long slice = now / bucketSpan;
+        if (slice <= currentSlice) return;
+        long toClear = currentSlice == -1 ? 0 : Math.min(slice - currentSlice, buckets.length);
+        for (long s = slice - toClear + 1; s <= slice; s++) {
+            buckets[(int) (s % buckets.length)].clear();
+        }
+        currentSlice = slice;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.Date;
+import java.util.Optional;
+import org.apache.storm.tuple.Tuple;
+import org.apache.stormcrawler.Metadata;
+
+/**
+ * Update of the status of a URL, as passed to {@link BatchingStatusUpdaterBolt#storeBatch}. The
+ * metadata has already been filtered and the next fetch date computed.
+ *
+ * @since 3.4.1
+ */
+public class StatusUpdate {
+
+    private final String url;
+    private final Status status;
+    private final Metadata metadata;
+    private final Optional<Date> nextFetch;
+    private final Tuple tuple;
+
+    public StatusUpdate(
+            String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple tuple) {
+        this.url = url;
+        this.status = status;
+        this.metadata = metadata;
+        this.nextFetch = nextFetch;
+        this.tuple = tuple;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Metadata getMetadata() {
+        return metadata;
+    }
+
+    /** Empty if the URL must never be refetched */
+    public Optional<Date> getNextFetch() {
+        return nextFetch;
+    }
+
+    public Tuple getTuple() {
+        return tuple;
+    }
+}
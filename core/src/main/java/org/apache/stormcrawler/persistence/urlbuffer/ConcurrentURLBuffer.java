@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence.urlbuffer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.storm.tuple.Values;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.persistence.EmptyQueueListener;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.apache.stormcrawler.util.FingerprintSet;
+import org.apache.stormcrawler.util.URLPartitioner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * URLBuffer which can be added to and polled from concurrently, e.g. by the threads receiving the
+ * results of asynchronous queries and by the spout. The queues are spread over stripes, each with
+ * its own lock, in which they are rotated as with the {@link SimpleURLBuffer}; next() goes through
+ * the stripes in turn. The URLs of a queue are held in arrays used as a ring and the URLs in the
+ * buffer are tracked with 64-bit fingerprints rather than a set of strings.
+ *
+ * <p>The number of URLs can be capped with urlbuffer.concurrent.max.urls, in which case add() waits
+ * for up to urlbuffer.concurrent.add.timeout.msec for some room and returns false if there is still
+ * none. The timeout must be left to 0 (the default) if the URLs are added by the thread calling
+ * next().
+ *
+ * @since 3.4.1
+ */
+public class ConcurrentURLBuffer implements URLBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentURLBuffer.class);
+
+    /** Number of stripes, rounded up to a power of 2. Defaults to 16. */
+    public static final String STRIPES_PARAM_NAME = "urlbuffer.concurrent.stripes";
+
+    /** Max number of URLs in the buffer, -1 (default) for no limit. */
+    public static final String MAX_URLS_PARAM_NAME = "urlbuffer.concurrent.max.urls";
+
+    /** How long add() waits for room in the buffer if it is full. Defaults to 0. */
+    public static final String ADD_TIMEOUT_PARAM_NAME = "urlbuffer.concurrent.add.timeout.msec";
+
+    private final URLPartitioner partitioner = new URLPartitioner();
+
+    private Stripe[] stripes;
+
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicInteger numQueues = new AtomicInteger();
+
+    /** Room left in the buffer, null if there is no limit */
+    private Semaphore room;
+
+    private long addTimeout;
+
+    private volatile EmptyQueueListener listener;
+
+    public ConcurrentURLBuffer() {
+        stripes = newStripes(16);
+    }
+
+    @Override
+    public void configure(Map<String, Object> stormConf) {
+        partitioner.configure(stormConf);
+        stripes = newStripes(ConfUtils.getInt(stormConf, STRIPES_PARAM_NAME, 16));
+        int maxURLs = ConfUtils.getInt(stormConf, MAX_URLS_PARAM_NAME, -1);
+        room = maxURLs > 0 ? new Semaphore(maxURLs) : null;
+        addTimeout = ConfUtils.getLong(stormConf, ADD_TIMEOUT_PARAM_NAME, 0);
+    }
+
+    private static Stripe[] newStripes(int num) {
+        Stripe[] s = new Stripe[num <= 1 ? 1 : Integer.highestOneBit(num - 1) << 1];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = new Stripe();
+        }
+        return s;
+    }
+
+    @Override
+    public boolean add(String URL, Metadata m, String key) {
+        // determine which queue to use
+        if (key == null) {
+            key = partitioner.getPartition(URL, m);
+            if (key == null) {
+                key = "_DEFAULT_";
+            }
+        }
+
+        if (room != null && !acquireRoom()) {
+            LOG.debug("Buffer full, rejecting {}", URL);
+            return false;
+        }
+
+        long fingerprint = Fingerprint.hash64(URL);
+        Stripe stripe = stripes[spread(key.hashCode()) & (stripes.length - 1)];
+        boolean added;
+        boolean newQueue = false;
+        synchronized (stripe) {
+            added = stripe.members.add(fingerprint);
+            if (added) {
+                URLQueue queue = stripe.queues.get(key);
+                if (queue == null) {
+                    queue = new URLQueue(key);
+                    stripe.queues.put(key, queue);
+                    stripe.ready.add(queue);
+                    newQueue = true;
+                }
+                queue.add(URL, m);
+            }
+        }
+
+        if (!added) {
+            LOG.debug("already in buffer {}", URL);
+            if (room != null) room.release();
+            return false;
+        }
+        size.incrementAndGet();
+        if (newQueue) numQueues.incrementAndGet();
+        return true;
+    }
+
+    private boolean acquireRoom() {
+        if (addTimeout <= 0) {
+            return room.tryAcquire();
+        }
+        try {
+            return room.tryAcquire(addTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public Values next() {
+        int start = nextStripe.getAndIncrement();
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[(start + i) & (stripes.length - 1)];
+            String url;
+            Metadata metadata;
+            String emptied = null;
+            synchronized (stripe) {
+                URLQueue queue = stripe.ready.poll();
+                if (queue == null) continue;
+                url = queue.urls[queue.head];
+                metadata = queue.metadata[queue.head];
+                queue.poll();
+                if (queue.size > 0) {
+                    // back to the end of the rotation
+                    stripe.ready.add(queue);
+                } else {
+                    stripe.queues.remove(queue.key);
+                    emptied = queue.key;
+                }
+                stripe.members.remove(Fingerprint.hash64(url));
+            }
+            size.decrementAndGet();
+            if (room != null) room.release();
+            if (emptied != null) {
+                numQueues.decrementAndGet();
+                EmptyQueueListener l = listener;
+                if (l != null) {
+                    l.emptyQueue(emptied);
+                }
+            }
+            return new Values(url, metadata);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return size.get() > 0;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int numQueues() {
+        return numQueues.get();
+    }
+
+    @Override
+    public void setEmptyQueueListener(EmptyQueueListener l) {
+        listener = l;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /** Queues sharing a lock */
+    private static final class Stripe {
+        final Map<String, URLQueue> queues = new HashMap<>();
+
+        /** non-empty queues in the order in which they get polled */
+        final ArrayDeque<URLQueue> ready = new ArrayDeque<>();
+
+        final FingerprintSet members = new FingerprintSet();
+    }
+
+    /** URLs of a queue stored in arrays used as a ring */
+    private static final class URLQueue {
+        final String key;
+        String[] urls = new String[4];
+        Metadata[] metadata = new Metadata[4];
+        int head;
+        int size;
+
+        URLQueue(String key) {
+            this.key = key;
+        }
+
+        void add(String url, Metadata md) {
+            if (size == urls.length) {
+                String[] u = new String[size * 2];
+                Metadata[] m = new Metadata[size * 2];
+                for (int i = 0; i < size; i++) {
+                    u[i] = urls[(head + i) & (urls.length - 1)];
+                    m[i] = metadata[(head + i) & (urls.length - 1)];
+                }
+                urls = u;
+                metadata = m;
+                head = 0;
+            }
+            int tail = (head + size) & (urls.length - 1);
+            urls[tail] = url;
+            metadata[tail] = md;
+            size++;
+        }
+
+        void poll() {
+            urls[head] = null;
+            metadata[head] = null;
+            head = (head + 1) & (urls.length - 1);
+            size--;
+        }
+    }
+}
@@ -16,24 +16,25 @@
  */
 package org.apache.stormcrawler.persistence.urlbuffer;
 
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.util.ConfUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Determines the priority of the buffers based on the number of URLs acked in a configurable period
- * of time.
+ * Determines the priority of the buffers based on the number of URLs acked recently, each ack
+ * counting half as much after priority.buffer.ack.halflife.sec seconds. The queues are served in
+ * rounds, one URL per queue per round, in decreasing order of their score within a round. The
+ * queues remaining in the current round are kept in an indexed heap which gets updated as the URLs
+ * are acked.
  *
  * @since 1.16
  */
@@ -41,83 +42,221 @@ public class PriorityURLBuffer extends SimpleURLBuffer {
 
     static final Logger LOG = LoggerFactory.getLogger(PriorityURLBuffer.class);
 
-    private Map<String, AtomicInteger> ackCount;
+    public static final String HALFLIFEPARAM = "priority.buffer.ack.halflife.sec";
 
-    private Instant lastSorting;
+    /** Scores get renormalised before the increments overflow */
+    private static final double MAX_INCREMENT = 1e100;
 
-    private long minDelayReRankSec = 10l;
+    private double halfLifeMsec = 10000;
 
-    public PriorityURLBuffer() {
-        lastSorting = Instant.now();
-        ackCount = new ConcurrentHashMap<>();
+    /**
+     * Instead of decaying all the scores, the value of an ack grows exponentially from this time
+     */
+    private long epoch = System.currentTimeMillis();
+
+    /** Scores of the queues, with or without URLs in the buffer */
+    private final Map<String, Ranked> ranks = new HashMap<>();
+
+    /** Max-heap of the queues not served yet in the current round */
+    private Ranked[] heap = new Ranked[16];
+
+    private int heapSize;
+
+    /** Queues served in the current round which still have URLs */
+    private final List<Ranked> nextRound = new ArrayList<>();
+
+    /** Order in which the queues entered the heap, used to break ties */
+    private long sequence;
+
+    private static final class Ranked {
+        final String name;
+        double score;
+        long sequence;
+
+        /** position in the heap, -1 if not in it */
+        int index = -1;
+
+        boolean inNextRound;
+
+        Ranked(String name) {
+            this.name = name;
+        }
     }
 
-    public synchronized Values next() {
-        // check whether we need to re-rank the buffers
-        if (lastSorting.plusSeconds(minDelayReRankSec).isBefore(Instant.now())) {
-            rerank();
+    @Override
+    public void configure(Map<String, Object> stormConf) {
+        super.configure(stormConf);
+        halfLifeMsec = 1000d * ConfUtils.getInt(stormConf, HALFLIFEPARAM, 10);
+    }
+
+    @Override
+    public synchronized boolean add(String URL, Metadata m, String key) {
+        // determine which queue to use
+        if (key == null) {
+            key = partitioner.getPartition(URL, m);
+            if (key == null) {
+                key = "_DEFAULT_";
+            }
+        }
+        if (!super.add(URL, m, key)) {
+            return false;
         }
-        return super.next();
+        Ranked ranked = ranks.computeIfAbsent(key, Ranked::new);
+        // new queue, can be served in the current round
+        if (ranked.index == -1 && !ranked.inNextRound) {
+            push(ranked);
+        }
+        return true;
     }
 
-    // sorts the buffers according to the number of acks they got since the
-    // previous time
-    private void rerank() {
-        if (queues.isEmpty()) {
-            return;
+    /**
+     * Retrieves the next URL from the queue with the highest score among those not served yet in
+     * the current round
+     *
+     * @return null if no entries are available
+     */
+    @Override
+    public synchronized Values next() {
+        if (heapSize == 0) {
+            if (nextRound.isEmpty()) {
+                return null;
+            }
+            startRound();
         }
 
-        List<QueueCount> sorted = new ArrayList<>();
+        Ranked ranked = pop();
+        String queueName = ranked.name;
+        Queue<URLMetadata> queue = queues.get(queueName);
+        URLMetadata item = queue.poll();
 
-        // populate a sorted set with key - queues
-        Iterator<Entry<String, Queue<URLMetadata>>> i = queues.entrySet().iterator();
+        LOG.debug("Item {} from {}", item.url, queueName);
 
-        while (i.hasNext()) {
-            Entry<String, Queue<URLMetadata>> entry = i.next();
-            String name = entry.getKey();
-            int ackNum = ackCount.getOrDefault(name, new AtomicInteger(0)).get();
-            QueueCount qc = new QueueCount(name, ackNum);
-            sorted.add(qc);
+        // any left? serve it again in the next round
+        if (!queue.isEmpty()) {
+            ranked.inNextRound = true;
+            nextRound.add(ranked);
+        }
+        // notify that the queue is empty
+        else {
+            queues.remove(queueName);
+            if (listener != null) {
+                listener.emptyQueue(queueName);
+            }
         }
 
-        Collections.sort(sorted);
-
-        // now create a new Map of queues based on the sorted set
-        // lowest score go first
+        // remove it from the list of URLs in the queue
+        in_buffer.remove(item.url);
+        return new Values(item.url, item.metadata);
+    }
 
-        for (QueueCount q : sorted) {
-            Queue<URLMetadata> queue = queues.remove(q.name);
-            queues.put(q.name, queue);
+    private void startRound() {
+        if (heap.length < nextRound.size()) {
+            heap = Arrays.copyOf(heap, Integer.highestOneBit(nextRound.size()) << 1);
+        }
+        for (Ranked ranked : nextRound) {
+            ranked.inNextRound = false;
+            ranked.sequence = sequence++;
+            ranked.index = heapSize;
+            heap[heapSize++] = ranked;
+        }
+        nextRound.clear();
+        // heapify
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
         }
-
-        ackCount.clear();
-        lastSorting = Instant.now();
     }
 
-    public void acked(String url) {
+    @Override
+    public synchronized void acked(String url) {
         // get the queue for this URL
         String key = partitioner.getPartition(url, Metadata.empty);
         if (key == null) {
             key = "_DEFAULT_";
         }
-        // increment the counter for it
-        ackCount.computeIfAbsent(key, k -> new AtomicInteger(0)).incrementAndGet();
+
+        double increment = Math.pow(2, (System.currentTimeMillis() - epoch) / halfLifeMsec);
+        if (increment > MAX_INCREMENT) {
+            renormalise(increment);
+            increment = 1;
+        }
+
+        Ranked ranked = ranks.computeIfAbsent(key, Ranked::new);
+        ranked.score += increment;
+        if (ranked.index != -1) {
+            siftUp(ranked.index);
+        }
+    }
+
+    /**
+     * Divides all the scores by the current increment and forgets the queues with no URLs whose
+     * score has become negligible
+     */
+    private void renormalise(double increment) {
+        epoch = System.currentTimeMillis();
+        Iterator<Ranked> i = ranks.values().iterator();
+        while (i.hasNext()) {
+            Ranked ranked = i.next();
+            ranked.score /= increment;
+            if (ranked.score < 1e-3 && ranked.index == -1 && !ranked.inNextRound) {
+                i.remove();
+            }
+        }
+    }
+
+    private void push(Ranked ranked) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        ranked.sequence = sequence++;
+        ranked.index = heapSize;
+        heap[heapSize++] = ranked;
+        siftUp(ranked.index);
     }
 
-    class QueueCount implements Comparable<QueueCount> {
-        String name;
-        int count;
+    private Ranked pop() {
+        Ranked top = heap[0];
+        top.index = -1;
+        Ranked last = heap[--heapSize];
+        heap[heapSize] = null;
+        if (heapSize > 0) {
+            heap[0] = last;
+            last.index = 0;
+            siftDown(0);
+        }
+        return top;
+    }
 
-        QueueCount(String n, int c) {
-            name = n;
-            count = c;
+    /** Higher scores first, then the queues added first */
+    private boolean before(Ranked a, Ranked b) {
+        if (a.score != b.score) return a.score > b.score;
+        return a.sequence < b.sequence;
+    }
+
+    private void siftUp(int i) {
+        Ranked ranked = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(ranked, heap[parent])) break;
+            heap[i] = heap[parent];
+            heap[i].index = i;
+            i = parent;
         }
+        heap[i] = ranked;
+        ranked.index = i;
+    }
 
-        @Override
-        public int compareTo(QueueCount otherQueue) {
-            int countDiff = otherQueue.count - count;
-            if (countDiff == 0) return name.compareTo(otherQueue.name);
-            return countDiff;
+    private void siftDown(int i) {
+        Ranked ranked = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) child++;
+            if (!before(heap[child], ranked)) break;
+            heap[i] = heap[child];
+            heap[i].index = i;
+            i = child;
         }
+        heap[i] = ranked;
+        ranked.index = i;
     }
 }
@@ -20,21 +20,29 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.RemovalListener;
-import com.google.common.collect.EvictingQueue;
-import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import org.apache.storm.tuple.Values;
+import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Checks how long the last N URLs took to work out whether a queue should release a URL. */
+/**
+ * Checks how long the URLs took to be acked to work out when a queue should release a URL. Each
+ * queue keeps an exponentially weighted average of the time taken by its URLs, which is used as the
+ * minimal delay between two URLs released from it once enough timings have been collected. The
+ * queues with URLs are kept in a heap ordered by the time at which they can release one so that
+ * next() doesn't have to go through them. As with the other buffers, hasNext() returns true as long
+ * as the buffer holds URLs, next() returning null if none of them can be released yet.
+ */
 public class SchedulingURLBuffer extends AbstractURLBuffer
         implements RemovalListener<String, Object[]> {
 
@@ -42,132 +50,161 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
 
     public static final String MAXTIMEPARAM = "priority.buffer.max.time.msec";
 
+    /** Number of timings needed before a queue gets delayed, also sets the weight of the average */
+    public static final String HISTORYSIZEPARAM = "priority.buffer.history.size";
+
+    /** How long the timings of a queue without any URLs are kept for */
+    private static final long STATE_TTL_MSEC = TimeUnit.MINUTES.toMillis(10);
+
     private int maxTimeMSec = 30000;
 
-    // TODO make it configurable
     private int historySize = 5;
 
     // keeps track of the URL having been sent
     private Cache<String, Object[]> unacked;
 
-    private Cache<String, Queue<Long>> timings;
+    /** Timings and release time of the queues */
+    private final Map<String, QueueState> states = new HashMap<>();
+
+    /** Queues with URLs, ordered by the time at which they can release one */
+    private final PriorityQueue<QueueState> ready =
+            new PriorityQueue<>(
+                    Comparator.<QueueState>comparingLong(q -> q.readyAt)
+                            .thenComparingLong(q -> q.sequence));
+
+    /** Used to rotate the queues ready at the same time */
+    private long sequence;
+
+    private long lastPurge = System.currentTimeMillis();
 
-    private Cache<String, Instant> lastReleased;
+    private static final class QueueState {
+        final String name;
+        double averageMsec;
+        int timings;
+        long readyAt;
+        long sequence;
+        boolean inHeap;
+        long lastUsed;
+
+        QueueState(String name) {
+            this.name = name;
+        }
+    }
 
     public void configure(Map<String, Object> stormConf) {
         super.configure(stormConf);
         maxTimeMSec = ConfUtils.getInt(stormConf, MAXTIMEPARAM, maxTimeMSec);
+        historySize = Math.max(1, ConfUtils.getInt(stormConf, HISTORYSIZEPARAM, historySize));
         unacked =
                 Caffeine.newBuilder()
                         .expireAfterWrite(maxTimeMSec, TimeUnit.MILLISECONDS)
                         .removalListener(this)
                         .build();
-        timings = Caffeine.newBuilder().expireAfterAccess(10, TimeUnit.MINUTES).build();
-        lastReleased = Caffeine.newBuilder().expireAfterAccess(10, TimeUnit.MINUTES).build();
     }
 
-    /**
-     * Retrieves the next available URL, guarantees that the URLs are always perfectly shuffled
-     *
-     * @return null if no entries are available
-     */
-    public synchronized Values next() {
-
-        do {
-            Iterator<Entry<String, Queue<URLMetadata>>> i = queues.entrySet().iterator();
-
-            if (!i.hasNext()) {
-                LOG.trace("Empty iterator");
-                return null;
-            }
-
-            Map.Entry<String, Queue<URLMetadata>> nextEntry = i.next();
-
-            Queue<URLMetadata> queue = nextEntry.getValue();
-            String queueName = nextEntry.getKey();
-
-            // remove the entry, gets added back later
-            i.remove();
-
-            LOG.trace("Next queue {}", queueName);
-
-            URLMetadata item = null;
-
-            // is this queue ready to be processed?
-            if (canRelease(queueName)) {
-                // try the first element
-                item = queue.poll();
-                LOG.trace("Item {}", item.url);
-            } else {
-                LOG.trace("Queue {} not ready to release yet", queueName);
-            }
-
-            // any left? add to the end of the iterator
-            if (!queue.isEmpty()) {
-                LOG.debug("Adding to the back of the queue {}", queueName);
-                queues.put(queueName, queue);
-            }
-            // notify that the queue is empty
-            else {
-                if (listener != null) {
-                    listener.emptyQueue(queueName);
-                }
-            }
-
-            if (item != null) {
-                lastReleased.put(queueName, Instant.now());
-                unacked.put(item.url, new Object[] {Instant.now(), queueName});
-                // remove it from the list of URLs in the queue
-                in_buffer.remove(item.url);
-                return new Values(item.url, item.metadata);
+    @Override
+    public synchronized boolean add(String URL, Metadata m, String key) {
+        // determine which queue to use
+        if (key == null) {
+            key = partitioner.getPartition(URL, m);
+            if (key == null) {
+                key = "_DEFAULT_";
             }
-        } while (!queues.isEmpty());
-        return null;
+        }
+        if (!super.add(URL, m, key)) {
+            return false;
+        }
+        QueueState state = state(key);
+        if (!state.inHeap) {
+            state.readyAt = Math.max(state.readyAt, System.currentTimeMillis());
+            schedule(state);
+        }
+        return true;
     }
 
-    private boolean canRelease(String queueName) {
-        // return true if enough time has expired since the previous release
-        // given the past performance of the last N urls
+    private QueueState state(String queueName) {
+        QueueState state = states.computeIfAbsent(queueName, QueueState::new);
+        state.lastUsed = System.currentTimeMillis();
+        return state;
+    }
 
-        Queue<Long> times = timings.getIfPresent(queueName);
-        if (times == null) return true;
+    private void schedule(QueueState state) {
+        state.sequence = sequence++;
+        state.inHeap = true;
+        ready.add(state);
+    }
 
-        // not enough history yet? just say yes
-        if (times.size() < historySize) return true;
+    /**
+     * Retrieves the next URL from the queue which has been ready for the longest
+     *
+     * @return null if no queue is ready to release a URL
+     */
+    public synchronized Values next() {
+        long now = System.currentTimeMillis();
+        purge(now);
 
-        // get the average duration over the recent history
-        long totalMsec = 0l;
-        for (Long t : times) {
-            totalMsec += t;
+        QueueState state = ready.peek();
+        if (state == null || state.readyAt > now) {
+            LOG.trace("No queue ready to release yet");
+            return null;
+        }
+        ready.poll();
+        state.inHeap = false;
+        state.lastUsed = now;
+
+        String queueName = state.name;
+        Queue<URLMetadata> queue = queues.get(queueName);
+        URLMetadata item = queue.poll();
+        LOG.trace("Item {} from {}", item.url, queueName);
+
+        // not enough history yet? no delay
+        long delay = state.timings >= historySize ? Math.round(state.averageMsec) : 0;
+        state.readyAt = now + delay;
+
+        // any left? schedule its next release
+        if (!queue.isEmpty()) {
+            schedule(state);
+        }
+        // notify that the queue is empty
+        else {
+            queues.remove(queueName);
+            if (listener != null) {
+                listener.emptyQueue(queueName);
+            }
         }
-        long average = totalMsec / historySize;
 
-        LOG.trace("Average for {}: {} msec", queueName, average);
+        unacked.put(item.url, new Object[] {now, queueName});
+        // remove it from the list of URLs in the queue
+        in_buffer.remove(item.url);
+        return new Values(item.url, item.metadata);
+    }
 
-        Instant lastRelease = lastReleased.getIfPresent(queueName);
-        if (lastRelease == null) {
-            // removed? bit unlikely but nevermind
-            return true;
+    /** Forgets the timings of the queues which haven't been used for a while */
+    private void purge(long now) {
+        if (now - lastPurge < STATE_TTL_MSEC) return;
+        lastPurge = now;
+        Iterator<QueueState> i = states.values().iterator();
+        while (i.hasNext()) {
+            QueueState state = i.next();
+            if (!state.inHeap && now - state.lastUsed > STATE_TTL_MSEC) {
+                i.remove();
+            }
         }
-
-        // check that enough time has elapsed
-        // since the previous release from this queue
-        return lastRelease.plusMillis(average).isBefore(Instant.now());
     }
 
     public void acked(String url) {
         // get notified that the URL has been acked
         // use that to compute how long it took
-        Object[] cached = (Object[]) unacked.getIfPresent(url);
+        Object[] cached = unacked.asMap().remove(url);
         // has already been discarded - its timing set to max
         if (cached == null) {
             return;
         }
 
-        Instant t = (Instant) cached[0];
+        long released = (Long) cached[0];
         String key = (String) cached[1];
 
-        long tookmsec = Instant.now().toEpochMilli() - t.toEpochMilli();
+        long tookmsec = System.currentTimeMillis() - released;
 
         LOG.trace("Adding new timing for {}: {} msec - {}", key, tookmsec, url);
 
@@ -175,14 +212,25 @@ public class SchedulingURLBuffer extends AbstractURLBuffer
         addTiming(tookmsec, key);
     }
 
-    void addTiming(long t, String queueName) {
-        Queue<Long> times = timings.get(queueName, k -> EvictingQueue.create(historySize));
-        times.add(t);
+    synchronized void addTiming(long t, String queueName) {
+        QueueState state = state(queueName);
+        if (state.timings == 0) {
+            state.averageMsec = t;
+        } else {
+            double alpha = 2d / (historySize + 1);
+            state.averageMsec += alpha * (t - state.averageMsec);
+        }
+        if (state.timings < historySize) {
+            state.timings++;
+        }
     }
 
     @Override
     public void onRemoval(
             @Nullable String key, Object @Nullable [] value, @NotNull RemovalCause cause) {
-        addTiming(maxTimeMSec, key);
+        // not acked in time
+        if (cause.wasEvicted() && value != null) {
+            addTiming(maxTimeMSec, (String) value[1]);
+        }
     }
 }
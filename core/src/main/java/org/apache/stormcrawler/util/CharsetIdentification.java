@@ -125,6 +125,54 @@ public class CharsetIdentification {
         return DEFAULT_CHARSET.name();
     }
 
+    /**
+     * Cheap lookup of the charset declared for a document: returns the charset from the BOM if any,
+     * otherwise the one specified in the http headers, otherwise the one found by a prescan of the
+     * meta tags. Returns null if no charset is declared. Unlike the methods above, this never
+     * parses the content nor guesses from the text.
+     *
+     * @since 3.4.1
+     */
+    public static String getDeclaredCharset(
+            final Metadata metadata, final byte[] content, final int maxLengthCharsetDetection) {
+        String charset = getCharsetFromBOM(content);
+        if (charset != null) {
+            return charset;
+        }
+        charset = getCharsetFromHTTP(metadata);
+        if (charset != null) {
+            return charset;
+        }
+        return prescanMetaCharset(content, maxLengthCharsetDetection);
+    }
+
+    /**
+     * Looks for a charset in the meta tags found in the first bytes of the content, without parsing
+     * it.
+     */
+    private static String prescanMetaCharset(final byte[] content, final int maxlength) {
+        int len = content.length;
+        if (maxlength > 0 && maxlength < len) {
+            len = maxlength;
+        }
+        // the characters we are interested in are all ASCII
+        String html = new String(content, 0, len, StandardCharsets.ISO_8859_1);
+        String lower = html.toLowerCase(Locale.ROOT);
+        int start = lower.indexOf("<meta");
+        while (start != -1) {
+            int end = lower.indexOf('>', start);
+            if (end == -1) {
+                end = lower.length();
+            }
+            Matcher m = charsetPattern.matcher(html.substring(start, end));
+            if (m.find()) {
+                return validateCharset(m.group(1));
+            }
+            start = lower.indexOf("<meta", end);
+        }
+        return null;
+    }
+
     /** Returns the charset declared by the server if any */
     private static String getCharsetFromHTTP(Metadata metadata) {
         return getCharsetFromContentType(metadata.getFirstValue(HttpHeaders.CONTENT_TYPE));
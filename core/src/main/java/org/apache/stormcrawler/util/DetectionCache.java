@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.Locale;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Bounded cache of the mime-type and charset detected for the pages of a host (or of a host and the
+ * first element of the path), used to avoid running the full detection on every page. A prediction
+ * is only stored when the mime-type detected agrees with the one returned by the server and is only
+ * reused when the server returns the same mime-type again and the content passes a cheap check (BOM
+ * and prescan of the declared charset, see {@link #getMimeType(String, String, byte[])} and {@link
+ * #getCharset(String, org.apache.stormcrawler.Metadata, byte[], int)}).
+ *
+ * @since 3.4.1
+ */
+public class DetectionCache {
+
+    private static class Prediction {
+        /** as returned by the detection */
+        private final String mimeType;
+
+        /** used for comparing with the value from the server */
+        private final String normalisedMimeType;
+
+        private final String charset;
+
+        /** charset declared by the document the prediction was made on */
+        private final String declaredCharset;
+
+        private Prediction(
+                String mimeType,
+                String normalisedMimeType,
+                String charset,
+                String declaredCharset) {
+            this.mimeType = mimeType;
+            this.normalisedMimeType = normalisedMimeType;
+            this.charset = charset;
+            this.declaredCharset = declaredCharset;
+        }
+    }
+
+    private final Cache<String, Prediction> cache;
+
+    private final boolean usePathPrefix;
+
+    /**
+     * @param maxEntries max number of hosts (or host and path prefixes) to keep
+     * @param usePathPrefix whether to key the predictions on the host and first element of the path
+     *     instead of the host only
+     */
+    public DetectionCache(int maxEntries, boolean usePathPrefix) {
+        this.cache = Caffeine.newBuilder().maximumSize(maxEntries).build();
+        this.usePathPrefix = usePathPrefix;
+    }
+
+    /** Returns the key used for a URL, null if it can't be determined */
+    @Nullable
+    public String getKey(String url) {
+        int hostStart = url.indexOf("://");
+        if (hostStart == -1) {
+            return null;
+        }
+        hostStart += 3;
+        int pathStart = url.indexOf('/', hostStart);
+        if (pathStart == -1) {
+            return url.substring(hostStart).toLowerCase(Locale.ROOT);
+        }
+        if (!usePathPrefix) {
+            return url.substring(hostStart, pathStart).toLowerCase(Locale.ROOT);
+        }
+        int end = StringUtils.indexOfAny(url.substring(pathStart + 1), "/?#");
+        if (end == -1) {
+            end = url.length();
+        } else {
+            end += pathStart + 1;
+        }
+        return url.substring(hostStart, pathStart).toLowerCase(Locale.ROOT)
+                + url.substring(pathStart, end);
+    }
+
+    /**
+     * Returns the mime-type predicted for the key if the server returned the same one and the
+     * content looks like markup when the prediction is HTML, null otherwise.
+     */
+    @Nullable
+    public String getMimeType(String key, String httpContentType, byte[] content) {
+        Prediction p = key != null ? cache.getIfPresent(key) : null;
+        if (p == null || p.mimeType == null) {
+            return null;
+        }
+        if (!p.normalisedMimeType.equals(normaliseMimeType(httpContentType))) {
+            return null;
+        }
+        if (p.normalisedMimeType.contains("html") && !startsWithMarkup(content)) {
+            return null;
+        }
+        return p.mimeType;
+    }
+
+    /**
+     * Returns the charset predicted for the key if the content declares the same charset (BOM, HTTP
+     * headers or meta tags) as the document the prediction was made on, null otherwise.
+     */
+    @Nullable
+    public String getCharset(
+            String key,
+            org.apache.stormcrawler.Metadata metadata,
+            byte[] content,
+            int maxLengthCharsetDetection) {
+        Prediction p = key != null ? cache.getIfPresent(key) : null;
+        if (p == null || p.charset == null) {
+            return null;
+        }
+        String declared =
+                CharsetIdentification.getDeclaredCharset(
+                        metadata, content, maxLengthCharsetDetection);
+        if (!StringUtils.equalsIgnoreCase(declared, p.declaredCharset)) {
+            return null;
+        }
+        return p.charset;
+    }
+
+    /**
+     * Stores the results of a full detection. Predictions are kept only if the server returned the
+     * same mime-type as the one detected, any existing prediction for the key is discarded
+     * otherwise.
+     *
+     * @param mimeType the mime-type detected or null if the detection is not activated, in which
+     *     case the one from the server is used.
+     * @param declaredCharset as returned by {@link CharsetIdentification#getDeclaredCharset}
+     */
+    public void put(
+            String key,
+            String httpContentType,
+            String mimeType,
+            String charset,
+            String declaredCharset) {
+        if (key == null) {
+            return;
+        }
+        String httpMimeType = normaliseMimeType(httpContentType);
+        if (mimeType == null) {
+            mimeType = httpContentType;
+        }
+        if (httpMimeType == null || !httpMimeType.equals(normaliseMimeType(mimeType))) {
+            cache.invalidate(key);
+            return;
+        }
+        cache.put(key, new Prediction(mimeType, httpMimeType, charset, declaredCharset));
+    }
+
+    public boolean contains(String key) {
+        return cache.getIfPresent(key) != null;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /** Lowercases the mime-type and removes its parameters e.g. charset */
+    @Nullable
+    private static String normaliseMimeType(String contentType) {
+        if (StringUtils.isBlank(contentType)) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        if (semicolon != -1) {
+            contentType = contentType.substring(0, semicolon);
+        }
+        return contentType.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Whether the first non-whitespace character after a BOM (if any) is a '&lt;' */
+    private static boolean startsWithMarkup(byte[] content) {
+        int i = 0;
+        // UTF-8 BOM, UTF-16 BOMs are left to the full detection
+        if (content.length >= 3
+                && content[0] == (byte) 0xEF
+                && content[1] == (byte) 0xBB
+                && content[2] == (byte) 0xBF) {
+            i = 3;
+        }
+        for (; i < content.length; i++) {
+            byte b = content[i];
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+                continue;
+            }
+            return b == '<';
+        }
+        return false;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang.StringUtils;
+import org.apache.storm.metric.api.IMetric;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Per-filter metrics for a chain of filters (URLFilters, ParseFilters, JSoupFilters): number of
+ * invocations, of URLs rejected or modified and the time taken, in nanoseconds. Only a sample of
+ * the invocations is timed, see {@link #SAMPLING_PARAM_NAME}; the timings are kept in a histogram
+ * with power of two buckets from which the percentiles are approximated.
+ *
+ * <p>The values are reported per filter name, e.g. <i>BasicURLNormalizer.invocations</i> or
+ * <i>BasicURLNormalizer.p99_ns</i>, and reset every time the metric is collected.
+ *
+ * @since 3.4.1
+ */
+public class FilterMetrics implements IMetric {
+
+    /** One invocation out of N is timed, 1 to time all of them, 0 to deactivate the metrics */
+    public static final String SAMPLING_PARAM_NAME = "filters.metrics.sampling";
+
+    public static final int DEFAULT_SAMPLING = 100;
+
+    private static final int BUCKETS = 64;
+
+    private static final class Stats {
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder modified = new LongAdder();
+        private final LongAdder timed = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    }
+
+    private final String[] names;
+
+    private final AtomicReferenceArray<Stats> stats;
+
+    private final int sampling;
+
+    /**
+     * @param configurables the filters, in the order in which they are called
+     * @param sampling time one invocation out of N
+     */
+    public FilterMetrics(@NotNull Configurable[] configurables, int sampling) {
+        this.names = new String[configurables.length];
+        this.stats = new AtomicReferenceArray<>(configurables.length);
+        this.sampling = Math.max(sampling, 1);
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < configurables.length; i++) {
+            // names are set as name[class] when configured
+            String name = configurables[i].getName();
+            if (name != null && name.indexOf('[') != -1) {
+                name = name.substring(0, name.indexOf('['));
+            }
+            if (StringUtils.isBlank(name) || name.equals("<unnamed>")) {
+                name = configurables[i].getClass().getSimpleName();
+            }
+            // the same filter can be configured several times
+            String unique = name;
+            for (int n = 2; !used.add(unique); n++) {
+                unique = name + "_" + n;
+            }
+            names[i] = unique;
+            stats.set(i, new Stats());
+        }
+    }
+
+    /** Returns the sampling ratio from the configuration, 0 if the metrics are deactivated */
+    public static int getSampling(@NotNull Map<String, Object> conf) {
+        return ConfUtils.getInt(conf, SAMPLING_PARAM_NAME, DEFAULT_SAMPLING);
+    }
+
+    /** Whether the next invocation should be timed */
+    public boolean sample() {
+        return sampling == 1 || ThreadLocalRandom.current().nextInt(sampling) == 0;
+    }
+
+    /**
+     * Records an invocation of the filter at the given position
+     *
+     * @param nanos time taken by the invocation or a negative value if it was not timed
+     * @param rejected whether the URL was removed by the filter
+     * @param modified whether the URL was modified by the filter
+     */
+    public void record(int filter, long nanos, boolean rejected, boolean modified) {
+        Stats s = stats.get(filter);
+        s.invocations.increment();
+        if (rejected) s.rejected.increment();
+        if (modified) s.modified.increment();
+        if (nanos >= 0) {
+            s.timed.increment();
+            s.totalNanos.add(nanos);
+            s.maxNanos.accumulate(nanos);
+            // bucket k holds the values from 2^(k-1) to 2^k - 1
+            s.histogram.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        }
+    }
+
+    @Override
+    public Object getValueAndReset() {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            Stats s = stats.getAndSet(i, new Stats());
+            String name = names[i];
+            values.put(name + ".invocations", s.invocations.sum());
+            values.put(name + ".rejected", s.rejected.sum());
+            values.put(name + ".modified", s.modified.sum());
+            long timed = s.timed.sum();
+            if (timed == 0) continue;
+            values.put(name + ".mean_ns", s.totalNanos.sum() / timed);
+            values.put(name + ".p50_ns", percentile(s.histogram, timed, 0.5));
+            values.put(name + ".p99_ns", percentile(s.histogram, timed, 0.99));
+            values.put(name + ".max_ns", s.maxNanos.get());
+        }
+        return values;
+    }
+
+    /** Upper bound of the bucket containing the percentile */
+    private static long percentile(AtomicLongArray histogram, long count, double percentile) {
+        long threshold = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram.get(b);
+            if (seen >= threshold) {
+                return b == 0 ? 0 : (1L << b) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
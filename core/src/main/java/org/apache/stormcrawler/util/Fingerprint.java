@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+/**
+ * 64-bit fingerprints of strings, computed over the chars without allocating any intermediate byte
+ * array. Used by the compact data structures which store fingerprints instead of the URLs
+ * themselves; not suitable for any cryptographic purpose.
+ *
+ * @since 3.4.1
+ */
+public final class Fingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprint() {}
+
+    /** FNV-1a over the chars of the input followed by the Murmur3 finalizer */
+    public static long hash64(CharSequence input) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < input.length(); i++) {
+            h ^= input.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /** FNV-1a over the bytes of the input followed by the Murmur3 finalizer */
+    public static long hash64(byte[] input) {
+        long h = FNV_OFFSET;
+        for (byte b : input) {
+            h ^= b & 0xff;
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /** Murmur3 64-bit finalizer, spreads the bits of a value over the whole long */
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Bounded set of 64-bit fingerprints (see {@link Fingerprint}) held in a single open-addressing
+ * table of longs, on or off heap, which costs 10 bytes per entry. When the table is full, entries
+ * are evicted with the CLOCK algorithm: a lookup sets a reference bit on the entry it finds and the
+ * eviction hand clears the bits as it sweeps through the table until it finds an entry which has
+ * not been used since its last pass.
+ *
+ * <p>Thread safe.
+ *
+ * <p>A fingerprint uses 63 bits of the hash, two strings sharing it are treated as identical.
+ *
+ * @since 3.4.1
+ */
+public class FingerprintCache {
+
+    private static final long REFERENCED = 1L << 63;
+
+    private static final long FINGERPRINT_MASK = ~REFERENCED;
+
+    private static final double MAX_LOAD = 0.8;
+
+    private final LongBuffer table;
+
+    private final int mask;
+
+    private final int maxSize;
+
+    private int size;
+
+    private int hand;
+
+    /**
+     * @param memoryBytes memory used by the table, rounded down to a power of two
+     * @param offHeap whether to allocate the table outside the Java heap
+     */
+    public FingerprintCache(long memoryBytes, boolean offHeap) {
+        long slots = Long.highestOneBit(Math.max(16, memoryBytes / Long.BYTES));
+        // a direct buffer is limited to 2GB
+        if (slots > 1 << 27) {
+            throw new IllegalArgumentException("At most 1GB can be used, got " + memoryBytes);
+        }
+        this.mask = (int) slots - 1;
+        this.maxSize = (int) (slots * MAX_LOAD);
+        this.table =
+                offHeap
+                        ? ByteBuffer.allocateDirect((int) slots * Long.BYTES).asLongBuffer()
+                        : LongBuffer.allocate((int) slots);
+    }
+
+    /** Whether the string is in the set, marks it as recently used if it is */
+    public boolean contains(CharSequence value) {
+        return contains(Fingerprint.hash64(value));
+    }
+
+    /** Adds the string to the set, evicting another entry if it is full */
+    public void add(CharSequence value) {
+        add(Fingerprint.hash64(value));
+    }
+
+    public synchronized boolean contains(long fingerprint) {
+        long key = key(fingerprint);
+        for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+            long slot = table.get(i);
+            if (slot == 0) return false;
+            if ((slot & FINGERPRINT_MASK) == key) {
+                if (slot >= 0) table.put(i, slot | REFERENCED);
+                return true;
+            }
+        }
+    }
+
+    public synchronized void add(long fingerprint) {
+        long key = key(fingerprint);
+        int i = (int) key & mask;
+        for (; ; i = (i + 1) & mask) {
+            long slot = table.get(i);
+            if (slot == 0) break;
+            if ((slot & FINGERPRINT_MASK) == key) return;
+        }
+        if (size >= maxSize) {
+            evict();
+            // the entries may have moved
+            i = (int) key & mask;
+            while (table.get(i) != 0) i = (i + 1) & mask;
+        }
+        table.put(i, key);
+        size++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Max number of entries held */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** 0 marks the empty slots */
+    private static long key(long fingerprint) {
+        long key = fingerprint & FINGERPRINT_MASK;
+        return key == 0 ? 1 : key;
+    }
+
+    /** Removes the first entry not referenced since the last pass of the hand */
+    private void evict() {
+        while (true) {
+            long slot = table.get(hand);
+            if (slot == 0) {
+                hand = (hand + 1) & mask;
+            } else if (slot < 0) {
+                table.put(hand, slot & FINGERPRINT_MASK);
+                hand = (hand + 1) & mask;
+            } else {
+                // the hand stays on the slot, which now holds the next entry if any
+                delete(hand);
+                return;
+            }
+        }
+    }
+
+    /** Deletes the entry in a slot and moves up the entries of its cluster which need it */
+    private void delete(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long slot = table.get(j);
+            if (slot == 0) break;
+            int home = (int) (slot & FINGERPRINT_MASK) & mask;
+            // can the entry at j be moved to i without breaking its probe sequence?
+            boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (movable) {
+                table.put(i, slot);
+                i = j;
+            }
+        }
+        table.put(i, 0);
+        size--;
+    }
+}
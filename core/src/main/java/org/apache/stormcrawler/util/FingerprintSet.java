@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+/**
+ * Set of 64-bit fingerprints stored in a primitive open-addressing table, without any boxing. The
+ * table grows and shrinks with the number of entries. Not thread safe.
+ *
+ * @since 3.4.1
+ */
+public class FingerprintSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table = new long[MIN_CAPACITY];
+
+    private int size;
+
+    /** 0 marks the empty slots */
+    private static long key(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /** Adds the fingerprint, returns false if it was already in the set */
+    public boolean add(long fingerprint) {
+        long key = key(fingerprint);
+        if ((size + 1) * 4 > table.length * 3) {
+            resize(table.length * 2);
+        }
+        int mask = table.length - 1;
+        for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+            if (table[i] == key) return false;
+            if (table[i] == 0) {
+                table[i] = key;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        long key = key(fingerprint);
+        int mask = table.length - 1;
+        for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+            if (table[i] == key) return true;
+            if (table[i] == 0) return false;
+        }
+    }
+
+    /** Removes the fingerprint, returns false if it wasn't in the set */
+    public boolean remove(long fingerprint) {
+        long key = key(fingerprint);
+        int mask = table.length - 1;
+        int i = (int) key & mask;
+        while (table[i] != key) {
+            if (table[i] == 0) return false;
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0) break;
+            int home = (int) table[j] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+        size--;
+        if (table.length > MIN_CAPACITY && size * 8 < table.length) {
+            resize(table.length / 2);
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        if (size == 0 && table.length == MIN_CAPACITY) return;
+        table = new long[MIN_CAPACITY];
+        size = 0;
+    }
+
+    private void resize(int length) {
+        long[] old = table;
+        table = new long[length];
+        int mask = length - 1;
+        for (long key : old) {
+            if (key == 0) continue;
+            int i = (int) key & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = key;
+        }
+    }
+}
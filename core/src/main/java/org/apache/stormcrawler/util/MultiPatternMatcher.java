@@ -0,0 +1,560 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Prefilter for a list of regular expressions evaluated against the same input. The literal strings
+ * which any match of a pattern must contain are extracted from its expression and merged into a
+ * single Aho-Corasick automaton, so that one pass over the input determines which patterns can
+ * possibly match. Only these candidates then need to be evaluated with {@link java.util.regex}, in
+ * the order in which they were given so that first-match-wins semantics are preserved.
+ *
+ * <p>Patterns for which no required literal can be found (e.g. top-level alternations, unsupported
+ * constructs or flags) are always candidates. The matching of the literals is ASCII case
+ * insensitive, which can only add candidates.
+ *
+ * <p>Instances are immutable and thread safe.
+ *
+ * @since 3.4.1
+ */
+public class MultiPatternMatcher {
+
+    /** Max number of alternative literals kept for a single pattern */
+    private static final int MAX_ALTERNATIVES = 32;
+
+    private static final int ASCII = 128;
+
+    private final int numPatterns;
+
+    /** patterns which are candidates for any input */
+    private final BitSet always = new BitSet();
+
+    /**
+     * maps the ASCII chars to the index of their class in the transition table, 0 being the class
+     * of the chars which don't appear in any literal. Uppercase letters are mapped to the class of
+     * their lowercase form.
+     */
+    private final int[] charClasses = new int[ASCII];
+
+    private final int numClasses;
+
+    /** transitions of the automaton, indexed by state * numClasses + char class */
+    private final int[] delta;
+
+    /** indices of the patterns having a literal ending at a given state, null if none */
+    private final int[][] outputs;
+
+    /**
+     * @param patterns the patterns in the order in which they will be evaluated. A null entry means
+     *     that the expression of the pattern is unknown or not a Java regex, it is then always a
+     *     candidate.
+     */
+    public MultiPatternMatcher(@NotNull List<Pattern> patterns) {
+        this.numPatterns = patterns.size();
+
+        List<List<String>> literals = new ArrayList<>(numPatterns);
+        int n = 1;
+        for (int p = 0; p < numPatterns; p++) {
+            Pattern pattern = patterns.get(p);
+            List<String> lits =
+                    pattern == null ? null : requiredLiterals(pattern.pattern(), pattern.flags());
+            literals.add(lits);
+            if (lits == null) {
+                always.set(p);
+                continue;
+            }
+            for (String literal : lits) {
+                for (int i = 0; i < literal.length(); i++) {
+                    char c = literal.charAt(i);
+                    if (charClasses[c] == 0) {
+                        charClasses[c] = n++;
+                    }
+                }
+            }
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            charClasses[c] = charClasses[c + ('a' - 'A')];
+        }
+        this.numClasses = n;
+
+        // trie of the literals
+        List<int[]> children = new ArrayList<>();
+        List<Set<Integer>> outs = new ArrayList<>();
+        children.add(newNode());
+        outs.add(null);
+
+        for (int p = 0; p < numPatterns; p++) {
+            if (literals.get(p) == null) {
+                continue;
+            }
+            for (String literal : literals.get(p)) {
+                int state = 0;
+                for (int i = 0; i < literal.length(); i++) {
+                    int c = charClasses[literal.charAt(i)];
+                    int next = children.get(state)[c];
+                    if (next == -1) {
+                        next = children.size();
+                        children.add(newNode());
+                        outs.add(null);
+                        children.get(state)[c] = next;
+                    }
+                    state = next;
+                }
+                if (outs.get(state) == null) {
+                    outs.set(state, new LinkedHashSet<>());
+                }
+                outs.get(state).add(p);
+            }
+        }
+
+        // breadth-first computation of the failure links, turned into a full transition table
+        int numStates = children.size();
+        delta = new int[numStates * numClasses];
+        int[] fail = new int[numStates];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < numClasses; c++) {
+            int next = children.get(0)[c];
+            if (next != -1) {
+                delta[c] = next;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            Set<Integer> inherited = outs.get(fail[state]);
+            if (inherited != null) {
+                if (outs.get(state) == null) {
+                    outs.set(state, new LinkedHashSet<>());
+                }
+                outs.get(state).addAll(inherited);
+            }
+            for (int c = 0; c < numClasses; c++) {
+                int next = children.get(state)[c];
+                if (next == -1) {
+                    delta[state * numClasses + c] = delta[fail[state] * numClasses + c];
+                } else {
+                    delta[state * numClasses + c] = next;
+                    fail[next] = delta[fail[state] * numClasses + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        outputs = new int[numStates][];
+        for (int s = 0; s < numStates; s++) {
+            Set<Integer> o = outs.get(s);
+            if (o != null) {
+                outputs[s] = o.stream().mapToInt(Integer::intValue).sorted().toArray();
+            }
+        }
+    }
+
+    private int[] newNode() {
+        int[] node = new int[numClasses];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    /** Number of patterns given to the constructor */
+    public int size() {
+        return numPatterns;
+    }
+
+    /** Number of patterns which could not be prefiltered and are candidates for any input */
+    public int getUnfilteredCount() {
+        return always.cardinality();
+    }
+
+    /**
+     * Returns the indices of the patterns which can possibly match the input. A pattern which is
+     * not in the set is guaranteed not to match it.
+     */
+    public BitSet candidates(@NotNull CharSequence input) {
+        BitSet result = (BitSet) always.clone();
+        int state = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            int cls = c < ASCII ? charClasses[c] : 0;
+            if (cls == 0) {
+                // not part of any literal
+                state = 0;
+                continue;
+            }
+            state = delta[state * numClasses + cls];
+            int[] out = outputs[state];
+            if (out != null) {
+                for (int p : out) {
+                    result.set(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lowercased literals one of which must be found in any match of the expression, or
+     * null if they can't be determined.
+     */
+    static @Nullable List<String> requiredLiterals(@NotNull String regex, int flags) {
+        int supported =
+                Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL | Pattern.UNIX_LINES;
+        if ((flags & ~supported) != 0) {
+            return null;
+        }
+        return new LiteralExtractor(regex).extract();
+    }
+
+    /**
+     * Conservative scan of a regular expression in the java.util.regex syntax, keeping track of the
+     * sequences of literal chars found at the top level. Groups are skipped, unless they consist
+     * only of literal alternatives, in which case they expand the current sequence.
+     */
+    private static class LiteralExtractor {
+
+        private final String regex;
+
+        private int pos = 0;
+
+        /** alternatives for the current run of literals */
+        private List<String> current = Collections.singletonList("");
+
+        /** value of current before the last literal atom, restored if the atom is optional */
+        private List<String> beforeAtom = null;
+
+        private List<String> best = null;
+
+        LiteralExtractor(String regex) {
+            this.regex = regex;
+        }
+
+        List<String> extract() {
+            int len = regex.length();
+            while (pos < len) {
+                char c = regex.charAt(pos);
+                switch (c) {
+                    case '\\':
+                        {
+                            if (pos + 1 >= len) return null;
+                            char n = regex.charAt(pos + 1);
+                            if (n < ASCII && !Character.isLetterOrDigit(n)) {
+                                appendLiteral(Character.toString(n));
+                                pos += 2;
+                            } else if (n == 'Q') {
+                                return null;
+                            } else {
+                                pos = skipEscape(pos);
+                                if (pos == -1) return null;
+                                flush();
+                            }
+                            break;
+                        }
+                    case '[':
+                        pos = skipClass(pos);
+                        if (pos == -1) return null;
+                        flush();
+                        break;
+                    case '(':
+                        if (!group()) return null;
+                        break;
+                    case ')':
+                    case '|':
+                        // unbalanced parenthesis or top-level alternation
+                        return null;
+                    case '*':
+                    case '?':
+                        optional();
+                        pos++;
+                        break;
+                    case '+':
+                        flush();
+                        pos++;
+                        break;
+                    case '{':
+                        {
+                            int end = regex.indexOf('}', pos);
+                            if (end == -1) return null;
+                            if (regex.startsWith("0", pos + 1)) {
+                                optional();
+                            } else {
+                                flush();
+                            }
+                            pos = end + 1;
+                            break;
+                        }
+                    case '.':
+                    case '^':
+                    case '$':
+                        flush();
+                        pos++;
+                        break;
+                    default:
+                        if (c >= ASCII) {
+                            flush();
+                        } else {
+                            appendLiteral(Character.toString(c));
+                        }
+                        pos++;
+                }
+            }
+            flush();
+            return best;
+        }
+
+        /** Handles a group starting at pos, returns false if the expression is not supported */
+        private boolean group() {
+            int start = pos;
+            boolean capturing = true;
+            if (regex.startsWith("(?", pos)) {
+                int i = pos + 2;
+                while (i < regex.length() && "idmsuxU-".indexOf(regex.charAt(i)) != -1) {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ')' && i > pos + 2) {
+                    // inline flags: the unicode and comments modes are not supported
+                    for (int j = pos + 2; j < i; j++) {
+                        if ("idms-".indexOf(regex.charAt(j)) == -1) return false;
+                    }
+                    flush();
+                    pos = i + 1;
+                    return true;
+                }
+                capturing = regex.startsWith("(?:", pos);
+                if (!capturing) {
+                    // lookaround, named or flagged group: skipped
+                    pos = skipGroup(pos);
+                    if (pos == -1) return false;
+                    flush();
+                    return true;
+                }
+            }
+            int contentStart = regex.startsWith("(?:", start) ? start + 3 : start + 1;
+            pos = skipGroup(start);
+            if (pos == -1) return false;
+            List<String> alternatives = literalAlternatives(contentStart, pos - 1);
+            if (alternatives == null) {
+                flush();
+            } else {
+                appendAlternatives(alternatives);
+            }
+            return true;
+        }
+
+        /** Returns the alternatives if the content of the group is made only of literals */
+        private List<String> literalAlternatives(int start, int end) {
+            List<String> alternatives = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                char c = regex.charAt(i);
+                if (c == '|') {
+                    alternatives.add(sb.toString());
+                    sb.setLength(0);
+                } else if (c == '\\') {
+                    if (i + 1 >= end) return null;
+                    char n = regex.charAt(++i);
+                    if (n >= ASCII || Character.isLetterOrDigit(n)) return null;
+                    sb.append(n);
+                } else if (c >= ASCII || "[](){}.*+?^$".indexOf(c) != -1) {
+                    return null;
+                } else {
+                    sb.append(c);
+                }
+            }
+            alternatives.add(sb.toString());
+            if (alternatives.size() > MAX_ALTERNATIVES) return null;
+            return alternatives;
+        }
+
+        private void appendLiteral(String s) {
+            appendAlternatives(Collections.singletonList(s));
+        }
+
+        private void appendAlternatives(List<String> alternatives) {
+            beforeAtom = current;
+            if (current.size() * alternatives.size() > MAX_ALTERNATIVES) {
+                flush();
+                beforeAtom = current;
+            }
+            List<String> expanded = new ArrayList<>(current.size() * alternatives.size());
+            for (String prefix : current) {
+                for (String alt : alternatives) {
+                    expanded.add(prefix + alt);
+                }
+            }
+            current = expanded;
+        }
+
+        /** The last atom can be absent from a match */
+        private void optional() {
+            if (beforeAtom != null) {
+                current = beforeAtom;
+            }
+            flush();
+        }
+
+        /** Ends the current run of literals and keeps it if it is better than the best so far */
+        private void flush() {
+            beforeAtom = null;
+            int minLength = Integer.MAX_VALUE;
+            for (String s : current) {
+                minLength = Math.min(minLength, s.length());
+            }
+            if (minLength > 0 && minLength > bestMinLength()) {
+                List<String> lowercased = new ArrayList<>(current.size());
+                for (String s : current) {
+                    lowercased.add(toLowerCaseASCII(s));
+                }
+                best = lowercased;
+            }
+            current = Collections.singletonList("");
+        }
+
+        private int bestMinLength() {
+            if (best == null) return 0;
+            int min = Integer.MAX_VALUE;
+            for (String s : best) {
+                min = Math.min(min, s.length());
+            }
+            return min;
+        }
+
+        /** Returns the position after the escape sequence starting at i */
+        private int skipEscape(int i) {
+            char n = regex.charAt(i + 1);
+            switch (n) {
+                case 'p':
+                case 'P':
+                case 'N':
+                    if (regex.startsWith("{", i + 2)) {
+                        int end = regex.indexOf('}', i);
+                        return end == -1 ? -1 : end + 1;
+                    }
+                    return i + 3;
+                case 'x':
+                    if (regex.startsWith("{", i + 2)) {
+                        int end = regex.indexOf('}', i);
+                        return end == -1 ? -1 : end + 1;
+                    }
+                    return i + 4;
+                case 'u':
+                    return i + 6;
+                case 'c':
+                    return i + 3;
+                case 'k':
+                    {
+                        int end = regex.indexOf('>', i);
+                        return end == -1 ? -1 : end + 1;
+                    }
+                case '0':
+                    {
+                        int j = i + 2;
+                        while (j < regex.length() && j < i + 5 && isOctal(regex.charAt(j))) j++;
+                        return j;
+                    }
+                default:
+                    if (n >= '1' && n <= '9') {
+                        int j = i + 2;
+                        while (j < regex.length() && Character.isDigit(regex.charAt(j))) j++;
+                        return j;
+                    }
+                    return i + 2;
+            }
+        }
+
+        private static boolean isOctal(char c) {
+            return c >= '0' && c <= '7';
+        }
+
+        /** Returns the position after the character class starting at i */
+        private int skipClass(int i) {
+            int j = i + 1;
+            if (j < regex.length() && regex.charAt(j) == '^') j++;
+            // a closing bracket in first position is a literal
+            if (j < regex.length() && regex.charAt(j) == ']') j++;
+            int depth = 1;
+            while (j < regex.length()) {
+                char c = regex.charAt(j);
+                if (c == '\\') {
+                    if (regex.startsWith("Q", j + 1)) return -1;
+                    j += 2;
+                    continue;
+                }
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                    if (depth == 0) return j + 1;
+                }
+                j++;
+            }
+            return -1;
+        }
+
+        /** Returns the position after the group starting at i */
+        private int skipGroup(int i) {
+            int depth = 0;
+            int j = i;
+            while (j < regex.length()) {
+                char c = regex.charAt(j);
+                if (c == '\\') {
+                    if (regex.startsWith("Q", j + 1)) return -1;
+                    j += 2;
+                    continue;
+                }
+                if (c == '[') {
+                    j = skipClass(j);
+                    if (j == -1) return -1;
+                    continue;
+                }
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                    if (depth == 0) return j + 1;
+                }
+                j++;
+            }
+            return -1;
+        }
+    }
+
+    private static String toLowerCaseASCII(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (sb == null) {
+                    sb = new StringBuilder(s);
+                }
+                sb.setCharAt(i, (char) (c + ('a' - 'A')));
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import crawlercommons.domains.PaidLevelDomain;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.storm.metric.api.IMetric;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Memoizes the paid-level domains of the hosts, as returned by {@link PaidLevelDomain#getPLD}. The
+ * public suffix list is loaded once per JVM by crawler-commons but each lookup still checks whether
+ * the host is an IP address, normalises it and walks its suffixes; the results are kept in a
+ * bounded cache shared by all the components of the worker, sized with
+ * <i>pld.cache.max.entries</i>.
+ *
+ * @since 3.4.1
+ */
+public final class PaidLevelDomains {
+
+    public static final String CACHE_SIZE_PARAM_NAME = "pld.cache.max.entries";
+
+    private static final int DEFAULT_CACHE_SIZE = 100000;
+
+    private static final Cache<String, String> cache =
+            Caffeine.newBuilder().maximumSize(DEFAULT_CACHE_SIZE).recordStats().build();
+
+    private static volatile boolean enabled = true;
+
+    private PaidLevelDomains() {}
+
+    /**
+     * Resizes the cache if its size is set in the configuration, 0 to deactivate it. Can be called
+     * by any of the components of the worker, the last call wins.
+     */
+    public static void configure(@NotNull Map<String, Object> conf) {
+        if (!conf.containsKey(CACHE_SIZE_PARAM_NAME)) {
+            return;
+        }
+        int size = ConfUtils.getInt(conf, CACHE_SIZE_PARAM_NAME, DEFAULT_CACHE_SIZE);
+        enabled = size > 0;
+        cache.policy().eviction().ifPresent(e -> e.setMaximum(Math.max(size, 0)));
+    }
+
+    /** Returns the paid-level domain for a host */
+    public static String getPLD(@NotNull String host) {
+        if (!enabled) {
+            return PaidLevelDomain.getPLD(host);
+        }
+        String pld = cache.getIfPresent(host);
+        if (pld == null) {
+            pld = PaidLevelDomain.getPLD(host);
+            if (pld != null) {
+                // share the instance when the host is a PLD
+                cache.put(host, pld.equals(host) ? host : pld);
+            }
+        }
+        return pld;
+    }
+
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public static long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Returns a metric reporting the activity of the cache since its previous call. The cache is
+     * shared by the whole worker, so it only needs registering by one of its components.
+     */
+    public static IMetric getMetric() {
+        return new IMetric() {
+            private CacheStats last = CacheStats.empty();
+
+            @Override
+            public synchronized Object getValueAndReset() {
+                CacheStats current = cache.stats();
+                CacheStats stats = current.minus(last);
+                last = current;
+                Map<String, Object> statsMap = new HashMap<>();
+                statsMap.put("hits", stats.hitCount());
+                statsMap.put("misses", stats.missCount());
+                statsMap.put("hit_rate", stats.hitRate());
+                statsMap.put("evictions", stats.evictionCount());
+                statsMap.put("size", cache.estimatedSize());
+                return statsMap;
+            }
+        };
+    }
+}
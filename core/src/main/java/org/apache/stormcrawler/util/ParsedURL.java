@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable URL parsed once and shared between the components which need its parts, e.g. the
+ * URLFilters or the URLPartitioner. The string representation is the one the instance was built
+ * from, the paid-level domain is computed lazily on first access.
+ *
+ * @since 3.4.1
+ */
+public final class ParsedURL {
+
+    private final String url;
+
+    private final URL parsed;
+
+    private String pld;
+
+    private ParsedURL(String url, URL parsed) {
+        this.url = url;
+        this.parsed = parsed;
+    }
+
+    /** Parses the URL passed as a String */
+    public static ParsedURL parse(@NotNull String url) throws MalformedURLException {
+        return new ParsedURL(url, new URL(url));
+    }
+
+    /** Wraps an existing URL, its external form is used as string representation */
+    public static ParsedURL of(@NotNull URL url) {
+        return new ParsedURL(url.toExternalForm(), url);
+    }
+
+    /** Resolves a possibly relative target against a base URL */
+    public static ParsedURL resolve(@NotNull URL base, @NotNull String target)
+            throws MalformedURLException {
+        return of(URLUtil.resolveURL(base, target));
+    }
+
+    public URL getURL() {
+        return parsed;
+    }
+
+    public String getProtocol() {
+        return parsed.getProtocol();
+    }
+
+    public String getHost() {
+        return parsed.getHost();
+    }
+
+    /** Paid-level domain of the host, computed on first call */
+    public String getPLD() {
+        // benign race, the value is always the same
+        String d = pld;
+        if (d == null) {
+            d = PaidLevelDomains.getPLD(parsed.getHost());
+            pld = d;
+        }
+        return d;
+    }
+
+    public String getPath() {
+        return parsed.getPath();
+    }
+
+    /** Query part of the URL or null if there isn't one */
+    public String getQuery() {
+        return parsed.getQuery();
+    }
+
+    /** Path and query */
+    public String getFile() {
+        return parsed.getFile();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ParsedURL)) return false;
+        return url.equals(((ParsedURL) o).url);
+    }
+
+    @Override
+    public int hashCode() {
+        return url.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.Arrays;
+
+/**
+ * Time-decaying probabilistic set of 64-bit fingerprints. The memory budget is split between a
+ * fixed number of Bloom filters (generations); new entries go to the current generation and lookups
+ * check all of them. The oldest generation is cleared and becomes the current one when the current
+ * generation has been in use for more than <i>ttl / generations</i> or when it holds as many
+ * entries as it can for the false positive rate expected, so that an entry is remembered for at
+ * most <i>ttl</i> msec.
+ *
+ * <p>Not thread safe.
+ *
+ * @since 3.4.1
+ */
+public class RotatingBloomFilter {
+
+    private final long[][] generations;
+
+    /** mask to apply to a hash to get a bit index, the number of bits is a power of 2 */
+    private final long bitMask;
+
+    private final int numHashes;
+
+    /** max number of entries in a generation */
+    private final long capacity;
+
+    private final long generationDuration;
+
+    private int current = 0;
+
+    private long currentStart;
+
+    private long currentCount = 0;
+
+    /**
+     * @param memoryBytes total memory to use
+     * @param numGenerations number of Bloom filters to split the memory between (at least 2)
+     * @param ttl max time in msec for which an entry is remembered
+     * @param fpp expected false positive probability of a lookup
+     * @param now current time in msec
+     */
+    public RotatingBloomFilter(
+            long memoryBytes, int numGenerations, long ttl, double fpp, long now) {
+        if (numGenerations < 2) {
+            throw new IllegalArgumentException("At least 2 generations needed");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("False positive probability must be in ]0,1[");
+        }
+        long bitsPerGeneration = Long.highestOneBit(Math.max(64, memoryBytes * 8 / numGenerations));
+        this.bitMask = bitsPerGeneration - 1;
+        this.generations = new long[numGenerations][(int) (bitsPerGeneration / 64)];
+        // a lookup checks all the generations
+        double fppPerGeneration = fpp / numGenerations;
+        this.numHashes = Math.max(1, (int) Math.ceil(-Math.log(fppPerGeneration) / Math.log(2)));
+        this.capacity =
+                Math.max(
+                        1,
+                        (long)
+                                (bitsPerGeneration
+                                        * Math.pow(Math.log(2), 2)
+                                        / -Math.log(fppPerGeneration)));
+        this.generationDuration = Math.max(1, ttl / numGenerations);
+        this.currentStart = now;
+    }
+
+    /**
+     * Adds the fingerprint to the set.
+     *
+     * @return true if it was not already in it (as far as the filter can tell), false otherwise
+     */
+    public boolean add(long fingerprint, long now) {
+        rotateIfNeeded(now);
+        if (mightContain(fingerprint)) {
+            return false;
+        }
+        long[] bits = generations[current];
+        long h1 = fingerprint;
+        long h2 = Fingerprint.mix64(fingerprint) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long index = (h1 + i * h2) & bitMask;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+        currentCount++;
+        return true;
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Fingerprint.mix64(fingerprint) | 1;
+        for (long[] bits : generations) {
+            if (contains(bits, h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(long[] bits, long h1, long h2) {
+        for (int i = 0; i < numHashes; i++) {
+            long index = (h1 + i * h2) & bitMask;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rotateIfNeeded(long now) {
+        if (now - currentStart < generationDuration && currentCount < capacity) {
+            return;
+        }
+        current = (current + 1) % generations.length;
+        Arrays.fill(generations[current], 0L);
+        currentStart = now;
+        currentCount = 0;
+    }
+
+    /** Max number of entries per generation */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+}
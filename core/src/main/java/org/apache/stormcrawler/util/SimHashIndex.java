@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+
+/**
+ * In-memory index of 64-bit SimHash fingerprints supporting lookups of the fingerprints within a
+ * given Hamming distance, following Manku et al., "Detecting Near-Duplicates for Web Crawling".
+ *
+ * <p>The 64 bits are split into maxDistance + 1 blocks: two fingerprints differing by at most
+ * maxDistance bits have at least one block in common. The index keeps one sorted table per block,
+ * where each fingerprint is represented by a single long packing the (first 32 bits of the) block
+ * with the position of the fingerprint, so that the candidates sharing a block with the query are
+ * found with a binary search and a short scan. The fingerprints being added are kept in a small
+ * unsorted buffer, which is sorted with {@link Arrays#sort(long[], int, int)} and merged in place
+ * into the tables when full.
+ *
+ * <p>The memory used is bounded by keeping two generations of tables: once the current one holds
+ * the maximum number of fingerprints, it replaces the previous one, whose fingerprints are
+ * forgotten. The instances can be shared by the components running in the same worker with {@link
+ * #getInstance(String, int, int)}.
+ *
+ * @since 3.4.1
+ */
+public class SimHashIndex {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final Map<String, SimHashIndex> INSTANCES = new HashMap<>();
+
+    private final int maxDistance;
+
+    private final int capacity;
+
+    /** position of the first bit of each block, counted from the most significant one */
+    private final int[] blockStart;
+
+    /** bits of each block, at most 32, used in the packed entries of the tables */
+    private final long[] prefixMask;
+
+    private Generation current;
+
+    private Generation previous;
+
+    /**
+     * Returns the index registered under that name in the JVM, creating it with the given
+     * parameters if needed.
+     *
+     * @throws IllegalArgumentException if the index already exists with different parameters
+     */
+    public static synchronized SimHashIndex getInstance(
+            String name, int maxDistance, int capacity) {
+        SimHashIndex index =
+                INSTANCES.computeIfAbsent(name, k -> new SimHashIndex(maxDistance, capacity));
+        if (index.maxDistance != maxDistance || index.capacity != Math.max(1, capacity)) {
+            throw new IllegalArgumentException(
+                    "Index "
+                            + name
+                            + " already exists with maxDistance "
+                            + index.maxDistance
+                            + " and capacity "
+                            + index.capacity);
+        }
+        return index;
+    }
+
+    /**
+     * @param maxDistance max number of bits by which two fingerprints can differ to match
+     * @param capacity number of fingerprints per generation
+     */
+    public SimHashIndex(int maxDistance, int capacity) {
+        if (maxDistance < 0 || maxDistance > 15) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and 15");
+        }
+        this.maxDistance = maxDistance;
+        this.capacity = Math.max(1, capacity);
+        int blocks = maxDistance + 1;
+        blockStart = new int[blocks];
+        prefixMask = new long[blocks];
+        int start = 0;
+        for (int i = 0; i < blocks; i++) {
+            int width = 64 / blocks + (i < 64 % blocks ? 1 : 0);
+            blockStart[i] = start;
+            prefixMask[i] = -1L << (64 - Math.min(width, 32));
+            start += width;
+        }
+        current = new Generation();
+    }
+
+    /**
+     * Looks for a fingerprint within the max distance which was added for another document. If
+     * there is none, adds the fingerprint to the index unless it is already there for the same
+     * document.
+     *
+     * @param simhash fingerprint of the content
+     * @param docId identifier of the document, e.g. a hash of its URL
+     * @return the closest fingerprint of another document or an empty value
+     */
+    public synchronized OptionalLong findOrAdd(long simhash, long docId) {
+        Match match = new Match(simhash, docId);
+        current.find(match);
+        if (previous != null) {
+            previous.find(match);
+        }
+        if (match.distance <= maxDistance) {
+            return OptionalLong.of(match.closest);
+        }
+        if (!match.self) {
+            if (current.size >= capacity) {
+                previous = current;
+                current = new Generation();
+            }
+            current.add(simhash, docId);
+        }
+        return OptionalLong.empty();
+    }
+
+    /** Number of fingerprints in the index */
+    public synchronized int size() {
+        return current.size + (previous != null ? previous.size : 0);
+    }
+
+    private static final class Match {
+        final long simhash;
+        final long docId;
+        long closest;
+        int distance = Integer.MAX_VALUE;
+        boolean self;
+
+        Match(long simhash, long docId) {
+            this.simhash = simhash;
+            this.docId = docId;
+        }
+
+        void check(long candidate, long candidateDoc, int maxDistance) {
+            if (candidateDoc == docId) {
+                if (candidate == simhash) self = true;
+                return;
+            }
+            int d = Long.bitCount(candidate ^ simhash);
+            if (d <= maxDistance && d < distance) {
+                distance = d;
+                closest = candidate;
+            }
+        }
+    }
+
+    private final class Generation {
+        /** fingerprints and documents in the order in which they were added */
+        long[] simhashes = new long[Math.min(capacity, BUFFER_SIZE)];
+
+        long[] docs = new long[simhashes.length];
+
+        int size;
+
+        /**
+         * Number of fingerprints in the tables, the following ones are in the buffer. The tables
+         * contain, per block, the permuted block prefix in the upper 32 bits and the position of
+         * the fingerprint in the lower ones, sorted.
+         */
+        int indexed;
+
+        final long[][] tables = new long[blockStart.length][0];
+
+        /** used for sorting the buffer */
+        final long[] sorted = new long[BUFFER_SIZE];
+
+        void find(Match match) {
+            for (int i = indexed; i < size; i++) {
+                match.check(simhashes[i], docs[i], maxDistance);
+            }
+            for (int b = 0; b < blockStart.length; b++) {
+                long low = Long.rotateLeft(match.simhash, blockStart[b]) & prefixMask[b];
+                long high = low | 0xFFFFFFFFL;
+                long[] t = tables[b];
+                int pos = Arrays.binarySearch(t, 0, indexed, low);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                }
+                for (; pos < indexed && t[pos] <= high; pos++) {
+                    int i = (int) t[pos];
+                    match.check(simhashes[i], docs[i], maxDistance);
+                }
+            }
+        }
+
+        void add(long simhash, long docId) {
+            if (size == simhashes.length) {
+                int length = (int) Math.min(capacity, 2L * size);
+                simhashes = Arrays.copyOf(simhashes, length);
+                docs = Arrays.copyOf(docs, length);
+            }
+            simhashes[size] = simhash;
+            docs[size] = docId;
+            size++;
+            if (size - indexed == BUFFER_SIZE) {
+                flush();
+            }
+        }
+
+        /** Sorts the buffer and merges it into the tables, from the end so that it is in place */
+        private void flush() {
+            int buffered = size - indexed;
+            for (int b = 0; b < blockStart.length; b++) {
+                for (int i = 0; i < buffered; i++) {
+                    int position = indexed + i;
+                    sorted[i] =
+                            (Long.rotateLeft(simhashes[position], blockStart[b]) & prefixMask[b])
+                                    | position;
+                }
+                Arrays.sort(sorted, 0, buffered);
+                long[] t = tables[b];
+                if (t.length < size) {
+                    t = Arrays.copyOf(t, simhashes.length);
+                    tables[b] = t;
+                }
+                int i = indexed - 1;
+                int j = buffered - 1;
+                for (int n = size - 1; j >= 0; n--) {
+                    if (i >= 0 && t[i] > sorted[j]) {
+                        t[n] = t[i--];
+                    } else {
+                        t[n] = sorted[j--];
+                    }
+                }
+            }
+            indexed = size;
+        }
+    }
+}
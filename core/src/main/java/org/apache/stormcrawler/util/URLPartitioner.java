@@ -16,10 +16,8 @@
  */
 package org.apache.stormcrawler.util;
 
-import crawlercommons.domains.PaidLevelDomain;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.apache.stormcrawler.Constants;
@@ -43,6 +41,36 @@ public class URLPartitioner {
      */
     public static String getPartition(
             final String url, final Metadata metadata, final String partitionMode) {
+        ParsedURL u = null;
+        // the URL is not needed if the IP is provided in the metadata
+        if (!partitionMode.equalsIgnoreCase(Constants.PARTITION_MODE_IP)
+                || StringUtils.isBlank(metadata.getFirstValue("ip"))) {
+            try {
+                u = ParsedURL.parse(url);
+            } catch (MalformedURLException e1) {
+                LOG.warn("Invalid URL: {}", url);
+                return null;
+            }
+        }
+        return getPartition(url, u, metadata, partitionMode);
+    }
+
+    /**
+     * Same as {@link #getPartition(String, Metadata, String)} for a URL which has already been
+     * parsed.
+     *
+     * @since 3.4.1
+     */
+    public static String getPartition(
+            final ParsedURL url, final Metadata metadata, final String partitionMode) {
+        return getPartition(url.toString(), url, metadata, partitionMode);
+    }
+
+    private static String getPartition(
+            final String url,
+            final ParsedURL u,
+            final Metadata metadata,
+            final String partitionMode) {
         String partitionKey = null;
         String host = "";
 
@@ -55,14 +83,7 @@ public class URLPartitioner {
         }
 
         if (partitionKey == null) {
-            URL u;
-            try {
-                u = new URL(url);
-                host = u.getHost();
-            } catch (MalformedURLException e1) {
-                LOG.warn("Invalid URL: {}", url);
-                return null;
-            }
+            host = u.getHost();
         }
 
         // partition by hostname
@@ -70,7 +91,7 @@ public class URLPartitioner {
 
         // partition by domain : needs fixing
         else if (partitionMode.equalsIgnoreCase(Constants.PARTITION_MODE_DOMAIN)) {
-            partitionKey = PaidLevelDomain.getPLD(host);
+            partitionKey = u.getPLD();
         }
 
         // partition by IP
@@ -100,6 +121,16 @@ public class URLPartitioner {
         return getPartition(url, metadata, mode);
     }
 
+    /**
+     * Returns the host, domain, IP of a parsed URL so that it can be partitioned for politeness,
+     * depending on the value of the config <i>partition.url.mode</i>.
+     *
+     * @since 3.4.1
+     */
+    public String getPartition(ParsedURL url, Metadata metadata) {
+        return getPartition(url, metadata, mode);
+    }
+
     public void configure(Map stormConf) {
 
         mode =
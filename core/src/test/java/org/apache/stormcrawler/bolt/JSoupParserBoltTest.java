@@ -21,6 +21,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.storm.task.OutputCollector;
 import org.apache.stormcrawler.Constants;
 import org.apache.stormcrawler.Metadata;
@@ -231,4 +232,128 @@ class JSoupParserBoltTest extends ParsingTester {
         Assertions.assertEquals(
                 "http://www.javascriptlinks.com/mylink", statusTuples.get(0).get(0));
     }
+
+    @Test
+    void testSkipUnchanged() throws IOException {
+        stormConf.put("parser.skip.unchanged", true);
+        stormConf.put("jsoup.treat.non.html.as.error", false);
+        stormConf.put("parser.emitOutlinks", false);
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        byte[] content = tests[1].getBytes(StandardCharsets.UTF_8);
+
+        parse("https://stormcrawler.apache.org", content, new Metadata());
+        Assertions.assertEquals(1, output.getEmitted().size());
+        Metadata parsed = (Metadata) output.getEmitted().remove(0).get(2);
+        String hash = parsed.getFirstValue("content.hash");
+        Assertions.assertNotNull(hash);
+
+        // refetched with the persisted metadata
+        Metadata metadata = new Metadata();
+        metadata.setValue("content.hash", hash);
+        metadata.setValue("signature", "abc");
+        parse("https://stormcrawler.apache.org", content, metadata);
+        Assertions.assertEquals(0, output.getEmitted().size());
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(1, statusTuples.size());
+        Assertions.assertEquals(Status.FETCHED, statusTuples.get(0).get(2));
+        Assertions.assertEquals("abc", metadata.getFirstValue("signatureOld"));
+
+        // changed content
+        metadata = new Metadata();
+        metadata.setValue("content.hash", hash);
+        parse(
+                "https://stormcrawler.apache.org",
+                tests[0].getBytes(StandardCharsets.UTF_8),
+                metadata);
+        Assertions.assertEquals(1, output.getEmitted().size());
+        Assertions.assertNotEquals(hash, metadata.getFirstValue("content.hash"));
+        // nothing else leaks into the metadata
+        Assertions.assertEquals(Set.of("content.hash"), metadata.keySet("content."));
+
+        // passed on to another parser, which has to check it again
+        output.getEmitted().clear();
+        metadata = new Metadata();
+        metadata.setValue("content.hash", hash);
+        metadata.setValue("Content-Type", "application/pdf");
+        parse(
+                "https://stormcrawler.apache.org/doc.pdf",
+                "%PDF-1.4 not html".getBytes(StandardCharsets.UTF_8),
+                metadata);
+        Assertions.assertEquals(1, output.getEmitted().size());
+        Assertions.assertEquals(hash, metadata.getFirstValue("content.hash"));
+    }
+
+    @Test
+    void testSkipUnchangedRedirection() throws IOException {
+        stormConf.put("parser.skip.unchanged", true);
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        byte[] content =
+                ("<html><head><meta http-equiv=\"refresh\" "
+                                + "content=\"0; url=https://stormcrawler.apache.org/new\">"
+                                + "</head><body></body></html>")
+                        .getBytes(StandardCharsets.UTF_8);
+
+        Metadata metadata = new Metadata();
+        for (int fetch = 0; fetch < 2; fetch++) {
+            // refetched with the same content and the persisted metadata
+            parse("https://stormcrawler.apache.org", content, metadata);
+            List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+            Assertions.assertEquals(
+                    Status.REDIRECTION, statusTuples.get(statusTuples.size() - 1).get(2));
+            Assertions.assertNull(metadata.getFirstValue("content.hash"));
+        }
+    }
+
+    @Test
+    void testDetectionCache() throws IOException {
+        stormConf.put("detect.cache.max.entries", 10);
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        String charset = null;
+        for (int i = 0; i < 2; i++) {
+            Metadata metadata = new Metadata();
+            metadata.setValue("Content-Type", "text/html; charset=UTF-8");
+            parse(
+                    "https://stormcrawler.apache.org/page" + i,
+                    tests[1].getBytes(StandardCharsets.UTF_8),
+                    metadata);
+            List<Object> parsedTuple = output.getEmitted().remove(0);
+            metadata = (Metadata) parsedTuple.get(2);
+            Assertions.assertEquals(
+                    "text/html; charset=UTF-8", metadata.getFirstValue("parse.Content-Type"));
+            if (charset == null) {
+                charset = metadata.getFirstValue("parse.Content-Encoding");
+            }
+            // same value whether it was predicted or not
+            Assertions.assertEquals(charset, metadata.getFirstValue("parse.Content-Encoding"));
+        }
+    }
+
+    @Test
+    void testRecentOutlinksFilter() throws IOException {
+        stormConf.put(StatusEmitterBolt.RECENT_FILTER_MEMORY_PARAM_NAME, 1);
+        bolt.prepare(stormConf, TestUtil.getMockedTopologyContext(), new OutputCollector(output));
+        parse("https://stormcrawler.apache.org", "stormcrawler.apache.org.html");
+        Assertions.assertEquals(25, output.getEmitted(Constants.StatusStreamName).size());
+        output.getEmitted(Constants.StatusStreamName).clear();
+        // same outlinks found on another page
+        parse("https://stormcrawler.apache.org/index.html", "stormcrawler.apache.org.html");
+        Assertions.assertEquals(0, output.getEmitted(Constants.StatusStreamName).size());
+        // the first page is replayed, e.g. after a failure
+        parse("https://stormcrawler.apache.org", "stormcrawler.apache.org.html");
+        Assertions.assertEquals(25, output.getEmitted(Constants.StatusStreamName).size());
+        output.getEmitted(Constants.StatusStreamName).clear();
+
+        // redirection to a URL found recently
+        parse(
+                "https://stormcrawler.apache.org/redirect",
+                ("<html><head><meta http-equiv=\"refresh\" "
+                                + "content=\"0; url=https://stormcrawler.apache.org/\">"
+                                + "</head><body></body></html>")
+                        .getBytes(StandardCharsets.UTF_8),
+                new Metadata());
+        List<List<Object>> statusTuples = output.getEmitted(Constants.StatusStreamName);
+        Assertions.assertEquals(2, statusTuples.size());
+        Assertions.assertEquals(Status.DISCOVERED, statusTuples.get(0).get(2));
+        Assertions.assertEquals(Status.REDIRECTION, statusTuples.get(1).get(2));
+    }
 }
@@ -22,13 +22,19 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.basic.BasicURLNormalizer;
 import org.junit.jupiter.api.Assertions;
@@ -316,6 +322,71 @@ class BasicURLNormalizerTest {
         assertEquals(expectedURL, normalizedUrl, "Failed to filter query string");
     }
 
+    /** The single-pass implementation must produce exactly the same output as the regular one */
+    @Test
+    void testSinglePassEquivalence() throws IOException {
+        List<String> corpus = new ArrayList<>();
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                getClass()
+                                        .getClassLoader()
+                                        .getResourceAsStream("normalizer-corpus.txt"),
+                                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    corpus.add(line);
+                }
+            }
+        }
+        corpus.add("https://www.example.com/lonely/\uD800");
+
+        // random combinations of parts which are handled differently
+        String[] protocols = {"http://", "HTTPS://", "https://", "Http://"};
+        String[] hosts = {"www.example.com", "WWW.Example.COM", "example.com:8080", "a_b.example"};
+        String[] segments = {
+            "", "/", "/a", "/A%2f", "/%7e", "/%41b", "/./", "/..", "/x y", "/é", "/[1]", "/a|b",
+            "//"
+        };
+        String[] queries = {"", "?", "?a=1&b=2", "?q=%e2%82%ac", "?x=/y", "&a=b", "?a=%zz"};
+        String[] anchors = {"", "#", "#frag", " #frag"};
+        Random random = new Random(0);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder url = new StringBuilder();
+            url.append(protocols[random.nextInt(protocols.length)]);
+            url.append(hosts[random.nextInt(hosts.length)]);
+            int numSegments = random.nextInt(4);
+            for (int j = 0; j < numSegments; j++) {
+                url.append(segments[random.nextInt(segments.length)]);
+            }
+            url.append(queries[random.nextInt(queries.length)]);
+            url.append(anchors[random.nextInt(anchors.length)]);
+            corpus.add(url.toString());
+        }
+
+        ObjectNode[] configurations = new ObjectNode[4];
+        for (int i = 0; i < configurations.length; i++) {
+            configurations[i] = new ObjectNode(JsonNodeFactory.instance);
+        }
+        configurations[1].put("removeAnchorPart", false);
+        configurations[2].put("unmangleQueryString", false);
+        configurations[3].put("checkValidURI", false);
+        configurations[3].put("hostIDNtoASCII", true);
+
+        URL sourceURL = new URL("http://www.example.com/");
+        for (ObjectNode params : configurations) {
+            URLFilter singlePass = createFilter(params.deepCopy().put("singlePass", true));
+            URLFilter regular = createFilter(params.deepCopy().put("singlePass", false));
+            for (String url : corpus) {
+                assertEquals(
+                        regular.filter(sourceURL, new Metadata(), url),
+                        singlePass.filter(sourceURL, new Metadata(), url),
+                        url + " with " + params);
+            }
+        }
+    }
+
     private JsonNode getArrayNode(List<String> queryElementsToRemove) {
         ObjectMapper mapper = new ObjectMapper();
         return mapper.valueToTree(queryElementsToRemove);
@@ -20,12 +20,17 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.regex.FastURLFilter;
+import org.apache.stormcrawler.util.ParsedURL;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class FastURLFilterTest {
 
@@ -66,4 +71,91 @@ class FastURLFilterTest {
         String filterResult = createFilter().filter(url, metadata, url.toExternalForm());
         Assertions.assertNull(filterResult);
     }
+
+    @Test
+    void testParsedURL() throws MalformedURLException {
+        URL source = new URL("http://www.somedomain.com/");
+        Metadata metadata = new Metadata();
+        URLFilter filter = createFilter();
+        // subdomains are covered by the domain scope
+        ParsedURL url = ParsedURL.parse("http://www.stormcrawler.net/");
+        Assertions.assertNull(filter.filter(source, metadata, url));
+        url = ParsedURL.parse("http://www.stormcrawler.net/bla/");
+        Assertions.assertEquals(url.toString(), filter.filter(source, metadata, url));
+        url = ParsedURL.parse("http://www.somedomain.com/image.jpg?a=b");
+        Assertions.assertNull(filter.filter(source, metadata, url));
+    }
+
+    @Test
+    void testHostScope() throws MalformedURLException {
+        URL source = new URL("http://www.somedomain.com/");
+        Metadata metadata = new Metadata();
+        URLFilter filter = createFilter();
+        String url = "http://www.example.com/private/page.html";
+        Assertions.assertNull(filter.filter(source, metadata, url));
+        url = "http://www.example.com/public/page.html";
+        Assertions.assertEquals(url, filter.filter(source, metadata, url));
+        // not the same host
+        url = "http://example.com/private/page.html";
+        Assertions.assertEquals(url, filter.filter(source, metadata, url));
+        url = "http://sub.www.example.com/private/page.html";
+        Assertions.assertEquals(url, filter.filter(source, metadata, url));
+        // domains are matched on whole labels
+        url = "http://notstormcrawler.net/";
+        Assertions.assertEquals(url, filter.filter(source, metadata, url));
+    }
+
+    @Test
+    void testInvalidPattern(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rules.json");
+        Files.writeString(
+                file,
+                "{\"rules\":[{\"scope\":\"domain:example.com\","
+                        + "\"patterns\":[\"DenyPath /a[\",\"DenyPath /b\"]}]}");
+        ObjectNode filterParams = new ObjectNode(JsonNodeFactory.instance);
+        filterParams.put("file", file.toString());
+        FastURLFilter filter = new FastURLFilter();
+        filter.configure(new HashMap<>(), filterParams);
+
+        URL source = new URL("http://www.somedomain.com/");
+        Metadata metadata = new Metadata();
+        Assertions.assertNotNull(filter.filter(source, metadata, "http://example.com/a["));
+        Assertions.assertNull(filter.filter(source, metadata, "http://example.com/b"));
+    }
+
+    @Test
+    void testReload(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rules.json");
+        Files.writeString(
+                file,
+                "{\"rules\":[{\"scope\":\"domain:example.com\",\"patterns\":[\"DenyPath /a\"]}]}");
+        ObjectNode filterParams = new ObjectNode(JsonNodeFactory.instance);
+        filterParams.put("file", file.toString());
+        filterParams.put("refresh", 1);
+        FastURLFilter filter = new FastURLFilter();
+        filter.configure(new HashMap<>(), filterParams);
+
+        try {
+            URL source = new URL("http://www.somedomain.com/");
+            Metadata metadata = new Metadata();
+            Assertions.assertNull(filter.filter(source, metadata, "http://example.com/a"));
+            Assertions.assertNotNull(filter.filter(source, metadata, "http://example.com/b"));
+
+            Files.writeString(
+                    file,
+                    "{\"rules\":[{\"scope\":\"domain:example.com\",\"patterns\":[\"DenyPath /b\"]}]}");
+            Files.setLastModifiedTime(
+                    file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (filter.filter(source, metadata, "http://example.com/b") != null
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            Assertions.assertNull(filter.filter(source, metadata, "http://example.com/b"));
+            Assertions.assertNotNull(filter.filter(source, metadata, "http://example.com/a"));
+        } finally {
+            filter.cleanup();
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.filtering;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.task.TopologyContext;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.TestUtil;
+import org.apache.stormcrawler.filtering.depth.MaxDepthFilter;
+import org.apache.stormcrawler.filtering.regex.FastURLFilter;
+import org.apache.stormcrawler.util.FilterMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class URLFiltersTest {
+
+    /** Counts the URLs which reach it */
+    public static class CountingFilter extends URLFilter {
+
+        static int count;
+
+        @Override
+        public @Nullable String filter(
+                @Nullable URL sourceUrl,
+                @Nullable Metadata sourceMetadata,
+                @NotNull String urlToFilter) {
+            count++;
+            return urlToFilter;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+    }
+
+    @BeforeEach
+    void resetCount() {
+        CountingFilter.count = 0;
+    }
+
+    private URLFilters createFilters(int cacheMemoryMB) throws IOException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(URLFilters.CACHE_MEMORY_PARAM_NAME, cacheMemoryMB);
+        return new URLFilters(conf, "test.urlfilters.json");
+    }
+
+    @Test
+    void testCachedDecisions() throws IOException {
+        URLFilters filters = createFilters(1);
+        Assertions.assertTrue(filters.isCacheable());
+        URL source = new URL("http://www.example.com/");
+        Metadata metadata = new Metadata();
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(
+                    "http://www.example.com/page",
+                    filters.filter(source, metadata, "http://www.example.com/page#anchor"));
+            Assertions.assertEquals(
+                    "http://www.example.com/other",
+                    filters.filter(source, metadata, "http://www.example.com/other"));
+            Assertions.assertNull(filters.filter(source, metadata, "http://other.com/"));
+        }
+        Assertions.assertEquals(2, CountingFilter.count);
+
+        // same URLs from another host
+        URL otherSource = new URL("http://other.com/page");
+        Assertions.assertNull(
+                filters.filter(otherSource, metadata, "http://www.example.com/other"));
+        Assertions.assertEquals(
+                "http://other.com/", filters.filter(otherSource, metadata, "http://other.com/"));
+        Assertions.assertEquals(3, CountingFilter.count);
+    }
+
+    @Test
+    void testNoCache() throws IOException {
+        URLFilters filters = createFilters(0);
+        URL source = new URL("http://www.example.com/");
+        Metadata metadata = new Metadata();
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(
+                    "http://www.example.com/page",
+                    filters.filter(source, metadata, "http://www.example.com/page#anchor"));
+        }
+        Assertions.assertEquals(3, CountingFilter.count);
+    }
+
+    @Test
+    void testCacheable() {
+        Assertions.assertFalse(new MaxDepthFilter().isCacheable());
+        // has a metadata scope
+        FastURLFilter fast = new FastURLFilter();
+        fast.configure(new HashMap<>(), new ObjectNode(JsonNodeFactory.instance));
+        Assertions.assertFalse(fast.isCacheable());
+    }
+
+    @Test
+    void testMetrics() throws IOException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(FilterMetrics.SAMPLING_PARAM_NAME, 1);
+        URLFilters filters = new URLFilters(conf, "test.urlfilters.json");
+        TopologyContext context = TestUtil.getMockedTopologyContext();
+        filters.registerMetrics(context);
+        ArgumentCaptor<IMetric> captor = ArgumentCaptor.forClass(IMetric.class);
+        Mockito.verify(context)
+                .registerMetric(Mockito.eq("url_filters"), captor.capture(), Mockito.anyInt());
+
+        URL source = new URL("http://www.example.com/");
+        Metadata metadata = new Metadata();
+        filters.filter(source, metadata, "http://www.example.com/page#anchor");
+        filters.filter(source, metadata, "http://www.example.com/other");
+        filters.filter(source, metadata, "http://other.com/");
+
+        Map<?, ?> values = (Map<?, ?>) captor.getValue().getValueAndReset();
+        Assertions.assertEquals(3L, values.get("BasicURLNormalizer.invocations"));
+        Assertions.assertEquals(1L, values.get("BasicURLNormalizer.modified"));
+        Assertions.assertEquals(3L, values.get("HostURLFilter.invocations"));
+        Assertions.assertEquals(1L, values.get("HostURLFilter.rejected"));
+        Assertions.assertEquals(2L, values.get("CountingFilter.invocations"));
+        Assertions.assertNotNull(values.get("HostURLFilter.p99_ns"));
+
+        // reset
+        values = (Map<?, ?>) captor.getValue().getValueAndReset();
+        Assertions.assertEquals(0L, values.get("HostURLFilter.invocations"));
+    }
+}
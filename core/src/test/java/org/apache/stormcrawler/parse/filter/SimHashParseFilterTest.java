@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.parse.filter;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.HashMap;
+import java.util.Random;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.parse.ParseResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SimHashParseFilterTest {
+
+    /** Article of 500 words */
+    private static final String TEXT = randomText(500, 1);
+
+    private static String randomText(int words, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append("word").append(random.nextInt(2000)).append(i % 12 == 11 ? ". " : " ");
+        }
+        return sb.toString();
+    }
+
+    private static Metadata filter(SimHashParseFilter filter, String url, String text) {
+        ParseResult parse = new ParseResult();
+        parse.get(url).setText(text);
+        filter.filter(url, null, null, parse);
+        return parse.get(url).getMetadata();
+    }
+
+    @Test
+    void testNearDuplicates() {
+        ObjectNode params = new ObjectNode(JsonNodeFactory.instance);
+        params.put("indexName", "testNearDuplicates");
+        params.put("noIndex", true);
+        SimHashParseFilter filter = new SimHashParseFilter();
+        filter.configure(new HashMap<>(), params);
+
+        Metadata md = filter(filter, "http://example.com/a", TEXT + " Session 8c1f2a.");
+        Assertions.assertNotNull(md.getFirstValue("simhash"));
+        Assertions.assertNull(md.getFirstValue("nearDuplicate"));
+
+        // differs only by the session ID
+        md = filter(filter, "http://example.com/b", TEXT + " Session 77ab03.");
+        Assertions.assertEquals("true", md.getFirstValue("nearDuplicate"));
+        Assertions.assertNotNull(md.getFirstValue("nearDuplicateOf"));
+        Assertions.assertEquals("true", md.getFirstValue("robots.noIndex"));
+
+        // the original refetched is not a duplicate of itself
+        md = filter(filter, "http://example.com/a", TEXT + " Session 8c1f2a.");
+        Assertions.assertNull(md.getFirstValue("nearDuplicate"));
+
+        // unrelated content
+        md = filter(filter, "http://example.com/c", randomText(500, 2));
+        Assertions.assertNull(md.getFirstValue("nearDuplicate"));
+
+        // too short to be checked
+        md = filter(filter, "http://example.com/d", "Home Contact");
+        Assertions.assertNull(md.getFirstValue("simhash"));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.TestUtil;
+import org.apache.stormcrawler.persistence.urlbuffer.SchedulingURLBuffer;
+import org.apache.stormcrawler.persistence.urlbuffer.SimpleURLBuffer;
+import org.apache.stormcrawler.persistence.urlbuffer.URLBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AbstractQueryingSpoutTest {
+
+    /** Returns 10 new URLs per query */
+    static class CountingSpout extends AbstractQueryingSpout {
+        int queries = 0;
+
+        @Override
+        protected void populateBuffer() {
+            for (int i = 0; i < 10; i++) {
+                buffer.add("http://example.com/" + queries + "/" + i, new Metadata());
+            }
+            queries++;
+        }
+    }
+
+    private static CountingSpout open(Map<String, Object> conf) {
+        conf.putIfAbsent(URLBuffer.bufferClassParamName, SimpleURLBuffer.class.getName());
+        conf.putIfAbsent(AbstractQueryingSpout.StatusMinDelayParamName, 0);
+        CountingSpout spout = new CountingSpout();
+        spout.open(conf, TestUtil.getMockedTopologyContext(), mock(SpoutOutputCollector.class));
+        spout.activate();
+        return spout;
+    }
+
+    @Test
+    void testQueryWhenEmpty() {
+        CountingSpout spout = open(new HashMap<>());
+        // first call fills the buffer, the next ones emit
+        spout.nextTuple();
+        Assertions.assertEquals(1, spout.queries);
+        for (int i = 0; i < 10; i++) {
+            spout.nextTuple();
+        }
+        Assertions.assertEquals(1, spout.queries);
+        Assertions.assertEquals(0, spout.buffer.size());
+        Assertions.assertEquals(10, spout.beingProcessed.size());
+    }
+
+    @Test
+    void testLowWatermark() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(AbstractQueryingSpout.LowWatermarkParamName, 3);
+        CountingSpout spout = open(conf);
+        spout.nextTuple();
+        for (int i = 0; i < 7; i++) {
+            spout.nextTuple();
+        }
+        // 3 URLs left
+        Assertions.assertEquals(1, spout.queries);
+        Assertions.assertEquals(3, spout.buffer.size());
+        spout.nextTuple();
+        // prefetched without waiting for the buffer to be empty
+        Assertions.assertEquals(2, spout.queries);
+        Assertions.assertEquals(12, spout.buffer.size());
+    }
+
+    @Test
+    void testAdaptiveDelay() throws InterruptedException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(AbstractQueryingSpout.AdaptivePrefetchParamName, true);
+        conf.put(AbstractQueryingSpout.StatusMinDelayParamName, 60000);
+        CountingSpout spout = open(conf);
+        spout.nextTuple();
+        // drains 10 URLs in a bit more than a second
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(120);
+            spout.nextTuple();
+        }
+        Assertions.assertEquals(0, spout.buffer.size());
+        Thread.sleep(300);
+        spout.nextTuple();
+        // the next query is sent once the results of the previous one could have been emitted
+        Assertions.assertEquals(2, spout.queries);
+    }
+
+    @Test
+    void testNothingDueYet() throws InterruptedException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(URLBuffer.bufferClassParamName, SchedulingURLBuffer.class.getName());
+        conf.put(SchedulingURLBuffer.HISTORYSIZEPARAM, 1);
+        CountingSpout spout = open(conf);
+        spout.nextTuple();
+        spout.nextTuple();
+        Thread.sleep(200);
+        spout.ack("http://example.com/0/0");
+        // released straight away, the next one has to wait for the time the first one took
+        spout.nextTuple();
+        Assertions.assertTrue(spout.beingProcessed.containsKey("http://example.com/0/1"));
+        for (int i = 0; i < 5; i++) {
+            spout.nextTuple();
+        }
+        // not treated as an empty buffer
+        Assertions.assertEquals(1, spout.queries);
+        Assertions.assertEquals(8, spout.buffer.size());
+        Assertions.assertEquals(1, spout.beingProcessed.size());
+    }
+
+    @Test
+    void testCompactInProcess() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(AbstractQueryingSpout.CompactInProcessParamName, true);
+        CountingSpout spout = open(conf);
+        for (int i = 0; i < 11; i++) {
+            spout.nextTuple();
+        }
+        Assertions.assertEquals(10, spout.beingProcessed.size());
+        Assertions.assertTrue(spout.beingProcessed.containsKey("http://example.com/0/3"));
+        spout.ack("http://example.com/0/3");
+        Assertions.assertEquals(9, spout.beingProcessed.size());
+        Assertions.assertEquals(1, spout.beingProcessed.inCache());
+        // still in the purgatory
+        Assertions.assertTrue(spout.beingProcessed.containsKey("http://example.com/0/3"));
+        Assertions.assertFalse(spout.beingProcessed.containsKey("http://example.com/1/3"));
+        // the URLs and values are not kept
+        Assertions.assertThrows(
+                UnsupportedOperationException.class,
+                () -> spout.beingProcessed.get("http://example.com/0/4"));
+        Assertions.assertThrows(
+                UnsupportedOperationException.class, () -> spout.beingProcessed.keySet());
+    }
+}
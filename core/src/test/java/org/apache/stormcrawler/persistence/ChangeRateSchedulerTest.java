@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ChangeRateSchedulerTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static ChangeRateScheduler getScheduler(Map<String, Object> stormConf) {
+        ChangeRateScheduler scheduler = new ChangeRateScheduler();
+        scheduler.init(stormConf);
+        return scheduler;
+    }
+
+    /**
+     * Simulates the crawl of a page changing with the given mean interval in minutes, returns the
+     * number of fetches and the number of them where a change was detected
+     */
+    private static int[] simulate(
+            ChangeRateScheduler scheduler, double meanChangeMinutes, long durationMinutes) {
+        Random random = new Random(42);
+        long nextChange =
+                meanChangeMinutes > 0
+                        ? (long) (-Math.log(1 - random.nextDouble()) * meanChangeMinutes * MINUTE)
+                        : Long.MAX_VALUE;
+        int version = 0;
+        Metadata metadata = new Metadata();
+        String signature = null;
+        long now = 0;
+        int fetches = 0;
+        int changes = 0;
+        while (now < durationMinutes * MINUTE) {
+            while (nextChange <= now) {
+                version++;
+                nextChange +=
+                        (long) (-Math.log(1 - random.nextDouble()) * meanChangeMinutes * MINUTE);
+            }
+            String current = Integer.toString(version);
+            if (signature != null) {
+                metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, signature);
+                if (!signature.equals(current)) changes++;
+            }
+            metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, current);
+            metadata.setValue("fetch.statusCode", "200");
+            signature = current;
+            fetches++;
+            Date next = scheduler.schedule(Status.FETCHED, metadata, now).get();
+            Assertions.assertTrue(next.getTime() > now);
+            now = next.getTime();
+        }
+        return new int[] {fetches, changes};
+    }
+
+    @Test
+    void testExposure() {
+        double x = ChangeRateScheduler.solveExposure(0.9);
+        Assertions.assertEquals(0.9, -Math.expm1(-x) / x, 1e-6);
+    }
+
+    @Test
+    void testFreshness() {
+        Map<String, Object> stormConf = new HashMap<>();
+        stormConf.put(ChangeRateScheduler.INTERVAL_MIN, 1);
+        ChangeRateScheduler scheduler = getScheduler(stormConf);
+        // changes every 10 hours on average, crawled for 60 days
+        int[] result = simulate(scheduler, 600, 60 * 24 * 60);
+        double changedRatio = (double) result[1] / result[0];
+        // with an average freshness of 0.9 about 19% of the refetches find a change
+        Assertions.assertTrue(changedRatio > 0.1 && changedRatio < 0.3, "ratio " + changedRatio);
+    }
+
+    @Test
+    void testUnchangedPage() {
+        ChangeRateScheduler scheduler = getScheduler(new HashMap<>());
+        int[] result = simulate(scheduler, -1, 90 * 24 * 60);
+        Assertions.assertEquals(0, result[1]);
+        // the interval keeps growing from one day
+        Assertions.assertTrue(result[0] < 15, "fetches " + result[0]);
+    }
+
+    @Test
+    void testHistory() {
+        ChangeRateScheduler scheduler = getScheduler(new HashMap<>());
+        Metadata metadata = new Metadata();
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, "a");
+        metadata.setValue("fetch.statusCode", "200");
+        Date next = scheduler.schedule(Status.FETCHED, metadata, 0).get();
+        // first fetch: default interval
+        Assertions.assertEquals(1440 * MINUTE, next.getTime());
+        Assertions.assertEquals("0.000,0.000,0.0,0,0", metadata.getFirstValue("changeRate"));
+
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_OLD_KEY, "a");
+        metadata.setValue(AdaptiveScheduler.SIGNATURE_KEY, "b");
+        scheduler.schedule(Status.FETCHED, metadata, next.getTime());
+        Assertions.assertEquals(
+                "1.000,1.000,1440.0,86400000,86400000", metadata.getFirstValue("changeRate"));
+        Assertions.assertNull(metadata.getFirstValue(AdaptiveScheduler.SIGNATURE_OLD_KEY));
+
+        // permanent errors reset the history
+        scheduler.schedule(Status.ERROR, metadata, next.getTime());
+        Assertions.assertNull(metadata.getFirstValue("changeRate"));
+    }
+
+    @Test
+    void testBudget() {
+        Map<String, Object> stormConf = new HashMap<>();
+        stormConf.put(ChangeRateScheduler.BUDGET, 10);
+        ChangeRateScheduler scheduler = getScheduler(stormConf);
+        // 100 pages per minute over 5 minutes
+        for (int i = 0; i < 500; i++) {
+            scheduler.schedule(Status.FETCHED, new Metadata(), i * MINUTE / 100);
+        }
+        Assertions.assertTrue(scheduler.getStretch() > 1.0);
+    }
+}
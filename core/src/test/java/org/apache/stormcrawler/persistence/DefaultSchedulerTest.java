@@ -106,4 +106,32 @@ class DefaultSchedulerTest {
         Optional<Date> nextFetch = scheduler.schedule(Status.FETCHED, metadata);
         Assertions.assertFalse(nextFetch.isPresent());
     }
+
+    @Test
+    void testManyCustomIntervals() {
+        Map<String, Object> stormConf = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            stormConf.put("fetchInterval.host=www.example" + i + ".com", 1000 + i);
+        }
+        stormConf.put("fetchInterval.FETCH_ERROR.host=www.example42.com", 5);
+        // same concatenation of key and value as another rule
+        stormConf.put("fetchInterval.hos=twww.example7.com", 7);
+        DefaultScheduler scheduler = new DefaultScheduler();
+        scheduler.init(stormConf);
+
+        Metadata metadata = new Metadata();
+        metadata.addValue("host", "www.example7.com");
+        Assertions.assertEquals(1007, scheduler.getIntervalMinutes(Status.FETCHED, metadata));
+
+        metadata = new Metadata();
+        metadata.addValue("host", "www.other.com");
+        metadata.addValue("host", "www.example42.com");
+        Assertions.assertEquals(1042, scheduler.getIntervalMinutes(Status.FETCHED, metadata));
+        Assertions.assertEquals(5, scheduler.getIntervalMinutes(Status.FETCH_ERROR, metadata));
+
+        metadata = new Metadata();
+        metadata.addValue("host", "www.other.com");
+        Assertions.assertEquals(1440, scheduler.getIntervalMinutes(Status.FETCHED, metadata));
+        Assertions.assertEquals(0, scheduler.getIntervalMinutes(Status.DISCOVERED, metadata));
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class InFlightURLsTest {
+
+    @Test
+    void testPurgatory() {
+        InFlightURLs urls = new InFlightURLs(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 1000; i++) {
+            urls.add("http://example.com/" + i);
+        }
+        Assertions.assertEquals(1000, urls.size());
+        Assertions.assertTrue(urls.contains("http://example.com/500", 0));
+        Assertions.assertFalse(urls.contains("http://example.com/1000", 0));
+
+        urls.remove("http://example.com/500", 1000);
+        Assertions.assertEquals(999, urls.size());
+        Assertions.assertEquals(1, urls.inPurgatory());
+        Assertions.assertTrue(urls.contains("http://example.com/500", 5000));
+        // kept for at least 9/10 of the TTL
+        Assertions.assertTrue(urls.contains("http://example.com/500", 9999));
+        Assertions.assertFalse(urls.contains("http://example.com/500", 11000));
+        Assertions.assertEquals(0, urls.inPurgatory());
+
+        // removed after a long pause
+        urls.remove("http://example.com/1", 1_000_000);
+        Assertions.assertTrue(urls.contains("http://example.com/1", 1_005_000));
+        Assertions.assertFalse(urls.contains("http://example.com/1", 1_011_000));
+    }
+
+    @Test
+    void testNoPurgatory() {
+        InFlightURLs urls = new InFlightURLs(0, TimeUnit.SECONDS);
+        urls.add("http://example.com/");
+        Assertions.assertTrue(urls.contains("http://example.com/"));
+        Assertions.assertTrue(urls.contains(Fingerprint.hash64("http://example.com/")));
+        urls.remove("http://example.com/");
+        Assertions.assertFalse(urls.contains("http://example.com/"));
+        Assertions.assertEquals(0, urls.size());
+        Assertions.assertEquals(0, urls.inPurgatory());
+    }
+}
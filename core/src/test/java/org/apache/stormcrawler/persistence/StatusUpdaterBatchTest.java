@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.persistence;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.Config;
+import org.apache.storm.Constants;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Tuple;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.TestUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StatusUpdaterBatchTest {
+
+    /** Keeps the batches it receives, fails them if asked to */
+    static class BatchingStatusUpdater extends BatchingStatusUpdaterBolt {
+
+        final List<List<StatusUpdate>> batches = new ArrayList<>();
+
+        boolean failing = false;
+
+        @Override
+        protected void storeBatch(List<StatusUpdate> updates) throws Exception {
+            if (failing) {
+                throw new Exception("failing on purpose");
+            }
+            batches.add(updates);
+        }
+    }
+
+    private BatchingStatusUpdater bolt;
+
+    private OutputCollector collector;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Scheduler.schedulerClassParamName, DefaultScheduler.class.getName());
+        conf.put(AbstractStatusUpdaterBolt.useCacheParamName, false);
+        conf.put(BatchingStatusUpdaterBolt.batchSizeParamName, 3);
+        conf.put(BatchingStatusUpdaterBolt.batchMaxDelayParamName, 0);
+        bolt = new BatchingStatusUpdater();
+        collector = mock(OutputCollector.class);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), collector);
+    }
+
+    private static Tuple tuple(String url) {
+        return tuple(url, Status.DISCOVERED);
+    }
+
+    private static Tuple tuple(String url, Status status) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("url", url);
+        values.put("status", status);
+        values.put("metadata", new Metadata());
+        return TestUtil.getMockedTestTuple(values);
+    }
+
+    private static Tuple tick() {
+        Tuple tick = mock(Tuple.class);
+        when(tick.getSourceComponent()).thenReturn(Constants.SYSTEM_COMPONENT_ID);
+        when(tick.getSourceStreamId()).thenReturn(Constants.SYSTEM_TICK_STREAM_ID);
+        return tick;
+    }
+
+    @Test
+    void testTickFrequency() {
+        Assertions.assertEquals(
+                1, bolt.getComponentConfiguration().get(Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS));
+    }
+
+    @Test
+    void testFlushOnSize() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Scheduler.schedulerClassParamName, DefaultScheduler.class.getName());
+        conf.put(AbstractStatusUpdaterBolt.useCacheParamName, false);
+        conf.put(BatchingStatusUpdaterBolt.batchSizeParamName, 3);
+        conf.put(BatchingStatusUpdaterBolt.batchMaxDelayParamName, 60000);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), collector);
+
+        bolt.execute(tuple("http://example.com/1"));
+        bolt.execute(tuple("http://example.com/2"));
+        Assertions.assertTrue(bolt.batches.isEmpty());
+        verify(collector, never()).ack(any(Tuple.class));
+
+        // the delay hasn't expired
+        bolt.execute(tick());
+        Assertions.assertTrue(bolt.batches.isEmpty());
+
+        bolt.execute(tuple("http://example.com/3"));
+        Assertions.assertEquals(1, bolt.batches.size());
+        Assertions.assertEquals(3, bolt.batches.get(0).size());
+        Assertions.assertEquals("http://example.com/1", bolt.batches.get(0).get(0).getUrl());
+        Assertions.assertEquals(Status.DISCOVERED, bolt.batches.get(0).get(0).getStatus());
+        Assertions.assertTrue(bolt.batches.get(0).get(0).getNextFetch().isPresent());
+        verify(collector, times(3)).ack(any(Tuple.class));
+    }
+
+    @Test
+    void testFlushOnTick() throws InterruptedException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Scheduler.schedulerClassParamName, DefaultScheduler.class.getName());
+        conf.put(AbstractStatusUpdaterBolt.useCacheParamName, false);
+        conf.put(BatchingStatusUpdaterBolt.batchSizeParamName, 3);
+        conf.put(BatchingStatusUpdaterBolt.batchMaxDelayParamName, 100);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), collector);
+
+        bolt.execute(tuple("http://example.com/1"));
+        Assertions.assertTrue(bolt.batches.isEmpty());
+
+        Thread.sleep(150);
+        bolt.execute(tick());
+        Assertions.assertEquals(1, bolt.batches.size());
+        verify(collector, times(1)).ack(any(Tuple.class));
+    }
+
+    @Test
+    void testDiscoveredInBatch() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(Scheduler.schedulerClassParamName, DefaultScheduler.class.getName());
+        conf.put(AbstractStatusUpdaterBolt.useCacheParamName, false);
+        conf.put(BatchingStatusUpdaterBolt.batchSizeParamName, 3);
+        conf.put(BatchingStatusUpdaterBolt.batchMaxDelayParamName, 60000);
+        bolt.prepare(conf, TestUtil.getMockedTopologyContext(), collector);
+
+        bolt.execute(tuple("http://example.com/1"));
+        // acked without being added to the batch
+        bolt.execute(tuple("http://example.com/1"));
+        verify(collector, times(1)).ack(any(Tuple.class));
+        // other statuses are kept
+        bolt.execute(tuple("http://example.com/1", Status.FETCHED));
+        bolt.execute(tuple("http://example.com/1"));
+        verify(collector, times(2)).ack(any(Tuple.class));
+        bolt.execute(tuple("http://example.com/2"));
+        Assertions.assertEquals(1, bolt.batches.size());
+        Assertions.assertEquals(3, bolt.batches.get(0).size());
+        Assertions.assertEquals(Status.FETCHED, bolt.batches.get(0).get(1).getStatus());
+        verify(collector, times(5)).ack(any(Tuple.class));
+
+        // not in the current batch anymore
+        bolt.execute(tuple("http://example.com/1"));
+        bolt.execute(tick());
+        verify(collector, times(5)).ack(any(Tuple.class));
+    }
+
+    @Test
+    void testFailedBatch() {
+        bolt.failing = true;
+        bolt.execute(tuple("http://example.com/1"));
+        verify(collector, times(1)).fail(any(Tuple.class));
+        verify(collector, never()).ack(any(Tuple.class));
+    }
+}
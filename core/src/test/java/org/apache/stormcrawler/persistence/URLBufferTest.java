@@ -17,8 +17,18 @@
 package org.apache.stormcrawler.persistence;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.storm.tuple.Values;
 import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.persistence.urlbuffer.ConcurrentURLBuffer;
 import org.apache.stormcrawler.persistence.urlbuffer.PriorityURLBuffer;
+import org.apache.stormcrawler.persistence.urlbuffer.SchedulingURLBuffer;
 import org.apache.stormcrawler.persistence.urlbuffer.SimpleURLBuffer;
 import org.apache.stormcrawler.persistence.urlbuffer.URLBuffer;
 import org.junit.jupiter.api.Assertions;
@@ -48,7 +58,7 @@ class URLBufferTest {
     }
 
     @Test
-    void testPriorityBuffer() throws MalformedURLException, InterruptedException {
+    void testPriorityBuffer() throws MalformedURLException {
         URLBuffer buffer = new PriorityURLBuffer();
         Assertions.assertFalse(buffer.hasNext());
         buffer.add("http://a.net/test.html", new Metadata());
@@ -59,8 +69,6 @@ class URLBufferTest {
         buffer.acked("http://c.net/test.html");
         buffer.acked("http://c.net/test.html");
         buffer.acked("http://b.net/test.html");
-        // wait N seconds - should trigger a rerank
-        Thread.sleep(10000);
         // c should come first - it has been acked more often
         Assertions.assertEquals("http://c.net/test.html", buffer.next().get(0));
         // then b
@@ -70,4 +78,148 @@ class URLBufferTest {
         Assertions.assertEquals("http://a.net/test2.html", buffer.next().get(0));
         Assertions.assertFalse(buffer.hasNext());
     }
+
+    private static ConcurrentURLBuffer concurrentBuffer(int stripes, int maxURLs) {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(ConcurrentURLBuffer.STRIPES_PARAM_NAME, stripes);
+        conf.put(ConcurrentURLBuffer.MAX_URLS_PARAM_NAME, maxURLs);
+        ConcurrentURLBuffer buffer = new ConcurrentURLBuffer();
+        buffer.configure(conf);
+        return buffer;
+    }
+
+    @Test
+    void testConcurrentURLBuffer() {
+        // same behaviour as the SimpleURLBuffer with a single stripe
+        URLBuffer buffer = concurrentBuffer(1, -1);
+        Set<String> emptied = new HashSet<>();
+        buffer.setEmptyQueueListener(emptied::add);
+        Assertions.assertFalse(buffer.hasNext());
+        buffer.add("http://a.net/test.html", new Metadata());
+        buffer.add("http://a.net/test2.html", new Metadata());
+        buffer.add("http://b.net/test.html", new Metadata());
+        buffer.add("http://c.net/test.html", new Metadata());
+        Assertions.assertEquals(4, buffer.size());
+        Assertions.assertEquals(3, buffer.numQueues());
+        Assertions.assertEquals("http://a.net/test.html", buffer.next().get(0));
+        Assertions.assertEquals("http://b.net/test.html", buffer.next().get(0));
+        Assertions.assertTrue(emptied.contains("b.net"));
+        Assertions.assertFalse(buffer.add("http://c.net/test.html", new Metadata()));
+        Assertions.assertTrue(buffer.add("http://d.net/test.html", new Metadata()));
+        Assertions.assertEquals("http://c.net/test.html", buffer.next().get(0));
+        Assertions.assertEquals("http://a.net/test2.html", buffer.next().get(0));
+        Assertions.assertEquals("http://d.net/test.html", buffer.next().get(0));
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertNull(buffer.next());
+        Assertions.assertEquals(0, buffer.numQueues());
+        Assertions.assertEquals(Set.of("a.net", "b.net", "c.net", "d.net"), emptied);
+        // can be added again once it has left the buffer
+        Assertions.assertTrue(buffer.add("http://a.net/test.html", new Metadata()));
+    }
+
+    @Test
+    void testConcurrentURLBufferLimit() {
+        URLBuffer buffer = concurrentBuffer(4, 2);
+        Assertions.assertTrue(buffer.add("http://a.net/1", new Metadata()));
+        Assertions.assertFalse(buffer.add("http://a.net/1", new Metadata()));
+        Assertions.assertTrue(buffer.add("http://b.net/1", new Metadata()));
+        Assertions.assertFalse(buffer.add("http://c.net/1", new Metadata()));
+        Assertions.assertEquals(2, buffer.size());
+        buffer.next();
+        Assertions.assertTrue(buffer.add("http://c.net/1", new Metadata()));
+    }
+
+    @Test
+    void testConcurrentURLBufferThreads() throws InterruptedException {
+        URLBuffer buffer = concurrentBuffer(16, -1);
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            producers.add(
+                    new Thread(
+                            () -> {
+                                for (int i = 0; i < 5000; i++) {
+                                    buffer.add(
+                                            "http://host" + (i % 50) + ".net/" + thread + "/" + i,
+                                            new Metadata());
+                                }
+                            }));
+        }
+        producers.forEach(Thread::start);
+        int polled = 0;
+        // fails instead of spinning forever if URLs get lost
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (polled < 20000) {
+            if (System.currentTimeMillis() > deadline) {
+                Assertions.fail("Only " + polled + " URLs polled");
+            }
+            Values v = buffer.next();
+            if (v != null) {
+                Assertions.assertTrue(received.add(v.get(0).toString()));
+                polled++;
+            }
+        }
+        for (Thread p : producers) {
+            p.join();
+        }
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertEquals(0, buffer.numQueues());
+    }
+
+    @Test
+    void testSchedulingURLBuffer() throws InterruptedException {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put(SchedulingURLBuffer.HISTORYSIZEPARAM, 1);
+        SchedulingURLBuffer buffer = new SchedulingURLBuffer();
+        buffer.configure(conf);
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertNull(buffer.next());
+        buffer.add("http://a.net/1", new Metadata());
+        buffer.add("http://a.net/2", new Metadata());
+        buffer.add("http://b.net/1", new Metadata());
+        Assertions.assertEquals("http://a.net/1", buffer.next().get(0));
+        Assertions.assertEquals("http://b.net/1", buffer.next().get(0));
+
+        Thread.sleep(200);
+        buffer.acked("http://a.net/1");
+
+        // no timing when it was released
+        Assertions.assertEquals("http://a.net/2", buffer.next().get(0));
+
+        // has to wait for the average time taken by the URLs of the queue
+        buffer.add("http://a.net/3", new Metadata());
+        Assertions.assertTrue(buffer.hasNext());
+        Assertions.assertNull(buffer.next());
+        Assertions.assertEquals(1, buffer.size());
+
+        Thread.sleep(250);
+        Assertions.assertTrue(buffer.hasNext());
+        Assertions.assertEquals("http://a.net/3", buffer.next().get(0));
+        Assertions.assertFalse(buffer.hasNext());
+    }
+
+    @Test
+    void testPriorityBufferRounds() {
+        URLBuffer buffer = new PriorityURLBuffer();
+        buffer.add("http://a.net/1", new Metadata());
+        buffer.add("http://a.net/2", new Metadata());
+        buffer.add("http://b.net/1", new Metadata());
+        buffer.add("http://b.net/2", new Metadata());
+        buffer.add("http://c.net/1", new Metadata());
+        // first come first served when the scores are equal
+        Assertions.assertEquals("http://a.net/1", buffer.next().get(0));
+        // takes effect within the current round
+        buffer.acked("http://c.net/1");
+        Assertions.assertEquals("http://c.net/1", buffer.next().get(0));
+        Assertions.assertEquals("http://b.net/1", buffer.next().get(0));
+        // next round, b has now been acked more often than a
+        buffer.acked("http://b.net/1");
+        buffer.acked("http://b.net/1");
+        buffer.acked("http://a.net/1");
+        Assertions.assertEquals("http://b.net/2", buffer.next().get(0));
+        Assertions.assertEquals("http://a.net/2", buffer.next().get(0));
+        Assertions.assertFalse(buffer.hasNext());
+        Assertions.assertNull(buffer.next());
+    }
 }
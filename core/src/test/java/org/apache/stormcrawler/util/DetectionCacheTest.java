@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DetectionCacheTest {
+
+    private static final byte[] UTF8_PAGE =
+            "<html><head><meta charset=\"utf-8\"></head><body>text</body></html>"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] LATIN1_PAGE =
+            "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=ISO-8859-1\"></head><body>text</body></html>"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] UNDECLARED_PAGE =
+            "  <html><body>text</body></html>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testKeys() {
+        DetectionCache cache = new DetectionCache(10, false);
+        Assertions.assertEquals("www.example.com", cache.getKey("https://www.Example.com/a/b"));
+        Assertions.assertEquals("www.example.com", cache.getKey("https://www.example.com"));
+        Assertions.assertNull(cache.getKey("not a url"));
+
+        cache = new DetectionCache(10, true);
+        Assertions.assertEquals("www.example.com/a", cache.getKey("https://www.example.com/a/b"));
+        Assertions.assertEquals("www.example.com/a", cache.getKey("https://www.example.com/a?q"));
+        Assertions.assertEquals("www.example.com/", cache.getKey("https://www.example.com/"));
+    }
+
+    @Test
+    void testMimeTypePrediction() {
+        DetectionCache cache = new DetectionCache(10, false);
+        String key = "www.example.com";
+        Assertions.assertNull(cache.getMimeType(key, "text/html", UTF8_PAGE));
+
+        cache.put(key, "text/html; charset=UTF-8", "text/html; charset=UTF-8", "UTF-8", "UTF-8");
+        Assertions.assertEquals(
+                "text/html; charset=UTF-8", cache.getMimeType(key, "text/html", UTF8_PAGE));
+        Assertions.assertEquals(
+                "text/html; charset=UTF-8", cache.getMimeType(key, "TEXT/HTML", UNDECLARED_PAGE));
+        // server disagrees
+        Assertions.assertNull(cache.getMimeType(key, "application/pdf", UTF8_PAGE));
+        Assertions.assertNull(cache.getMimeType(key, null, UTF8_PAGE));
+        // content does not look like markup
+        Assertions.assertNull(
+                cache.getMimeType(key, "text/html", "%PDF-1.4".getBytes(StandardCharsets.UTF_8)));
+
+        // detection disagrees with the server: the prediction is discarded
+        cache.put(key, "text/html", "application/pdf", "UTF-8", null);
+        Assertions.assertFalse(cache.contains(key));
+        Assertions.assertNull(cache.getMimeType(key, "text/html", UTF8_PAGE));
+    }
+
+    @Test
+    void testCharsetPrediction() {
+        DetectionCache cache = new DetectionCache(10, false);
+        String key = "www.example.com";
+        // charset guessed from the text of a document which did not declare one
+        cache.put(key, "text/html", "text/html", "ISO-8859-1", null);
+
+        Metadata metadata = new Metadata();
+        Assertions.assertEquals("ISO-8859-1", cache.getCharset(key, metadata, UNDECLARED_PAGE, -1));
+        // declared in a meta tag
+        Assertions.assertNull(cache.getCharset(key, metadata, UTF8_PAGE, -1));
+        Assertions.assertNull(cache.getCharset(key, metadata, LATIN1_PAGE, -1));
+
+        // BOM
+        byte[] bom = new byte[UNDECLARED_PAGE.length + 3];
+        bom[0] = (byte) 0xEF;
+        bom[1] = (byte) 0xBB;
+        bom[2] = (byte) 0xBF;
+        System.arraycopy(UNDECLARED_PAGE, 0, bom, 3, UNDECLARED_PAGE.length);
+        Assertions.assertNull(cache.getCharset(key, metadata, bom, -1));
+
+        // declared by the server
+        metadata.setValue("Content-Type", "text/html; charset=UTF-8");
+        Assertions.assertNull(cache.getCharset(key, metadata, UNDECLARED_PAGE, -1));
+
+        // same declaration as the document the prediction was made on
+        cache.put(key, "text/html", "text/html", "UTF-8", "UTF-8");
+        Assertions.assertEquals("UTF-8", cache.getCharset(key, metadata, UNDECLARED_PAGE, -1));
+        Assertions.assertEquals("UTF-8", cache.getCharset(key, new Metadata(), UTF8_PAGE, -1));
+        Assertions.assertNull(cache.getCharset(key, new Metadata(), UNDECLARED_PAGE, -1));
+    }
+
+    @Test
+    void testDeclaredCharset() {
+        Metadata metadata = new Metadata();
+        Assertions.assertEquals(
+                "utf-8", CharsetIdentification.getDeclaredCharset(metadata, UTF8_PAGE, -1));
+        Assertions.assertEquals(
+                "ISO-8859-1", CharsetIdentification.getDeclaredCharset(metadata, LATIN1_PAGE, -1));
+        Assertions.assertNull(
+                CharsetIdentification.getDeclaredCharset(metadata, UNDECLARED_PAGE, -1));
+        // beyond the max length
+        Assertions.assertNull(CharsetIdentification.getDeclaredCharset(metadata, UTF8_PAGE, 10));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FingerprintCacheTest {
+
+    @Test
+    void testAddContains() {
+        FingerprintCache cache = new FingerprintCache(1024, false);
+        Assertions.assertFalse(cache.contains("http://www.example.com/"));
+        cache.add("http://www.example.com/");
+        cache.add("http://www.example.com/");
+        Assertions.assertTrue(cache.contains("http://www.example.com/"));
+        Assertions.assertFalse(cache.contains("http://www.example.com/other"));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testEviction() {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            FingerprintCache cache = new FingerprintCache(8 * 1024, offHeap);
+            int max = cache.getMaxSize();
+            Random random = new Random(0);
+            long[] added = new long[max * 5];
+            for (int i = 0; i < added.length; i++) {
+                added[i] = random.nextLong();
+                cache.add(added[i]);
+                // keep using the first one
+                Assertions.assertTrue(cache.contains(added[0]));
+            }
+            Assertions.assertEquals(max, cache.size());
+            // all the entries left must still be reachable
+            int found = 0;
+            for (long fingerprint : added) {
+                if (cache.contains(fingerprint)) found++;
+            }
+            Assertions.assertEquals(max, found);
+        }
+    }
+}
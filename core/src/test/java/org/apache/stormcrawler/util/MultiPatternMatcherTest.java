@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MultiPatternMatcherTest {
+
+    @Test
+    void testRequiredLiterals() {
+        assertLiterals("abc", "abc");
+        assertLiterals("^https?://www\\.example\\.com/", "://www.example.com/");
+        assertLiterals("ab*cdef", "cdef");
+        assertLiterals("abcd+ef", "abcd");
+        assertLiterals("(?i)\\.GIF$", ".gif");
+        assertLiterals("\\.(gif|jpg)(\\?|$)", ".gif", ".jpg");
+        assertLiterals("/(calendar|events)?/x", "/x");
+        assertLiterals("[a-z]+foo\\d{2}barbaz", "barbaz");
+        assertLiterals("x{0,2}yz", "yz");
+        assertLiterals("\\p{Alpha}+\\Qab\\E", null);
+        assertLiterals("abc|def", null);
+        assertLiterals("(?x)abc", null);
+        assertLiterals(".+", null);
+        assertLiterals("[]abc]def", "def");
+        assertLiterals("(?:[(]|x)yz", "yz");
+        assertLiterals("(?=abc)def", "def");
+        Assertions.assertNull(MultiPatternMatcher.requiredLiterals("abc", Pattern.COMMENTS));
+    }
+
+    private void assertLiterals(String regex, String... expected) {
+        List<String> literals = MultiPatternMatcher.requiredLiterals(regex, 0);
+        if (expected == null) {
+            Assertions.assertNull(literals, regex);
+        } else {
+            Assertions.assertEquals(Arrays.asList(expected), literals, regex);
+        }
+    }
+
+    @Test
+    void testCandidates() {
+        List<Pattern> patterns = new ArrayList<>();
+        patterns.add(Pattern.compile("(?i)\\.(gif|jpg)$"));
+        patterns.add(Pattern.compile("/calendar/"));
+        patterns.add(null);
+        patterns.add(Pattern.compile("."));
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        Assertions.assertEquals(2, matcher.getUnfilteredCount());
+        BitSet candidates = matcher.candidates("http://www.example.com/calendar/image.JPG");
+        Assertions.assertEquals("{0, 1, 2, 3}", candidates.toString());
+        candidates = matcher.candidates("http://www.example.com/été/");
+        Assertions.assertEquals("{2, 3}", candidates.toString());
+    }
+
+    /** The first pattern found with the prefilter must be the same as with a full scan */
+    @Test
+    void testFirstMatchEquivalence() throws IOException {
+        List<Pattern> patterns = new ArrayList<>();
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(
+                                getClass()
+                                        .getClassLoader()
+                                        .getResourceAsStream("benchmark-regex-filters.txt"),
+                                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("+") || line.startsWith("-")) {
+                    patterns.add(Pattern.compile(line.substring(1)));
+                }
+            }
+        }
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+
+        String[] hosts = {
+            "www.example.com", "docs.casino0.com", "a.b.poker7.net", "PROMO3.info", "déjà.fr"
+        };
+        String[] paths = {
+            "/",
+            "/manual/index.html",
+            "/calendar/2024/05/",
+            "/x.php?sid=1",
+            "/img.JPG",
+            "/wp-admin/",
+            "/a!b",
+            "/search.ASPX?q=x",
+            "/été/page?Fbclid=3"
+        };
+        Random random = new Random(0);
+        for (int i = 0; i < 5000; i++) {
+            String url =
+                    (random.nextBoolean() ? "http://" : "https://")
+                            + hosts[random.nextInt(hosts.length)]
+                            + paths[random.nextInt(paths.length)]
+                            + (random.nextInt(4) == 0 ? "?tag=" + i : "");
+            int expected = -1;
+            for (int p = 0; p < patterns.size(); p++) {
+                if (patterns.get(p).matcher(url).find()) {
+                    expected = p;
+                    break;
+                }
+            }
+            int found = -1;
+            BitSet candidates = matcher.candidates(url);
+            for (int p = candidates.nextSetBit(0); p >= 0; p = candidates.nextSetBit(p + 1)) {
+                if (patterns.get(p).matcher(url).find()) {
+                    found = p;
+                    break;
+                }
+            }
+            Assertions.assertEquals(expected, found, url);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import crawlercommons.domains.PaidLevelDomain;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PaidLevelDomainsTest {
+
+    @Test
+    void testSameAsCrawlerCommons() {
+        String[] hosts = {
+            "www.example.com",
+            "example.com",
+            "www.example.co.uk",
+            "a.b.c.blogspot.com",
+            "192.168.0.1",
+            "localhost",
+            "com",
+            "xn--bcher-kva.example"
+        };
+        for (int i = 0; i < 2; i++) {
+            for (String host : hosts) {
+                Assertions.assertEquals(
+                        PaidLevelDomain.getPLD(host), PaidLevelDomains.getPLD(host), host);
+            }
+        }
+    }
+
+    @Test
+    void testMemoized() {
+        String host = "memoized.example.org";
+        long hits = PaidLevelDomains.getStats().hitCount();
+        Assertions.assertEquals("example.org", PaidLevelDomains.getPLD(host));
+        Assertions.assertEquals("example.org", PaidLevelDomains.getPLD(host));
+        Assertions.assertTrue(PaidLevelDomains.getStats().hitCount() > hits);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ParsedURLTest {
+
+    @Test
+    void testParts() throws MalformedURLException {
+        ParsedURL u = ParsedURL.parse("https://www.example.co.uk/path/page.html?a=b#frag");
+        Assertions.assertEquals("https", u.getProtocol());
+        Assertions.assertEquals("www.example.co.uk", u.getHost());
+        Assertions.assertEquals("example.co.uk", u.getPLD());
+        Assertions.assertEquals("/path/page.html", u.getPath());
+        Assertions.assertEquals("a=b", u.getQuery());
+        Assertions.assertEquals("/path/page.html?a=b", u.getFile());
+        Assertions.assertEquals("https://www.example.co.uk/path/page.html?a=b#frag", u.toString());
+    }
+
+    @Test
+    void testResolve() throws MalformedURLException {
+        URL base = new URL("http://www.example.com/dir/index.html");
+        ParsedURL u = ParsedURL.resolve(base, " ../other.html ");
+        Assertions.assertEquals("http://www.example.com/other.html", u.toString());
+        Assertions.assertEquals(ParsedURL.parse("http://www.example.com/other.html"), u);
+        u = ParsedURL.resolve(base, "?q=1");
+        Assertions.assertEquals("http://www.example.com/dir/index.html?q=1", u.toString());
+    }
+
+    @Test
+    void testMalformed() {
+        Assertions.assertThrows(MalformedURLException.class, () -> ParsedURL.parse("noproto"));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RotatingBloomFilterTest {
+
+    @Test
+    void testAdd() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1024 * 1024, 4, 60000, 0.001, 0);
+        long fp = Fingerprint.hash64("https://www.example.com/");
+        Assertions.assertFalse(filter.mightContain(fp));
+        Assertions.assertTrue(filter.add(fp, 0));
+        Assertions.assertFalse(filter.add(fp, 1));
+        Assertions.assertTrue(filter.mightContain(fp));
+        Assertions.assertTrue(filter.add(Fingerprint.hash64("https://www.example.com"), 1));
+    }
+
+    @Test
+    void testExpiry() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1024 * 1024, 4, 60000, 0.001, 0);
+        long fp = Fingerprint.hash64("https://www.example.com/");
+        filter.add(fp, 0);
+        // still there after 3 rotations
+        for (int i = 1; i <= 3; i++) {
+            filter.add(i, i * 15000);
+            Assertions.assertTrue(filter.mightContain(fp));
+        }
+        // gone after a full ttl
+        filter.add(4, 60000);
+        Assertions.assertFalse(filter.mightContain(fp));
+    }
+
+    @Test
+    void testFalsePositiveRate() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(64 * 1024, 4, 60000, 0.01, 0);
+        long capacity = filter.getCapacity();
+        for (int i = 0; i < capacity; i++) {
+            filter.add(Fingerprint.hash64("https://www.example.com/page" + i), 0);
+        }
+        int falsePositives = 0;
+        int lookups = 100000;
+        for (int i = 0; i < lookups; i++) {
+            if (filter.mightContain(Fingerprint.hash64("https://www.example.org/" + i))) {
+                falsePositives++;
+            }
+        }
+        Assertions.assertTrue(
+                falsePositives < lookups * 0.02, "too many false positives " + falsePositives);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.util;
+
+import java.util.OptionalLong;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SimHashIndexTest {
+
+    private static long flipBits(long value, int bits, Random random) {
+        long result = value;
+        while (Long.bitCount(result ^ value) < bits) {
+            result ^= 1L << random.nextInt(64);
+        }
+        return result;
+    }
+
+    @Test
+    void testHammingLookup() {
+        Random random = new Random(42);
+        SimHashIndex index = new SimHashIndex(3, 100_000);
+        long[] fingerprints = new long[5000];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong();
+            Assertions.assertFalse(index.findOrAdd(fingerprints[i], i).isPresent());
+        }
+        Assertions.assertEquals(5000, index.size());
+        for (int i = 0; i < fingerprints.length; i += 7) {
+            // within the max distance, in the sorted tables or the buffer
+            long near = flipBits(fingerprints[i], 3, random);
+            OptionalLong match = index.findOrAdd(near, -i - 1);
+            Assertions.assertTrue(match.isPresent());
+            Assertions.assertEquals(fingerprints[i], match.getAsLong());
+            // too far
+            long far = flipBits(fingerprints[i], 12, random);
+            Assertions.assertFalse(index.findOrAdd(far, -i - 1).isPresent());
+        }
+    }
+
+    @Test
+    void testSameDocument() {
+        SimHashIndex index = new SimHashIndex(3, 100);
+        Assertions.assertFalse(index.findOrAdd(0x1234L, 1).isPresent());
+        // refetched: not a duplicate of itself and not added twice
+        Assertions.assertFalse(index.findOrAdd(0x1234L, 1).isPresent());
+        Assertions.assertEquals(1, index.size());
+        Assertions.assertTrue(index.findOrAdd(0x1235L, 2).isPresent());
+    }
+
+    @Test
+    void testGenerations() {
+        SimHashIndex index = new SimHashIndex(2, 10);
+        for (int i = 0; i < 25; i++) {
+            index.findOrAdd(Fingerprint.mix64(i + 1), i);
+        }
+        // only the last 2 generations are kept
+        Assertions.assertTrue(index.size() <= 20);
+        Assertions.assertFalse(index.findOrAdd(Fingerprint.mix64(1), 100).isPresent());
+        Assertions.assertTrue(index.findOrAdd(Fingerprint.mix64(25), 100).isPresent());
+    }
+
+    @Test
+    void testExactMatch() {
+        // a single block wider than the packed prefix
+        SimHashIndex index = new SimHashIndex(0, 100_000);
+        for (int i = 0; i < 3000; i++) {
+            // same first 32 bits
+            Assertions.assertFalse(index.findOrAdd(0x12345678_00000000L | i, i).isPresent());
+        }
+        Assertions.assertEquals(
+                0x12345678_00000007L, index.findOrAdd(0x12345678_00000007L, -1).getAsLong());
+        Assertions.assertFalse(index.findOrAdd(0x12345678_FFFFFFFFL, -1).isPresent());
+    }
+
+    @Test
+    void testGetInstance() {
+        SimHashIndex index = SimHashIndex.getInstance("SimHashIndexTest", 3, 1000);
+        Assertions.assertSame(index, SimHashIndex.getInstance("SimHashIndexTest", 3, 1000));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> SimHashIndex.getInstance("SimHashIndexTest", 2, 1000));
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> SimHashIndex.getInstance("SimHashIndexTest", 3, 2000));
+    }
+}
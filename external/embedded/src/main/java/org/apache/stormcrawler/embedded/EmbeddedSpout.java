@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.embedded;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.storm.spout.SpoutOutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.stormcrawler.persistence.AbstractQueryingSpout;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spout reading the URLs due for fetching from a {@link FrontierStore}, taking at most
+ * embedded.frontier.max.urls.per.queue per host / domain / IP and at most
+ * embedded.frontier.max.results in total per query. The spout instances must run in the same worker
+ * as each other and as the {@link EmbeddedStatusUpdater}; the queues are divided between them. The
+ * URLs being processed are always tracked as fingerprints, see {@link
+ * AbstractQueryingSpout#CompactInProcessParamName}, so that the store can skip them without reading
+ * their records.
+ *
+ * @since 3.4.1
+ */
+public class EmbeddedSpout extends AbstractQueryingSpout {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedSpout.class);
+
+    public static final String MAX_URLS_PER_QUEUE_PARAM_NAME =
+            "embedded.frontier.max.urls.per.queue";
+
+    public static final String MAX_RESULTS_PARAM_NAME = "embedded.frontier.max.results";
+
+    private FrontierStore store;
+
+    private int maxURLsPerQueue;
+
+    private int maxResults;
+
+    private int partition;
+
+    private int numPartitions;
+
+    @Override
+    public void open(
+            Map<String, Object> stormConf,
+            TopologyContext context,
+            SpoutOutputCollector collector) {
+        super.open(stormConf, context, collector);
+
+        beingProcessed =
+                new InProcessMap<>(
+                        ConfUtils.getInt(stormConf, StatusTTLPurgatory, 30),
+                        TimeUnit.SECONDS,
+                        true);
+
+        maxURLsPerQueue = ConfUtils.getInt(stormConf, MAX_URLS_PER_QUEUE_PARAM_NAME, 10);
+        maxResults = ConfUtils.getInt(stormConf, MAX_RESULTS_PARAM_NAME, 1000);
+
+        partition = context.getThisTaskIndex();
+        numPartitions = context.getComponentTasks(context.getThisComponentId()).size();
+
+        try {
+            store = FrontierStore.open(stormConf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        context.registerMetric("frontier_urls", () -> store.size(), 30);
+        context.registerMetric("frontier_queues", () -> store.numQueues(), 30);
+        context.registerMetric("frontier_segments", () -> store.numSegments(), 30);
+    }
+
+    @Override
+    protected void populateBuffer() {
+        long start = System.currentTimeMillis();
+        try {
+            int selected =
+                    store.select(
+                            start,
+                            maxURLsPerQueue,
+                            maxResults,
+                            partition,
+                            numPartitions,
+                            beingProcessed::containsFingerprint,
+                            buffer::add);
+            long timeTaken = System.currentTimeMillis() - start;
+            queryTimes.addMeasurement(timeTaken);
+            eventCounter.scope("queries").incrBy(1);
+            eventCounter.scope("docs").incrBy(selected);
+            LOG.debug("Selected {} URLs in {} msec", selected, timeTaken);
+        } catch (IOException e) {
+            LOG.error("Exception while reading the frontier", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            FrontierStore.release(store);
+        } catch (IOException e) {
+            LOG.error("Exception while closing the frontier", e);
+        }
+    }
+}
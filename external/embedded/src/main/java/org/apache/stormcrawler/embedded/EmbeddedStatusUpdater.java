@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.embedded;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.utils.TupleUtils;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.persistence.BatchingStatusUpdaterBolt;
+import org.apache.stormcrawler.persistence.Status;
+import org.apache.stormcrawler.persistence.StatusUpdate;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.URLPartitioner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the status updates to a {@link FrontierStore} in batches, each batch being flushed to the
+ * disk before its tuples get acked. Compacts the store if needed on the tick tuples, at most once
+ * every {@link #COMPACTION_INTERVAL_PARAM_NAME} seconds. Must run in the same worker as the {@link
+ * EmbeddedSpout}.
+ *
+ * @since 3.4.1
+ */
+public class EmbeddedStatusUpdater extends BatchingStatusUpdaterBolt {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedStatusUpdater.class);
+
+    /** Min time in seconds between two checks for segments to compact, 60 by default */
+    public static final String COMPACTION_INTERVAL_PARAM_NAME =
+            "embedded.frontier.compaction.interval.sec";
+
+    private FrontierStore store;
+
+    private long compactionInterval;
+
+    private long lastCompaction;
+
+    private URLPartitioner partitioner;
+
+    @Override
+    public void prepare(
+            Map<String, Object> stormConf, TopologyContext context, OutputCollector collector) {
+        super.prepare(stormConf, context, collector);
+
+        partitioner = new URLPartitioner();
+        partitioner.configure(stormConf);
+
+        compactionInterval =
+                ConfUtils.getLong(stormConf, COMPACTION_INTERVAL_PARAM_NAME, 60) * 1000;
+        lastCompaction = System.currentTimeMillis();
+
+        try {
+            store = FrontierStore.open(stormConf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void execute(Tuple tuple) {
+        super.execute(tuple);
+        if (TupleUtils.isTick(tuple)
+                && System.currentTimeMillis() - lastCompaction >= compactionInterval) {
+            try {
+                store.compact();
+            } catch (IOException e) {
+                LOG.error("Exception while compacting the frontier", e);
+            }
+            lastCompaction = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    protected void storeBatch(List<StatusUpdate> updates) throws Exception {
+        for (StatusUpdate update : updates) {
+            String url = update.getUrl();
+            Metadata metadata = update.getMetadata();
+            String key = partitioner.getPartition(url, metadata);
+            if (key == null) {
+                key = "_DEFAULT_";
+            }
+            // no next fetch date means never refetch
+            long nextFetch = update.getNextFetch().map(Date::getTime).orElse(FrontierStore.NEVER);
+            store.put(
+                    url,
+                    key,
+                    update.getStatus(),
+                    metadata,
+                    nextFetch,
+                    update.getStatus().equals(Status.DISCOVERED));
+        }
+        store.flush();
+    }
+
+    @Override
+    public void cleanup() {
+        // stores the pending updates
+        super.cleanup();
+        try {
+            FrontierStore.release(store);
+        } catch (IOException e) {
+            LOG.error("Exception while closing the frontier", e);
+        }
+    }
+}
@@ -0,0 +1,724 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.embedded;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.persistence.Status;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log-structured store holding the status of the URLs on the local disk. Each update is appended to
+ * the current segment file as a checksummed record; an in-memory index keeps, for each URL, the
+ * location of its latest record as well as its next fetch date within the queue of its host, domain
+ * or IP.
+ *
+ * <p>The index is rebuilt by reading the segments when the store is opened, a truncated or
+ * corrupted record found at the end of a segment after a crash being discarded. The segments of
+ * which less than a given proportion of the records are still live get compacted by copying these
+ * records to the current segment and deleting the file.
+ *
+ * <p>URLs are identified by a 64-bit fingerprint and the index takes around 120 bytes per URL.
+ * Instances are shared by the spout and status updater running in the same worker and the directory
+ * is locked so that it can't be opened by another process.
+ *
+ * @since 3.4.1
+ */
+public class FrontierStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FrontierStore.class);
+
+    /** Directory where the segments are written, mandatory */
+    public static final String DIRECTORY_PARAM_NAME = "embedded.frontier.dir";
+
+    /** Max size of a segment in MB, 256 by default */
+    public static final String SEGMENT_SIZE_PARAM_NAME = "embedded.frontier.segment.mb";
+
+    /**
+     * Segments with a lower proportion of live records get compacted, 0.5 by default and 0 to
+     * disable compaction
+     */
+    public static final String COMPACTION_RATIO_PARAM_NAME = "embedded.frontier.compaction.ratio";
+
+    /** Whether the data is forced to the disk when {@link #flush()} is called, true by default */
+    public static final String SYNC_PARAM_NAME = "embedded.frontier.sync";
+
+    /** Next fetch date of the URLs which must not be refetched */
+    static final long NEVER = Long.MAX_VALUE;
+
+    /** length and checksum of the payload */
+    private static final int HEADER_BYTES = 8;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final Map<Path, FrontierStore> OPEN = new HashMap<>();
+
+    private static final Comparator<Ref> DUE_ORDER =
+            Comparator.<Ref>comparingLong(r -> r.nextFetch).thenComparingLong(r -> r.fingerprint);
+
+    private static final Comparator<Queue> WAITING_ORDER =
+            Comparator.<Queue>comparingLong(q -> q.refs.first().nextFetch)
+                    .thenComparing(q -> q.key);
+
+    /** Location of the latest record for a URL */
+    private static final class Ref {
+        final long fingerprint;
+        long nextFetch;
+        int segment;
+        int offset;
+        int length;
+        Queue queue;
+
+        Ref(long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /** URLs of a host, domain or IP ordered by next fetch date */
+    private static final class Queue {
+        final String key;
+        final TreeSet<Ref> refs = new TreeSet<>(DUE_ORDER);
+
+        /** Whether the queue is in the rotation of the ones with URLs due rather than waiting */
+        boolean ready;
+
+        Queue(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        long liveBytes;
+
+        /** Whether records were written since the segment was last forced to the disk */
+        boolean unsynced;
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel =
+                    FileChannel.open(
+                            path,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+    }
+
+    private final Path directory;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    private final long maxSegmentBytes;
+
+    private final double compactionRatio;
+
+    private final boolean sync;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    private Segment active;
+
+    /** Segments written to since they were last forced, including the ones sealed since then */
+    private final List<Segment> unsynced = new ArrayList<>();
+
+    /** Records appended to the active segment but not written yet */
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+    private final Map<Long, Ref> index = new HashMap<>();
+
+    /** Queues with URLs to fetch */
+    private final Map<String, Queue> queues = new HashMap<>();
+
+    /** Queues of which no URL was due when last checked, ordered by their earliest next fetch */
+    private final TreeSet<Queue> waiting = new TreeSet<>(WAITING_ORDER);
+
+    /** Queues with URLs due, moved to the end once they have been selected from */
+    private final LinkedHashMap<String, Queue> ready = new LinkedHashMap<>();
+
+    private int users;
+
+    /**
+     * Returns the store for the directory set in the configuration, opening it if it isn't already
+     * used within this JVM. Must be released with {@link #release(FrontierStore)}.
+     */
+    public static FrontierStore open(Map<String, Object> conf) throws IOException {
+        String dir = ConfUtils.getString(conf, DIRECTORY_PARAM_NAME);
+        if (dir == null) {
+            throw new IllegalArgumentException(DIRECTORY_PARAM_NAME + " is not set");
+        }
+        Path path = Paths.get(dir).toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            FrontierStore store = OPEN.get(path);
+            if (store == null) {
+                store =
+                        new FrontierStore(
+                                path,
+                                ConfUtils.getLong(conf, SEGMENT_SIZE_PARAM_NAME, 256) * 1024 * 1024,
+                                ConfUtils.getFloat(conf, COMPACTION_RATIO_PARAM_NAME, 0.5f),
+                                ConfUtils.getBoolean(conf, SYNC_PARAM_NAME, true));
+                OPEN.put(path, store);
+            }
+            store.users++;
+            return store;
+        }
+    }
+
+    /** Closes the store once it isn't used anymore */
+    public static void release(FrontierStore store) throws IOException {
+        synchronized (OPEN) {
+            if (--store.users == 0) {
+                OPEN.remove(store.directory);
+                store.close();
+            }
+        }
+    }
+
+    FrontierStore(Path directory, long maxSegmentBytes, double compactionRatio, boolean sync)
+            throws IOException {
+        this.directory = directory;
+        // the offsets are ints
+        this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+        this.compactionRatio = compactionRatio;
+        this.sync = sync;
+
+        Files.createDirectories(directory);
+        lockChannel =
+                FileChannel.open(
+                        directory.resolve("lock"),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(directory + " is used by another process");
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+                Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                ids.add(
+                        Integer.parseInt(
+                                name.substring(
+                                        SEGMENT_PREFIX.length(),
+                                        name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        ids.sort(null);
+
+        long start = System.currentTimeMillis();
+        for (int id : ids) {
+            Segment segment = new Segment(id, segmentPath(id));
+            segments.put(id, segment);
+            recover(segment);
+        }
+        LOG.info(
+                "Loaded {} URLs in {} queues from {} segments in {} msec",
+                index.size(),
+                queues.size(),
+                segments.size(),
+                System.currentTimeMillis() - start);
+
+        active = segments.isEmpty() ? newSegment(0) : segments.lastEntry().getValue();
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(
+                String.format(Locale.ROOT, "%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Segment segment = new Segment(id, segmentPath(id));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /** Adds the records of a segment to the index, truncates it after the last valid one */
+    private void recover(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        CRC32 crc = new CRC32();
+        while (position < segment.size) {
+            header.clear();
+            if (readFully(segment.channel, header, position) < HEADER_BYTES) break;
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > segment.size) break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(segment.channel, payload, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) break;
+
+            payload.flip();
+            payload.get(); // status
+            long nextFetch = payload.getLong();
+            String url = readString(payload);
+            String key = readString(payload);
+            index(url, key, nextFetch, segment, (int) position, HEADER_BYTES + length);
+            position += HEADER_BYTES + length;
+        }
+        if (position < segment.size) {
+            LOG.warn("Truncating {} at {} out of {} bytes", segment.path, position, segment.size);
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    /** Points the URL to its latest record, updating its queue */
+    private void index(
+            String url, String key, long nextFetch, Segment segment, int offset, int length) {
+        long fingerprint = Fingerprint.hash64(url);
+        Ref ref = index.get(fingerprint);
+        if (ref == null) {
+            ref = new Ref(fingerprint);
+            index.put(fingerprint, ref);
+        } else {
+            segments.get(ref.segment).liveBytes -= ref.length;
+            unqueue(ref);
+        }
+        ref.segment = segment.id;
+        ref.offset = offset;
+        ref.length = length;
+        ref.nextFetch = nextFetch;
+        segment.liveBytes += length;
+        if (nextFetch != NEVER) {
+            Queue queue = queues.get(key);
+            if (queue == null) {
+                queue = new Queue(key);
+                queues.put(key, queue);
+                queue.refs.add(ref);
+                waiting.add(queue);
+            } else if (queue.ready) {
+                queue.refs.add(ref);
+            } else {
+                // the position of a waiting queue depends on its first URL
+                waiting.remove(queue);
+                queue.refs.add(ref);
+                waiting.add(queue);
+            }
+            ref.queue = queue;
+        }
+    }
+
+    private void unqueue(Ref ref) {
+        Queue queue = ref.queue;
+        if (queue == null) return;
+        ref.queue = null;
+        if (!queue.ready) {
+            waiting.remove(queue);
+        }
+        queue.refs.remove(ref);
+        if (queue.refs.isEmpty()) {
+            queues.remove(queue.key);
+            if (queue.ready) {
+                ready.remove(queue.key);
+            }
+        } else if (!queue.ready) {
+            waiting.add(queue);
+        }
+    }
+
+    /**
+     * Stores the status of a URL
+     *
+     * @param key host, domain or IP the URL belongs to
+     * @param nextFetch epoch millis at which the URL must be fetched, {@link #NEVER} if it must not
+     *     be refetched
+     * @param ifAbsent only store it if the URL is not known yet
+     * @return false if the URL was known and ifAbsent is true
+     */
+    public synchronized boolean put(
+            String url,
+            String key,
+            Status status,
+            Metadata metadata,
+            long nextFetch,
+            boolean ifAbsent)
+            throws IOException {
+        if (ifAbsent && index.containsKey(Fingerprint.hash64(url))) {
+            return false;
+        }
+
+        byte[] bytes = encode(url, key, status, metadata, nextFetch);
+        if (active.size + pending.position() + bytes.length > maxSegmentBytes
+                && active.size + pending.position() > 0) {
+            writePending();
+            active = newSegment(active.id + 1);
+        }
+        if (pending.remaining() < bytes.length) {
+            writePending();
+            if (pending.capacity() < bytes.length) {
+                pending = ByteBuffer.allocate(bytes.length);
+            }
+        }
+        int offset = (int) (active.size + pending.position());
+        pending.put(bytes);
+        index(url, key, nextFetch, active, offset, bytes.length);
+        return true;
+    }
+
+    private static byte[] encode(
+            String url, String key, Status status, Metadata metadata, long nextFetch) {
+        List<byte[]> strings = new ArrayList<>();
+        strings.add(url.getBytes(StandardCharsets.UTF_8));
+        strings.add(key.getBytes(StandardCharsets.UTF_8));
+        int length = 1 + 8 + 4;
+        for (String k : metadata.keySet()) {
+            String[] values = metadata.getValues(k);
+            strings.add(k.getBytes(StandardCharsets.UTF_8));
+            length += 4;
+            for (String v : values) {
+                strings.add(v.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        for (byte[] s : strings) {
+            length += 4 + s.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.position(HEADER_BYTES);
+        buffer.put((byte) status.ordinal());
+        buffer.putLong(nextFetch);
+        Iterator<byte[]> it = strings.iterator();
+        putBytes(buffer, it.next());
+        putBytes(buffer, it.next());
+        buffer.putInt(metadata.size());
+        for (String k : metadata.keySet()) {
+            putBytes(buffer, it.next());
+            int numValues = metadata.getValues(k).length;
+            buffer.putInt(numValues);
+            for (int i = 0; i < numValues; i++) {
+                putBytes(buffer, it.next());
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String s =
+                new String(
+                        buffer.array(),
+                        buffer.arrayOffset() + buffer.position(),
+                        length,
+                        StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    private void writePending() throws IOException {
+        if (pending.position() == 0) return;
+        pending.flip();
+        while (pending.hasRemaining()) {
+            active.size += active.channel.write(pending, active.size);
+        }
+        pending.clear();
+        if (!active.unsynced) {
+            active.unsynced = true;
+            unsynced.add(active);
+        }
+    }
+
+    /** Forces the segments written to since the last call to the disk */
+    private void force() throws IOException {
+        for (Segment segment : unsynced) {
+            segment.channel.force(false);
+            segment.unsynced = false;
+        }
+        unsynced.clear();
+    }
+
+    /** Writes the pending records, forcing them to the disk if sync is enabled */
+    public synchronized void flush() throws IOException {
+        writePending();
+        if (sync) {
+            force();
+        }
+    }
+
+    /**
+     * Passes the URLs due for fetching to the consumer, going through the queues in turn so that
+     * the ones which were not selected from the last time come first. Only the queues with URLs due
+     * are visited, the others wait in order of their earliest next fetch date until they become
+     * due.
+     *
+     * @param now epoch millis
+     * @param maxPerQueue max number of URLs per queue
+     * @param max max number of URLs in total
+     * @param partition only the queues for which the hash of the key modulo numPartitions is equal
+     *     to this value are considered
+     * @param skip fingerprints, as computed by {@link Fingerprint#hash64(CharSequence)}, of the
+     *     URLs which are not passed to the consumer and don't count towards the limits, tested
+     *     before their record is read
+     * @return the number of URLs passed to the consumer
+     */
+    public synchronized int select(
+            long now,
+            int maxPerQueue,
+            int max,
+            int partition,
+            int numPartitions,
+            LongPredicate skip,
+            BiConsumer<String, Metadata> consumer)
+            throws IOException {
+        writePending();
+        // the queues which have become due join the rotation
+        while (!waiting.isEmpty() && waiting.first().refs.first().nextFetch <= now) {
+            Queue queue = waiting.pollFirst();
+            queue.ready = true;
+            ready.put(queue.key, queue);
+        }
+        int selected = 0;
+        List<Queue> served = new ArrayList<>();
+        List<Queue> notDue = new ArrayList<>();
+        for (Queue queue : ready.values()) {
+            if (selected >= max) break;
+            if (numPartitions > 1
+                    && Math.floorMod(queue.key.hashCode(), numPartitions) != partition) {
+                continue;
+            }
+            // rescheduled since it joined the rotation
+            if (queue.refs.first().nextFetch > now) {
+                notDue.add(queue);
+                continue;
+            }
+            int fromQueue = 0;
+            for (Ref ref : queue.refs) {
+                if (ref.nextFetch > now || fromQueue >= maxPerQueue || selected >= max) break;
+                if (skip.test(ref.fingerprint)) continue;
+                ByteBuffer payload = read(ref);
+                payload.get(); // status
+                payload.getLong(); // next fetch
+                String url = readString(payload);
+                readString(payload); // key
+                Metadata metadata = new Metadata();
+                int numKeys = payload.getInt();
+                for (int k = 0; k < numKeys; k++) {
+                    String mdKey = readString(payload);
+                    String[] values = new String[payload.getInt()];
+                    for (int v = 0; v < values.length; v++) {
+                        values[v] = readString(payload);
+                    }
+                    metadata.setValues(mdKey, values);
+                }
+                consumer.accept(url, metadata);
+                fromQueue++;
+                selected++;
+            }
+            if (fromQueue > 0) {
+                served.add(queue);
+            }
+        }
+        for (Queue queue : notDue) {
+            ready.remove(queue.key);
+            queue.ready = false;
+            waiting.add(queue);
+        }
+        for (Queue queue : served) {
+            ready.remove(queue.key);
+            ready.put(queue.key, queue);
+        }
+        return selected;
+    }
+
+    /** Returns the payload of the record */
+    private ByteBuffer read(Ref ref) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ref.length - HEADER_BYTES);
+        readFully(segments.get(ref.segment).channel, buffer, ref.offset + HEADER_BYTES);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Compacts the segments other than the active one where the proportion of live records is lower
+     * than the compaction ratio
+     *
+     * @return the number of segments compacted
+     */
+    public synchronized int compact() throws IOException {
+        if (compactionRatio <= 0) return 0;
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.liveBytes < segment.size * compactionRatio) {
+                candidates.add(segment);
+            }
+        }
+        if (candidates.isEmpty()) return 0;
+
+        int compacted = 0;
+        for (Segment segment : candidates) {
+            long start = System.currentTimeMillis();
+            long before = segment.size;
+            // copy the live records to the active segment
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 1 + 8 + 4);
+            long position = 0;
+            boolean valid = true;
+            while (position < segment.size) {
+                header.clear();
+                int read = readFully(segment.channel, header, position);
+                int length = header.getInt(0);
+                // the segments were checked when loaded, keep it rather than lose records
+                if (read < header.capacity()
+                        || length <= 0
+                        || position + HEADER_BYTES + length > segment.size) {
+                    LOG.warn("Not compacting {}, invalid record at {}", segment.path, position);
+                    valid = false;
+                    break;
+                }
+                header.position(HEADER_BYTES + 1 + 8);
+                int urlLength = header.getInt();
+                ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+                readFully(segment.channel, record, position);
+                record.position(HEADER_BYTES + 1 + 8 + 4);
+                String url =
+                        new String(
+                                record.array(),
+                                record.position(),
+                                urlLength,
+                                StandardCharsets.UTF_8);
+                Ref ref = index.get(Fingerprint.hash64(url));
+                if (ref != null && ref.segment == segment.id && ref.offset == position) {
+                    segment.liveBytes -= ref.length;
+                    relocate(ref, record.array());
+                }
+                position += HEADER_BYTES + length;
+            }
+            if (!valid) continue;
+            // make sure the copies are on disk before deleting the originals
+            writePending();
+            force();
+            segments.remove(segment.id);
+            segment.channel.close();
+            Files.delete(segment.path);
+            LOG.info(
+                    "Compacted {} from {} bytes in {} msec",
+                    segment.path,
+                    before,
+                    System.currentTimeMillis() - start);
+            compacted++;
+        }
+        return compacted;
+    }
+
+    private void relocate(Ref ref, byte[] record) throws IOException {
+        if (active.size + pending.position() + record.length > maxSegmentBytes
+                && active.size + pending.position() > 0) {
+            writePending();
+            active = newSegment(active.id + 1);
+        }
+        if (pending.remaining() < record.length) {
+            writePending();
+            if (pending.capacity() < record.length) {
+                pending = ByteBuffer.allocate(record.length);
+            }
+        }
+        ref.segment = active.id;
+        ref.offset = (int) (active.size + pending.position());
+        active.liveBytes += record.length;
+        pending.put(record);
+    }
+
+    /** Number of URLs known */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /** Number of queues with URLs to fetch */
+    public synchronized int numQueues() {
+        return queues.size();
+    }
+
+    /** Number of segments written to since they were last forced to the disk */
+    synchronized int numUnsyncedSegments() {
+        return unsynced.size();
+    }
+
+    /** Number of segment files */
+    public synchronized int numSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+}
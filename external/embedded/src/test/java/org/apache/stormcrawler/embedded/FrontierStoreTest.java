@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.embedded;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.persistence.Status;
+import org.apache.stormcrawler.util.Fingerprint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrontierStoreTest {
+
+    @TempDir Path dir;
+
+    private FrontierStore open() throws IOException {
+        return new FrontierStore(dir, 1024, 0.5, true);
+    }
+
+    private static Map<String, Metadata> select(FrontierStore store, long now, int perQueue)
+            throws IOException {
+        Map<String, Metadata> selected = new LinkedHashMap<>();
+        store.select(now, perQueue, 100, 0, 1, fp -> false, selected::put);
+        return selected;
+    }
+
+    private static Metadata md(String value) {
+        Metadata md = new Metadata();
+        md.setValue("key", value);
+        return md;
+    }
+
+    @Test
+    void testSelect() throws IOException {
+        try (FrontierStore store = open()) {
+            store.put("http://a.com/1", "a.com", Status.DISCOVERED, md("1"), 10, true);
+            store.put("http://a.com/2", "a.com", Status.DISCOVERED, md("2"), 20, true);
+            store.put("http://a.com/3", "a.com", Status.DISCOVERED, md("3"), 30, true);
+            store.put("http://b.com/1", "b.com", Status.DISCOVERED, md("4"), 10, true);
+            // already known
+            Assertions.assertFalse(
+                    store.put("http://b.com/1", "b.com", Status.DISCOVERED, md("5"), 0, true));
+            // not to be refetched
+            store.put("http://c.com/1", "c.com", Status.ERROR, md("6"), FrontierStore.NEVER, false);
+
+            Assertions.assertEquals(5, store.size());
+            Assertions.assertEquals(2, store.numQueues());
+
+            Map<String, Metadata> selected = select(store, 25, 1);
+            Assertions.assertEquals(2, selected.size());
+            Assertions.assertEquals("1", selected.get("http://a.com/1").getFirstValue("key"));
+            Assertions.assertEquals("4", selected.get("http://b.com/1").getFirstValue("key"));
+
+            // in-flight URLs are skipped
+            Set<Long> inFlight = new HashSet<>();
+            selected.keySet().forEach(url -> inFlight.add(Fingerprint.hash64(url)));
+            Map<String, Metadata> next = new LinkedHashMap<>();
+            store.select(25, 1, 100, 0, 1, inFlight::contains, next::put);
+            Assertions.assertEquals(1, next.size());
+            Assertions.assertTrue(next.containsKey("http://a.com/2"));
+
+            // fetched, moved after the others
+            store.put("http://a.com/1", "a.com", Status.FETCHED, md("7"), 40, false);
+            selected = select(store, 100, 10);
+            Assertions.assertEquals(
+                    "[http://b.com/1, http://a.com/2, http://a.com/3, http://a.com/1]",
+                    selected.keySet().toString());
+            Assertions.assertEquals("7", selected.get("http://a.com/1").getFirstValue("key"));
+        }
+    }
+
+    @Test
+    void testQueuesBecomingDue() throws IOException {
+        try (FrontierStore store = open()) {
+            store.put("http://a.com/1", "a.com", Status.DISCOVERED, md("1"), 50, true);
+            store.put("http://b.com/1", "b.com", Status.DISCOVERED, md("2"), 10, true);
+
+            Assertions.assertEquals("[http://b.com/1]", select(store, 20, 10).keySet().toString());
+            Assertions.assertEquals(2, select(store, 60, 10).size());
+
+            // rescheduled while in the rotation
+            store.put("http://b.com/1", "b.com", Status.FETCHED, md("3"), 100, false);
+            Assertions.assertEquals("[http://a.com/1]", select(store, 60, 10).keySet().toString());
+            // rescheduled while waiting
+            store.put("http://a.com/1", "a.com", Status.FETCHED, md("4"), 200, false);
+            store.put("http://b.com/1", "b.com", Status.FETCHED, md("5"), 70, false);
+            Assertions.assertEquals("[http://b.com/1]", select(store, 150, 10).keySet().toString());
+            Assertions.assertEquals(2, select(store, 200, 10).size());
+            Assertions.assertEquals(2, store.numQueues());
+        }
+    }
+
+    @Test
+    void testRecovery() throws IOException {
+        try (FrontierStore store = open()) {
+            for (int i = 0; i < 50; i++) {
+                store.put("http://a.com/" + i, "a.com", Status.DISCOVERED, md("v" + i), i, true);
+            }
+            store.put("http://a.com/0", "a.com", Status.FETCHED, md("updated"), 1000, false);
+        }
+
+        // simulates a crash in the middle of a write
+        Path last;
+        try (Stream<Path> files = Files.list(dir)) {
+            last =
+                    files.filter(p -> p.getFileName().toString().startsWith("segment-"))
+                            .sorted()
+                            .reduce((a, b) -> b)
+                            .get();
+        }
+        long size = Files.size(last);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (FrontierStore store = open()) {
+            Assertions.assertTrue(store.numSegments() > 1);
+            // the update of a.com/0 was lost
+            Assertions.assertEquals(50, store.size());
+            Map<String, Metadata> selected = select(store, 0, 10);
+            Assertions.assertEquals("v0", selected.get("http://a.com/0").getFirstValue("key"));
+
+            // can still be written to
+            store.put("http://a.com/0", "a.com", Status.FETCHED, md("updated"), 1000, false);
+        }
+
+        try (FrontierStore store = open()) {
+            Assertions.assertEquals(50, store.size());
+            Map<String, Metadata> selected = select(store, 100, 100);
+            Assertions.assertEquals(49, selected.size());
+            Assertions.assertFalse(selected.containsKey("http://a.com/0"));
+        }
+    }
+
+    @Test
+    void testCompaction() throws IOException {
+        try (FrontierStore store = open()) {
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 10; i++) {
+                    store.put(
+                            "http://a.com/" + i,
+                            "a.com",
+                            Status.FETCHED,
+                            md("round" + round),
+                            round,
+                            false);
+                }
+            }
+            int segments = store.numSegments();
+            Assertions.assertTrue(store.compact() > 0);
+            Assertions.assertTrue(store.numSegments() < segments);
+            Assertions.assertEquals(10, store.size());
+            Map<String, Metadata> selected = select(store, 100, 100);
+            Assertions.assertEquals(10, selected.size());
+            Assertions.assertEquals("round9", selected.get("http://a.com/5").getFirstValue("key"));
+        }
+
+        try (FrontierStore store = open()) {
+            Map<String, Metadata> selected = select(store, 100, 100);
+            Assertions.assertEquals(10, selected.size());
+            Assertions.assertEquals("round9", selected.get("http://a.com/5").getFirstValue("key"));
+        }
+    }
+
+    @Test
+    void testSyncSealedSegments() throws IOException {
+        // a segment can only hold a couple of records
+        try (FrontierStore store = new FrontierStore(dir, 256, 0.5, true)) {
+            for (int i = 0; i < 20; i++) {
+                store.put("http://a.com/" + i, "a.com", Status.DISCOVERED, md("v" + i), i, true);
+            }
+            int segments = store.numSegments();
+            Assertions.assertTrue(segments > 2);
+            // the segments sealed since the last flush have been written but not forced
+            Assertions.assertEquals(segments - 1, store.numUnsyncedSegments());
+            store.flush();
+            Assertions.assertEquals(0, store.numUnsyncedSegments());
+
+            // the copies span several segments
+            for (int i = 0; i < 20; i++) {
+                store.put("http://a.com/" + i, "a.com", Status.FETCHED, md("u" + i), 100, false);
+            }
+            store.flush();
+            Assertions.assertTrue(store.compact() > 0);
+            Assertions.assertEquals(0, store.numUnsyncedSegments());
+        }
+
+        try (FrontierStore store = new FrontierStore(dir, 256, 0.5, true)) {
+            Map<String, Metadata> selected = select(store, 100, 100);
+            Assertions.assertEquals(20, selected.size());
+            Assertions.assertEquals("u7", selected.get("http://a.com/7").getFirstValue("key"));
+        }
+    }
+
+    @Test
+    void testLock() throws IOException {
+        try (FrontierStore store = open()) {
+            Assertions.assertThrows(Exception.class, this::open);
+        }
+    }
+}
@@ -22,8 +22,40 @@ public class Constants {
     public static final String SQL_MAX_DOCS_BUCKET_PARAM_NAME = "sql.max.urls.per.bucket";
     public static final String SQL_MAXRESULTS_PARAM_NAME = "sql.spout.max.results";
 
+    /**
+     * How the SQLSpout selects the URLs, either "rank" (default) which ranks all the URLs due for
+     * fetching per host or "keyset" which pages through them in order of nextfetchdate and url.
+     */
+    public static final String SQL_SPOUT_STRATEGY_PARAM_NAME = "sql.spout.query.strategy";
+
+    /**
+     * @deprecated use {@link
+     *     org.apache.stormcrawler.persistence.BatchingStatusUpdaterBolt#batchSizeParamName}
+     *     instead, still takes precedence over it when set
+     */
+    @Deprecated
     public static final String SQL_UPDATE_BATCH_SIZE_PARAM_NAME = "sql.update.batch.size";
 
+    /**
+     * SQL dialect used for the upserts, either "mysql" (which also covers MariaDB) or "postgresql".
+     * Guessed from the connection URL if not set.
+     */
+    public static final String SQL_DIALECT_PARAM_NAME = "sql.dialect";
+
+    /**
+     * Format of the metadata in the status table, either "text" (default) for a tab-separated
+     * string in the column metadata or "binary" for the representation of {@link MetadataCodec} in
+     * the column metadata_bin
+     */
+    public static final String SQL_METADATA_FORMAT_PARAM_NAME = "sql.metadata.format";
+
+    /** Keys appended to the default dictionary of {@link MetadataCodec} */
+    public static final String SQL_METADATA_DICTIONARY_PARAM_NAME = "sql.metadata.dictionary";
+
+    /** Min size in bytes from which the binary metadata get deflated, -1 to never deflate them */
+    public static final String SQL_METADATA_COMPRESSION_PARAM_NAME =
+            "sql.metadata.compress.min.bytes";
+
     public static final String SQL_METRICS_TABLE_PARAM_NAME = "sql.metrics.table";
 
     private Constants() {}
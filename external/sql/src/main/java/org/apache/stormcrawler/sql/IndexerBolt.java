@@ -21,6 +21,7 @@ import static org.apache.stormcrawler.Constants.StatusStreamName;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.apache.storm.metric.api.MultiCountMetric;
@@ -42,6 +43,12 @@ public class IndexerBolt extends AbstractIndexerBolt {
 
     public static final String SQL_INDEX_TABLE_PARAM_NAME = "sql.index.table";
 
+    /**
+     * Column in which the selected metadata are also stored in binary with {@link MetadataCodec},
+     * none if not set
+     */
+    public static final String SQL_INDEX_METADATA_COLUMN_PARAM_NAME = "sql.index.metadata.column";
+
     private OutputCollector _collector;
 
     private MultiCountMetric eventCounter;
@@ -52,6 +59,10 @@ public class IndexerBolt extends AbstractIndexerBolt {
 
     private Map conf;
 
+    private String metadataColumn;
+
+    private MetadataCodec codec;
+
     @Override
     public void prepare(
             Map<String, Object> conf, TopologyContext context, OutputCollector collector) {
@@ -63,6 +74,11 @@ public class IndexerBolt extends AbstractIndexerBolt {
         this.tableName = ConfUtils.getString(conf, SQL_INDEX_TABLE_PARAM_NAME);
 
         this.conf = conf;
+
+        metadataColumn = ConfUtils.getString(conf, SQL_INDEX_METADATA_COLUMN_PARAM_NAME);
+        if (StringUtils.isNotBlank(metadataColumn)) {
+            codec = MetadataCodec.fromConf(conf);
+        }
     }
 
     @Override
@@ -99,6 +115,11 @@ public class IndexerBolt extends AbstractIndexerBolt {
 
             Object[] keys = keyVals.keySet().toArray();
 
+            if (codec != null) {
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                keys[keys.length - 1] = metadataColumn;
+            }
+
             for (int i = 0; i < keys.length; i++) {
                 query.append(", ").append((String) keys[i]);
             }
@@ -144,10 +165,14 @@ public class IndexerBolt extends AbstractIndexerBolt {
                 preparedStmt.setString(1, normalisedurl);
             }
 
-            for (int i = 0; i < keys.length; i++) {
+            for (int i = 0; i < keyVals.size(); i++) {
                 insert(preparedStmt, i + 2, (String) keys[i], keyVals);
             }
 
+            if (codec != null) {
+                preparedStmt.setBytes(keys.length + 1, codec.encode(new Metadata(keyVals)));
+            }
+
             preparedStmt.executeUpdate();
 
             eventCounter.scope("Indexed").incrBy(1);
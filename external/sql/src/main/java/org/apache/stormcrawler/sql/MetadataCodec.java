@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.sql;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.stormcrawler.Metadata;
+import org.apache.stormcrawler.util.ConfUtils;
+
+/**
+ * Binary representation of the metadata stored in the column metadata_bin of the status table when
+ * sql.metadata.format is set to binary.
+ *
+ * <p>The first byte indicates whether the rest is deflated. It is followed by the number of keys
+ * then for each key, its index + 1 in the dictionary or 0 followed by the key itself, the number of
+ * values and the values. Strings are written as UTF-8 and prefixed by their length, all the numbers
+ * are variable-length ints.
+ *
+ * <p>The dictionary contains the keys commonly found in the status metadata, followed by the ones
+ * listed in sql.metadata.dictionary. The same list must be used by all the components reading or
+ * writing the table and keys can be appended to it but never removed or reordered.
+ *
+ * @since 3.4.1
+ */
+public class MetadataCodec {
+
+    private static final byte PLAIN = 1;
+
+    private static final byte DEFLATED = 2;
+
+    /** Never to be modified other than by appending new keys */
+    private static final String[] DEFAULT_KEYS = {
+        "url.path",
+        "depth",
+        "max.depth",
+        "fetch.statusCode",
+        "fetch.error.count",
+        "error.message",
+        "error.source",
+        "error.cause",
+        "_redirTo",
+        "isSitemap",
+        "isFeed",
+        "foundSitemap",
+        "signature",
+        "signatureOld",
+        "signatureChangeDate",
+        "fetchInterval",
+        "discoveryDate",
+        "last-modified",
+        "etag",
+        "protocol.last-modified",
+        "protocol.etag",
+        "hostname",
+        "anchors",
+        "parse.title"
+    };
+
+    private final String[] keys;
+
+    private final Map<String, Integer> index = new HashMap<>();
+
+    private final int compressionThreshold;
+
+    /**
+     * @param extraKeys keys appended to the default dictionary
+     * @param compressionThreshold min size in bytes from which the values are deflated, -1 to never
+     *     deflate them
+     */
+    public MetadataCodec(List<String> extraKeys, int compressionThreshold) {
+        List<String> all = new ArrayList<>(Arrays.asList(DEFAULT_KEYS));
+        all.addAll(extraKeys);
+        this.keys = all.toArray(new String[0]);
+        for (int i = 0; i < keys.length; i++) {
+            index.putIfAbsent(keys[i], i);
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public static MetadataCodec fromConf(Map<String, Object> conf) {
+        return new MetadataCodec(
+                ConfUtils.loadListFromConf(Constants.SQL_METADATA_DICTIONARY_PARAM_NAME, conf),
+                ConfUtils.getInt(conf, Constants.SQL_METADATA_COMPRESSION_PARAM_NAME, 512));
+    }
+
+    public byte[] encode(Metadata metadata) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(PLAIN);
+        writeVarInt(out, metadata.size());
+        for (String key : metadata.keySet()) {
+            Integer i = index.get(key);
+            if (i != null) {
+                writeVarInt(out, i + 1);
+            } else {
+                writeVarInt(out, 0);
+                writeString(out, key);
+            }
+            String[] values = metadata.getValues(key);
+            writeVarInt(out, values.length);
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+
+        byte[] bytes = out.toByteArray();
+        if (compressionThreshold < 0 || bytes.length < compressionThreshold) {
+            return bytes;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes, 1, bytes.length - 1);
+            deflater.finish();
+            byte[] deflated = new byte[bytes.length];
+            deflated[0] = DEFLATED;
+            int length = 1;
+            while (!deflater.finished() && length < deflated.length) {
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            // not worth it
+            if (!deflater.finished()) {
+                return bytes;
+            }
+            return Arrays.copyOf(deflated, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public Metadata decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        byte type = bytes[0];
+        if (type == DEFLATED) {
+            in = new Reader(inflate(bytes));
+        } else if (type != PLAIN) {
+            throw new IllegalArgumentException("Unknown metadata format " + type);
+        }
+        in.pos = 1;
+
+        int numKeys = in.readVarInt();
+        Map<String, String[]> map = new HashMap<>(numKeys * 2);
+        for (int k = 0; k < numKeys; k++) {
+            int i = in.readVarInt();
+            String key = i == 0 ? in.readString() : keys[i - 1];
+            String[] values = new String[in.readVarInt()];
+            for (int v = 0; v < values.length; v++) {
+                values[v] = in.readString();
+            }
+            map.put(key, values);
+        }
+        return new Metadata(map);
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            out.write(PLAIN);
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated metadata");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, b.length);
+        out.write(b, 0, b.length);
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int pos;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String s = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
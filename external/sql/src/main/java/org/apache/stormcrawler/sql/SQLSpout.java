@@ -19,11 +19,12 @@ package org.apache.stormcrawler.sql;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.storm.spout.Scheme;
@@ -37,12 +38,31 @@ import org.apache.stormcrawler.util.StringTabScheme;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Spout reading the URLs due for fetching from a SQL table. If more than one instance of the spout
+ * exist, each one is in charge of a separate bucket.
+ *
+ * <p>Two strategies are available, set with sql.spout.query.strategy:
+ *
+ * <ul>
+ *   <li>rank (default): ranks the URLs due for fetching per host with a window function and keeps
+ *       at most sql.max.urls.per.bucket of them per host. The cost of the query grows with the
+ *       number of URLs due for fetching.
+ *   <li>keyset: pages through the URLs due for fetching of the bucket in order of nextfetchdate and
+ *       url, starting after the last row returned by the previous query, which only reads
+ *       sql.spout.max.results rows from an index on (bucket, nextfetchdate, url). At most
+ *       sql.max.urls.per.bucket URLs per host are kept from each page, the others being considered
+ *       again once all the pages have been read and the cursor goes back to the start.
+ * </ul>
+ */
 public class SQLSpout extends AbstractQueryingSpout {
 
     public static final Logger LOG = LoggerFactory.getLogger(SQLSpout.class);
 
     private static final Scheme SCHEME = new StringTabScheme();
 
+    private static final Timestamp START = new Timestamp(0);
+
     private String tableName;
 
     private Connection connection;
@@ -62,6 +82,21 @@ public class SQLSpout extends AbstractQueryingSpout {
 
     private Instant lastNextFetchDate = null;
 
+    private boolean keyset;
+
+    /** Decodes the binary metadata, null if they are stored as text */
+    private MetadataCodec codec;
+
+    /** Columns read from the table in addition to url */
+    private String columns = "metadata, nextfetchdate";
+
+    private PreparedStatement queryStmt;
+
+    /** nextfetchdate and url of the last row returned by the keyset query */
+    private Timestamp cursorDate = START;
+
+    private String cursorURL = "";
+
     @Override
     public void open(
             Map<String, Object> conf, TopologyContext context, SpoutOutputCollector collector) {
@@ -74,11 +109,14 @@ public class SQLSpout extends AbstractQueryingSpout {
 
         maxNumResults = ConfUtils.getInt(conf, Constants.SQL_MAXRESULTS_PARAM_NAME, 100);
 
-        try {
-            connection = SQLUtil.getConnection(conf);
-        } catch (SQLException ex) {
-            LOG.error(ex.getMessage(), ex);
-            throw new RuntimeException(ex);
+        String strategy =
+                ConfUtils.getString(conf, Constants.SQL_SPOUT_STRATEGY_PARAM_NAME, "rank");
+        keyset = "keyset".equalsIgnoreCase(strategy);
+
+        // rows which haven't been rewritten in binary yet are read from the text column
+        if (SQLUtil.useBinaryMetadata(conf)) {
+            codec = MetadataCodec.fromConf(conf);
+            columns += ", metadata_bin";
         }
 
         // determine bucket this spout instance will be in charge of
@@ -88,72 +126,122 @@ public class SQLSpout extends AbstractQueryingSpout {
                     "[" + context.getThisComponentId() + " #" + context.getThisTaskIndex() + "] ";
             bucketNum = context.getThisTaskIndex();
         }
-    }
 
-    @Override
-    public void declareOutputFields(OutputFieldsDeclarer declarer) {
-        declarer.declare(SCHEME.getOutputFields());
+        try {
+            connection = SQLUtil.getConnection(conf);
+            queryStmt = connection.prepareStatement(keyset ? keysetQuery() : rankQuery());
+        } catch (SQLException ex) {
+            LOG.error(ex.getMessage(), ex);
+            throw new RuntimeException(ex);
+        }
     }
 
-    @Override
-    protected void populateBuffer() {
+    // select entries from mysql
+    // https://mariadb.com/kb/en/library/window-functions-overview/
+    // http://www.mysqltutorial.org/mysql-window-functions/mysql-rank-function/
+    private String rankQuery() {
+        String query =
+                "SELECT * from (select rank() over (partition by host order by nextfetchdate desc, url) as ranking, url, "
+                        + columns
+                        + " from "
+                        + tableName
+                        + " WHERE nextfetchdate <= ?";
 
-        if (lastNextFetchDate == null) {
-            lastNextFetchDate = Instant.now();
-            lastTimeResetToNOW = Instant.now();
-        } else if (resetFetchDateAfterNSecs != -1) {
-            Instant changeNeededOn =
-                    Instant.ofEpochMilli(
-                            lastTimeResetToNOW.toEpochMilli() + (resetFetchDateAfterNSecs * 1000));
-            if (Instant.now().isAfter(changeNeededOn)) {
-                LOG.info(
-                        "lastDate reset based on resetFetchDateAfterNSecs {}",
-                        resetFetchDateAfterNSecs);
-                lastNextFetchDate = Instant.now();
-            }
+        // constraint on bucket num
+        if (bucketNum >= 0) {
+            query += " AND bucket = ?";
         }
 
-        // select entries from mysql
-        // https://mariadb.com/kb/en/library/window-functions-overview/
-        // http://www.mysqltutorial.org/mysql-window-functions/mysql-rank-function/
+        query += ") as urls_ranks where (urls_ranks.ranking <= ?) order by ranking";
 
-        String query =
-                "SELECT * from (select rank() over (partition by host order by nextfetchdate desc, url) as ranking, url, metadata, nextfetchdate from "
-                        + tableName;
+        if (maxNumResults != -1) {
+            query += " LIMIT ?";
+        }
+        return query;
+    }
 
-        query +=
-                " WHERE nextfetchdate <= '" + new Timestamp(lastNextFetchDate.toEpochMilli()) + "'";
+    private String keysetQuery() {
+        String query = "SELECT url, " + columns + ", host FROM " + tableName + " WHERE ";
 
         // constraint on bucket num
         if (bucketNum >= 0) {
-            query += " AND bucket = '" + bucketNum + "'";
+            query += "bucket = ? AND ";
         }
 
         query +=
-                ") as urls_ranks where (urls_ranks.ranking <= "
-                        + maxDocsPerBucket
-                        + ") order by ranking";
+                "nextfetchdate <= ? AND nextfetchdate >= ?"
+                        + " AND (nextfetchdate > ? OR url > ?)"
+                        + " ORDER BY nextfetchdate, url";
 
         if (maxNumResults != -1) {
-            query += " LIMIT " + this.maxNumResults;
+            query += " LIMIT ?";
+        }
+        return query;
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declare(SCHEME.getOutputFields());
+    }
+
+    @Override
+    protected void populateBuffer() {
+
+        int param = 1;
+
+        try {
+            if (keyset) {
+                if (bucketNum >= 0) {
+                    queryStmt.setInt(param++, bucketNum);
+                }
+                queryStmt.setTimestamp(param++, new Timestamp(System.currentTimeMillis()));
+                queryStmt.setTimestamp(param++, cursorDate);
+                queryStmt.setTimestamp(param++, cursorDate);
+                queryStmt.setString(param++, cursorURL);
+            } else {
+                if (lastNextFetchDate == null) {
+                    lastNextFetchDate = Instant.now();
+                    lastTimeResetToNOW = Instant.now();
+                } else if (resetFetchDateAfterNSecs != -1) {
+                    Instant changeNeededOn =
+                            Instant.ofEpochMilli(
+                                    lastTimeResetToNOW.toEpochMilli()
+                                            + (resetFetchDateAfterNSecs * 1000));
+                    if (Instant.now().isAfter(changeNeededOn)) {
+                        LOG.info(
+                                "lastDate reset based on resetFetchDateAfterNSecs {}",
+                                resetFetchDateAfterNSecs);
+                        lastNextFetchDate = Instant.now();
+                    }
+                }
+                queryStmt.setTimestamp(param++, new Timestamp(lastNextFetchDate.toEpochMilli()));
+                if (bucketNum >= 0) {
+                    queryStmt.setInt(param++, bucketNum);
+                }
+                queryStmt.setInt(param++, maxDocsPerBucket);
+            }
+            if (maxNumResults != -1) {
+                queryStmt.setInt(param, maxNumResults);
+            }
+        } catch (SQLException e) {
+            LOG.error("Exception while preparing the query", e);
+            return;
         }
 
         int alreadyprocessed = 0;
         int numhits = 0;
+        int overHostLimit = 0;
 
-        long timeStartQuery = System.currentTimeMillis();
+        // number of URLs per host in the results of the keyset query
+        Map<String, Integer> perHost = new HashMap<>();
 
-        // create the java statement
-        Statement st = null;
-        ResultSet rs = null;
-        try {
-            st = this.connection.createStatement();
+        long timeStartQuery = System.currentTimeMillis();
 
-            // dump query to log
-            LOG.debug("{} SQL query {}", logIdprefix, query);
+        // dump query to log
+        LOG.debug("{} SQL query {}", logIdprefix, queryStmt);
 
-            // execute the query, and get a java resultset
-            rs = st.executeQuery(query);
+        // execute the query, and get a java resultset
+        try (ResultSet rs = queryStmt.executeQuery()) {
 
             long timeTaken = System.currentTimeMillis() - timeStartQuery;
             queryTimes.addMeasurement(timeTaken);
@@ -162,11 +250,26 @@ public class SQLSpout extends AbstractQueryingSpout {
             while (rs.next()) {
                 String url = rs.getString("url");
                 numhits++;
+                if (keyset) {
+                    cursorDate = rs.getTimestamp("nextfetchdate");
+                    cursorURL = url;
+                }
                 // already processed? skip
                 if (beingProcessed.containsKey(url)) {
                     alreadyprocessed++;
                     continue;
                 }
+                if (keyset
+                        && perHost.merge(String.valueOf(rs.getString("host")), 1, Integer::sum)
+                                > maxDocsPerBucket) {
+                    overHostLimit++;
+                    continue;
+                }
+                byte[] binary = codec != null ? rs.getBytes("metadata_bin") : null;
+                if (binary != null) {
+                    buffer.add(url, codec.decode(binary));
+                    continue;
+                }
                 String metadata = rs.getString("metadata");
                 if (metadata == null) {
                     metadata = "";
@@ -179,12 +282,20 @@ public class SQLSpout extends AbstractQueryingSpout {
                 buffer.add(url, (Metadata) v.get(1));
             }
 
+            if (keyset) {
+                // last page? go back to the start
+                if (maxNumResults == -1 || numhits < maxNumResults) {
+                    cursorDate = START;
+                    cursorURL = "";
+                }
+            }
             // no results? reset the date
-            if (numhits == 0) {
+            else if (numhits == 0) {
                 lastNextFetchDate = null;
             }
 
             eventCounter.scope("already_being_processed").incrBy(alreadyprocessed);
+            eventCounter.scope("over_host_limit").incrBy(overHostLimit);
             eventCounter.scope("queries").incrBy(1);
             eventCounter.scope("docs").incrBy(numhits);
 
@@ -197,17 +308,6 @@ public class SQLSpout extends AbstractQueryingSpout {
 
         } catch (SQLException e) {
             LOG.error("Exception while querying table", e);
-        } finally {
-            try {
-                if (rs != null) rs.close();
-            } catch (SQLException e) {
-                LOG.error("Exception closing resultset", e);
-            }
-            try {
-                if (st != null) st.close();
-            } catch (SQLException e) {
-                LOG.error("Exception closing statement", e);
-            }
         }
     }
 
@@ -227,6 +327,7 @@ public class SQLSpout extends AbstractQueryingSpout {
     public void close() {
         super.close();
         try {
+            queryStmt.close();
             connection.close();
         } catch (SQLException e) {
             LOG.error("Exception caught while closing SQL connection", e);
@@ -19,9 +19,11 @@ package org.apache.stormcrawler.sql;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import org.apache.stormcrawler.util.ConfUtils;
 
 public class SQLUtil {
 
@@ -50,4 +52,27 @@ public class SQLUtil {
 
         return DriverManager.getConnection(url, props);
     }
+
+    /**
+     * @return true if the SQL dialect is PostgreSQL, based on the value of sql.dialect or the
+     *     connection URL if not set
+     */
+    public static boolean isPostgreSQL(Map stormConf) {
+        String dialect = ConfUtils.getString(stormConf, Constants.SQL_DIALECT_PARAM_NAME);
+        if (dialect == null) {
+            Map<String, String> sqlConf = (Map) stormConf.get("sql.connection");
+            dialect = sqlConf != null ? sqlConf.get("url") : null;
+        }
+        return dialect != null && dialect.toLowerCase(Locale.ROOT).contains("postgresql");
+    }
+
+    /**
+     * @return true if the metadata are stored in binary rather than as text
+     */
+    public static boolean useBinaryMetadata(Map stormConf) {
+        return "binary"
+                .equalsIgnoreCase(
+                        ConfUtils.getString(
+                                stormConf, Constants.SQL_METADATA_FORMAT_PARAM_NAME, "text"));
+    }
 }
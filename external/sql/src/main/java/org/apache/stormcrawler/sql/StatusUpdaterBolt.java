@@ -20,30 +20,40 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.Date;
+import java.sql.Types;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 import org.apache.storm.metric.api.MultiCountMetric;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
-import org.apache.storm.tuple.Tuple;
 import org.apache.stormcrawler.Metadata;
-import org.apache.stormcrawler.persistence.AbstractStatusUpdaterBolt;
+import org.apache.stormcrawler.persistence.BatchingStatusUpdaterBolt;
 import org.apache.stormcrawler.persistence.Status;
+import org.apache.stormcrawler.persistence.StatusUpdate;
 import org.apache.stormcrawler.util.ConfUtils;
 import org.apache.stormcrawler.util.URLPartitioner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Status updater for SQL backend. Discovered URLs are sent as a batch, whereas updates are atomic.
+ * Status updater for SQL backend. The updates are sent in batches of upserts, executed within a
+ * single transaction, and the tuples are acked once it has been committed. Discovered URLs are
+ * inserted only if they are not already in the table, whereas the other statuses overwrite the
+ * existing values.
+ *
+ * <p>The size of the batches and how long an update can wait are set with status.updater.batch.size
+ * and status.updater.batch.max.delay.msec. The statements are written for MySQL / MariaDB (INSERT
+ * ... ON DUPLICATE KEY UPDATE) or PostgreSQL (INSERT ... ON CONFLICT) depending on the value of
+ * sql.dialect or on the connection URL if it isn't set. With MySQL, set rewriteBatchedStatements to
+ * true in the connection properties so that each batch is sent as a single multi-row statement.
+ *
+ * <p>If sql.metadata.format is set to binary, the metadata are written with {@link MetadataCodec}
+ * in the column metadata_bin and the text column is set to null.
  */
-public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
+public class StatusUpdaterBolt extends BatchingStatusUpdaterBolt {
 
     public static final Logger LOG = LoggerFactory.getLogger(StatusUpdaterBolt.class);
 
@@ -57,20 +67,11 @@ public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
     private URLPartitioner partitioner;
     private int maxNumBuckets = -1;
 
-    private int batchMaxSize = 1000;
-    private float batchMaxIdleMsec = 2000;
-
-    private int currentBatchSize = 0;
-
-    private PreparedStatement insertPreparedStmt = null;
-
-    private long lastInsertBatchTime = -1;
+    private MetadataCodec codec;
 
     private String updateQuery;
     private String insertQuery;
 
-    private final Map<String, List<Tuple>> waitingAck = new HashMap<>();
-
     public StatusUpdaterBolt(int maxNumBuckets) {
         this.maxNumBuckets = maxNumBuckets;
     }
@@ -81,6 +82,14 @@ public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
     @Override
     public void prepare(
             Map<String, Object> stormConf, TopologyContext context, OutputCollector collector) {
+        // the legacy batch size param takes precedence
+        if (stormConf.containsKey(Constants.SQL_UPDATE_BATCH_SIZE_PARAM_NAME)) {
+            stormConf = new HashMap<>(stormConf);
+            stormConf.put(
+                    batchSizeParamName,
+                    ConfUtils.getInt(stormConf, Constants.SQL_UPDATE_BATCH_SIZE_PARAM_NAME, 1000));
+        }
+
         super.prepare(stormConf, context, collector);
 
         partitioner = new URLPartitioner();
@@ -90,70 +99,101 @@ public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
 
         tableName = ConfUtils.getString(stormConf, Constants.SQL_STATUS_TABLE_PARAM_NAME, "urls");
 
-        batchMaxSize =
-                ConfUtils.getInt(stormConf, Constants.SQL_UPDATE_BATCH_SIZE_PARAM_NAME, 1000);
-
         try {
             connection = SQLUtil.getConnection(stormConf);
+            connection.setAutoCommit(false);
         } catch (SQLException ex) {
             LOG.error(ex.getMessage(), ex);
             throw new RuntimeException(ex);
         }
 
-        String query =
-                tableName
-                        + " (url, status, nextfetchdate, metadata, bucket, host)"
-                        + " values (?, ?, ?, ?, ?, ?)";
+        // the text metadata are set to null when writing in binary
+        // so that the rows get migrated as they are updated
+        String columns = "url, status, nextfetchdate, metadata, bucket, host";
+        String values = "?, ?, ?, ?, ?, ?";
+        if (SQLUtil.useBinaryMetadata(stormConf)) {
+            codec = MetadataCodec.fromConf(stormConf);
+            columns += ", metadata_bin";
+            values += ", ?";
+        }
 
-        updateQuery = "REPLACE INTO " + query;
-        insertQuery = "INSERT IGNORE INTO " + query;
+        String insert = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + values + ")";
 
-        try {
-            insertPreparedStmt = connection.prepareStatement(insertQuery);
-        } catch (SQLException e) {
-            LOG.error(e.getMessage(), e);
+        boolean postgres = SQLUtil.isPostgreSQL(stormConf);
+        StringBuilder set = new StringBuilder();
+        for (String column : columns.substring("url, ".length()).split(", ")) {
+            if (set.length() > 0) {
+                set.append(", ");
+            }
+            set.append(column).append(" = ");
+            if (postgres) {
+                set.append("EXCLUDED.").append(column);
+            } else {
+                set.append("VALUES(").append(column).append(")");
+            }
         }
 
-        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-        executor.scheduleAtFixedRate(
-                () -> {
-                    try {
-                        checkExecuteBatch();
-                    } catch (SQLException ex) {
-                        LOG.error(ex.getMessage(), ex);
-                        throw new RuntimeException(ex);
-                    }
-                },
-                0,
-                1,
-                TimeUnit.SECONDS);
+        if (postgres) {
+            insertQuery = insert + " ON CONFLICT (url) DO NOTHING";
+            updateQuery = insert + " ON CONFLICT (url) DO UPDATE SET " + set;
+        } else {
+            insertQuery = "INSERT IGNORE" + insert.substring("INSERT".length());
+            updateQuery = insert + " ON DUPLICATE KEY UPDATE " + set;
+        }
     }
 
     @Override
-    public synchronized void store(
-            String url, Status status, Metadata metadata, Optional<Date> nextFetch, Tuple t)
-            throws Exception {
-        // check whether the batch needs sending
-        checkExecuteBatch();
-
-        final boolean isUpdate = !status.equals(Status.DISCOVERED);
-
-        // already have an entry for this DISCOVERED URL
-        if (!isUpdate && waitingAck.containsKey(url)) {
-            List<Tuple> list = waitingAck.get(url);
-            // add the tuple to the list for that url
-            list.add(t);
-            return;
-        }
+    protected void storeBatch(List<StatusUpdate> updates) throws Exception {
+        int numUpdates = 0;
+        int numInserts = 0;
+
+        // the same discovered URL can be found several times in a batch
+        Set<String> discovered = new HashSet<>();
+
+        try (PreparedStatement updateStmt = connection.prepareStatement(updateQuery);
+                PreparedStatement insertStmt = connection.prepareStatement(insertQuery)) {
+            for (StatusUpdate update : updates) {
+                if (update.getStatus().equals(Status.DISCOVERED)) {
+                    if (discovered.add(update.getUrl())) {
+                        setValues(insertStmt, update);
+                        insertStmt.addBatch();
+                        numInserts++;
+                    }
+                } else {
+                    setValues(updateStmt, update);
+                    updateStmt.addBatch();
+                    numUpdates++;
+                }
+            }
 
-        final StringBuilder mdAsString = new StringBuilder();
-        for (String mdKey : metadata.keySet()) {
-            String[] vals = metadata.getValues(mdKey);
-            for (String v : vals) {
-                mdAsString.append("\t").append(mdKey).append("=").append(v);
+            // updates first so that a URL discovered and updated
+            // within the same batch ends up with the updated values
+            if (numUpdates > 0) {
+                updateStmt.executeBatch();
+            }
+            if (numInserts > 0) {
+                insertStmt.executeBatch();
             }
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException e1) {
+                LOG.error("Could not rollback", e1);
+            }
+            throw e;
         }
 
+        LOG.debug("Batch of {} updates and {} inserts committed", numUpdates, numInserts);
+        eventCounter.scope("sql_updates_number").incrBy(numUpdates);
+        eventCounter.scope("sql_inserts_number").incrBy(numInserts);
+    }
+
+    private void setValues(PreparedStatement preparedStmt, StatusUpdate update)
+            throws SQLException {
+        String url = update.getUrl();
+        Metadata metadata = update.getMetadata();
+
         int partition = 0;
         String partitionKey = partitioner.getPartition(url, metadata);
         if (maxNumBuckets > 1) {
@@ -162,104 +202,36 @@ public class StatusUpdaterBolt extends AbstractStatusUpdaterBolt {
             partition = Math.abs(partitionKey.hashCode() % maxNumBuckets);
         }
 
-        PreparedStatement preparedStmt = this.insertPreparedStmt;
-
-        // create in table if does not already exist
-        if (isUpdate) {
-            preparedStmt = connection.prepareStatement(updateQuery);
-        }
-
         preparedStmt.setString(1, url);
-        preparedStmt.setString(2, status.toString());
-        if (nextFetch.isPresent()) {
-            final Timestamp tsp = Timestamp.from(nextFetch.get().toInstant());
+        preparedStmt.setString(2, update.getStatus().toString());
+        if (update.getNextFetch().isPresent()) {
+            final Timestamp tsp = Timestamp.from(update.getNextFetch().get().toInstant());
             preparedStmt.setObject(3, tsp);
         } else {
             // a value so large it means it will never be refetched
             preparedStmt.setObject(3, NEVER);
         }
-        preparedStmt.setString(4, mdAsString.toString());
-        preparedStmt.setInt(5, partition);
-        preparedStmt.setString(6, partitionKey);
-
-        // updates are not batched
-        if (isUpdate) {
-            preparedStmt.executeUpdate();
-            preparedStmt.close();
-            eventCounter.scope("sql_updates_number").incrBy(1);
-            super.ack(t, url);
-            return;
-        }
-
-        // code below is for inserts i.e. DISCOVERED URLs
-        preparedStmt.addBatch();
-
-        if (lastInsertBatchTime == -1) {
-            lastInsertBatchTime = System.currentTimeMillis();
-        }
-
-        // URL gets added to the cache in method ack
-        // once this method has returned
-        List<Tuple> ll = new java.util.ArrayList<Tuple>();
-        ll.add(t);
-
-        waitingAck.put(url, ll);
-
-        currentBatchSize++;
-
-        eventCounter.scope("sql_inserts_number").incrBy(1);
-    }
-
-    private synchronized void checkExecuteBatch() throws SQLException {
-        if (currentBatchSize == 0) {
-            return;
-        }
-        long now = System.currentTimeMillis();
-        // check whether the insert batches need executing
-        if ((currentBatchSize == batchMaxSize)) {
-            LOG.info("About to execute batch - triggered by size");
-        } else if (lastInsertBatchTime + (long) batchMaxIdleMsec < System.currentTimeMillis()) {
-            LOG.info(
-                    "About to execute batch - triggered by time. Due {}, now {}",
-                    lastInsertBatchTime + (long) batchMaxIdleMsec,
-                    now);
+        if (codec != null) {
+            preparedStmt.setNull(4, Types.VARCHAR);
+            preparedStmt.setBytes(7, codec.encode(metadata));
         } else {
-            return;
-        }
-
-        try {
-            long start = System.currentTimeMillis();
-            insertPreparedStmt.executeBatch();
-            long end = System.currentTimeMillis();
-
-            LOG.info("Batched {} inserts executed in {} msec", currentBatchSize, end - start);
-            waitingAck.forEach(
-                    (k, v) -> {
-                        for (Tuple t : v) {
-                            super.ack(t, k);
-                        }
-                    });
-        } catch (SQLException e) {
-            LOG.error(e.getMessage(), e);
-            // fail the entire batch
-            waitingAck.forEach(
-                    (k, v) -> {
-                        for (Tuple t : v) {
-                            super._collector.fail(t);
-                        }
-                    });
+            final StringBuilder mdAsString = new StringBuilder();
+            for (String mdKey : metadata.keySet()) {
+                String[] vals = metadata.getValues(mdKey);
+                for (String v : vals) {
+                    mdAsString.append("\t").append(mdKey).append("=").append(v);
+                }
+            }
+            preparedStmt.setString(4, mdAsString.toString());
         }
-
-        lastInsertBatchTime = System.currentTimeMillis();
-        currentBatchSize = 0;
-        waitingAck.clear();
-
-        insertPreparedStmt.close();
-        insertPreparedStmt = connection.prepareStatement(insertQuery);
+        preparedStmt.setInt(5, partition);
+        preparedStmt.setString(6, partitionKey);
     }
 
     @Override
     public void cleanup() {
+        // stores the pending updates
+        super.cleanup();
         if (connection != null)
             try {
                 connection.close();
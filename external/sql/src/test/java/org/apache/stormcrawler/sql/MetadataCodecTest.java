@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.sql;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+import org.apache.stormcrawler.Metadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MetadataCodecTest {
+
+    private static Metadata sample() {
+        Metadata md = new Metadata();
+        md.setValue("url.path", "https://www.example.com/");
+        md.setValue("depth", "2");
+        md.addValues("custom.key", List.of("a", "béta", ""));
+        md.setValue("another", "value\twith\ttabs");
+        return md;
+    }
+
+    private static void assertSame(Metadata expected, Metadata actual) {
+        Assertions.assertEquals(expected.keySet(), actual.keySet());
+        for (String key : expected.keySet()) {
+            Assertions.assertArrayEquals(expected.getValues(key), actual.getValues(key));
+        }
+    }
+
+    @Test
+    void testRoundTrip() {
+        MetadataCodec codec = new MetadataCodec(List.of("custom.key"), -1);
+        Metadata md = sample();
+        byte[] bytes = codec.encode(md);
+        assertSame(md, codec.decode(bytes));
+
+        // keys in the dictionary take less space than in the text format
+        int textLength = 0;
+        for (String key : md.keySet()) {
+            for (String value : md.getValues(key)) {
+                textLength += ("\t" + key + "=" + value).getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        Assertions.assertTrue(bytes.length < textLength);
+
+        // unknown keys are written as is
+        MetadataCodec other = new MetadataCodec(Collections.emptyList(), -1);
+        assertSame(md, other.decode(other.encode(md)));
+        assertSame(new Metadata(), codec.decode(codec.encode(new Metadata())));
+    }
+
+    @Test
+    void testCompression() {
+        MetadataCodec codec = new MetadataCodec(Collections.emptyList(), 64);
+        Metadata md = sample();
+        md.setValue("long", StringUtils.repeat("compressible ", 100));
+        byte[] bytes = codec.encode(md);
+        Assertions.assertTrue(bytes.length < 300);
+        assertSame(md, codec.decode(bytes));
+
+        // not compressed below the threshold
+        Metadata small = new Metadata();
+        small.setValue("depth", "1");
+        assertSame(small, codec.decode(codec.encode(small)));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.tika;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang.StringUtils;
+import org.apache.stormcrawler.util.ConfUtils;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+
+/**
+ * Runs the Tika parses on behalf of the {@link ParserBolt} so that a single pathological document
+ * can't stall the executor thread until the topology message timeout fails every tuple behind it.
+ * The isolation level is set with <i>parser.tika.isolation</i>:
+ *
+ * <ul>
+ *   <li><b>none</b> (default): the parse runs on the calling thread, without any time limit
+ *   <li><b>thread</b>: the parse runs on a worker thread watched by the caller. If it takes longer
+ *       than <i>parser.tika.timeout</i> msec, the worker is interrupted, abandoned and replaced by
+ *       a fresh one. A Java thread can't be killed: a parser ignoring the interruption keeps
+ *       running and burning CPU. Once <i>parser.tika.thread.max.abandoned</i> (default 4) abandoned
+ *       workers are still alive, the parses are rejected with a {@link RejectedExecutionException}
+ *       until some of them terminate; use the <b>fork</b> mode if that happens regularly.
+ *   <li><b>fork</b>: same as <b>thread</b> but the parsing happens in a pool of child JVMs managed
+ *       by Tika's {@link ForkParser}. A child exceeding the timeout is killed and a new one
+ *       started, which is the only way of reclaiming a parser stuck in a tight loop.
+ * </ul>
+ */
+class ParseSupervisor implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseSupervisor.class);
+
+    enum Mode {
+        NONE,
+        THREAD,
+        FORK
+    }
+
+    private static final AtomicInteger WORKER_COUNT = new AtomicInteger();
+
+    private final Mode mode;
+
+    private final long timeout;
+
+    private final Parser parser;
+
+    private ForkParser forkParser;
+
+    private ExecutorService worker;
+
+    /** thread of the current worker */
+    private Thread workerThread;
+
+    /** threads of the workers given up on after a timeout and possibly still running */
+    private final List<Thread> abandoned = new ArrayList<>();
+
+    private final int maxAbandoned;
+
+    private int recycled = 0;
+
+    ParseSupervisor(Map<String, Object> conf, Parser parser) {
+        String m = ConfUtils.getString(conf, "parser.tika.isolation", "none");
+        this.mode = Mode.valueOf(m.trim().toUpperCase(Locale.ROOT));
+        this.timeout = ConfUtils.getLong(conf, "parser.tika.timeout", 30000L);
+        this.maxAbandoned = ConfUtils.getInt(conf, "parser.tika.thread.max.abandoned", 4);
+
+        if (mode == Mode.FORK) {
+            forkParser = new ForkParser(getClass().getClassLoader(), parser);
+            forkParser.setPoolSize(ConfUtils.getInt(conf, "parser.tika.fork.pool.size", 1));
+            forkParser.setServerParseTimeoutMillis(timeout);
+            int maxFiles = ConfUtils.getInt(conf, "parser.tika.fork.max.files", -1);
+            if (maxFiles > 0) {
+                forkParser.setMaxFilesProcessedPerServer(maxFiles);
+            }
+            String javaCommand = ConfUtils.getString(conf, "parser.tika.fork.java.command");
+            if (StringUtils.isNotBlank(javaCommand)) {
+                List<String> command = Arrays.asList(javaCommand.trim().split("\\s+"));
+                forkParser.setJavaCommand(command);
+            }
+            this.parser = forkParser;
+        } else {
+            this.parser = parser;
+        }
+
+        if (mode != Mode.NONE) {
+            worker = newWorker();
+            LOG.info("Supervised parsing in {} mode with a timeout of {} msec", mode, timeout);
+        }
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Parses the input with the handler provided, throws a {@link TimeoutException} if the parse
+     * did not complete in time or a {@link RejectedExecutionException} if too many parses which
+     * timed out are still running. Any exception thrown by the parser is passed on as is. When
+     * supervised, the parse works on a copy of the metadata, which is copied back once it has
+     * completed: the metadata are left untouched after a timeout even if the parse carries on.
+     */
+    void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+            throws Exception {
+        if (mode == Mode.NONE) {
+            parser.parse(stream, handler, metadata, context);
+            return;
+        }
+
+        if (mode == Mode.THREAD) {
+            abandoned.removeIf(t -> !t.isAlive());
+            if (abandoned.size() >= maxAbandoned) {
+                throw new RejectedExecutionException(
+                        abandoned.size() + " parser threads which timed out are still running");
+            }
+        }
+
+        Metadata taskMetadata = new Metadata();
+        copy(metadata, taskMetadata);
+        Future<?> future =
+                worker.submit(
+                        () -> {
+                            parser.parse(stream, handler, taskMetadata, context);
+                            return null;
+                        });
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+            copy(taskMetadata, metadata);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            recycle();
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            // completed, what was extracted before the failure can be used
+            copy(taskMetadata, metadata);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Replaces the content of a metadata object with the one of another */
+    private static void copy(Metadata from, Metadata to) {
+        for (String name : to.names()) {
+            to.remove(name);
+        }
+        for (String name : from.names()) {
+            for (String value : from.getValues(name)) {
+                to.add(name, value);
+            }
+        }
+    }
+
+    /**
+     * Gives up on the current worker: there is no safe way of stopping a Java thread so it is left
+     * to die on its own after having been interrupted. The child JVM used in fork mode gets killed
+     * by the ForkParser once its parse timeout is reached.
+     */
+    private void recycle() {
+        recycled++;
+        worker.shutdownNow();
+        if (mode == Mode.THREAD && workerThread != null) {
+            abandoned.add(workerThread);
+        }
+        worker = newWorker();
+        LOG.warn("Parse timed out, recycled the worker ({} so far)", recycled);
+    }
+
+    private ExecutorService newWorker() {
+        workerThread = null;
+        return Executors.newSingleThreadExecutor(
+                r -> {
+                    Thread t = new Thread(r, "tika-parse-" + WORKER_COUNT.incrementAndGet());
+                    t.setDaemon(true);
+                    workerThread = t;
+                    return t;
+                });
+    }
+
+    @Override
+    public void close() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+        if (forkParser != null) {
+            forkParser.close();
+        }
+    }
+}
@@ -20,13 +20,17 @@ import static org.apache.stormcrawler.Constants.StatusStreamName;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 import org.apache.commons.lang.StringUtils;
 import org.apache.html.dom.HTMLDocumentImpl;
@@ -44,9 +48,9 @@ import org.apache.stormcrawler.Metadata;
 import org.apache.stormcrawler.filtering.URLFilters;
 import org.apache.stormcrawler.parse.Outlink;
 import org.apache.stormcrawler.parse.ParseData;
-import org.apache.stormcrawler.parse.ParseFilter;
 import org.apache.stormcrawler.parse.ParseFilters;
 import org.apache.stormcrawler.parse.ParseResult;
+import org.apache.stormcrawler.parse.UnchangedContentCheck;
 import org.apache.stormcrawler.persistence.Status;
 import org.apache.stormcrawler.protocol.ProtocolResponse;
 import org.apache.stormcrawler.util.ConfUtils;
@@ -55,6 +59,7 @@ import org.apache.stormcrawler.util.MetadataTransfer;
 import org.apache.stormcrawler.util.URLUtil;
 import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
@@ -76,7 +81,7 @@ public class ParserBolt extends BaseRichBolt {
     private Tika tika;
 
     private URLFilters urlFilters = null;
-    private ParseFilter parseFilters = null;
+    private ParseFilters parseFilters = null;
 
     private OutputCollector collector;
 
@@ -97,6 +102,16 @@ public class ParserBolt extends BaseRichBolt {
 
     private String protocolMDprefix;
 
+    private ParseSupervisor supervisor;
+
+    /** number of timeouts per mime-type * */
+    private MultiCountMetric timeoutCounter;
+
+    /** max number of characters of text to extract, -1 for unlimited * */
+    private int maxTextLength = -1;
+
+    private UnchangedContentCheck unchangedCheck;
+
     @Override
     public void prepare(
             @NotNull Map<String, Object> conf,
@@ -106,8 +121,10 @@ public class ParserBolt extends BaseRichBolt {
         emitOutlinks = ConfUtils.getBoolean(conf, "parser.emitOutlinks", true);
 
         urlFilters = URLFilters.fromConf(conf);
+        urlFilters.registerMetrics(context);
 
         parseFilters = ParseFilters.fromConf(conf);
+        parseFilters.registerMetrics(context);
 
         upperCaseElementNames = ConfUtils.getBoolean(conf, "parser.uppercase.element.names", true);
 
@@ -138,14 +155,22 @@ public class ParserBolt extends BaseRichBolt {
 
         protocolMDprefix = ConfUtils.getString(conf, ProtocolResponse.PROTOCOL_MD_PREFIX_PARAM, "");
 
+        maxTextLength = ConfUtils.getInt(conf, "parser.tika.max.text.length", -1);
+
         tika = instantiateTika(conf);
 
+        supervisor = new ParseSupervisor(conf, tika.getParser());
+
         this.collector = collector;
 
         this.eventCounter =
                 context.registerMetric(this.getClass().getSimpleName(), new MultiCountMetric(), 10);
 
+        this.timeoutCounter = context.registerMetric("parse_timeouts", new MultiCountMetric(), 10);
+
         this.metadataTransfer = MetadataTransfer.getInstance(conf);
+
+        this.unchangedCheck = new UnchangedContentCheck(conf);
     }
 
     @Override
@@ -157,6 +182,16 @@ public class ParserBolt extends BaseRichBolt {
         String url = tuple.getStringByField("url");
         Metadata metadata = (Metadata) tuple.getValueByField("metadata");
 
+        // same content as the previous fetch: nothing to parse or index
+        String contentHash = unchangedCheck.hash(content);
+        if (unchangedCheck.isUnchanged(contentHash, metadata)) {
+            LOG.info("Skipping unchanged {}", url);
+            collector.emit(StatusStreamName, tuple, new Values(url, metadata, Status.FETCHED));
+            collector.ack(tuple);
+            eventCounter.scope("skipped_unchanged").incrBy(1);
+            return;
+        }
+
         // check that the mimetype is in the whitelist
         if (!mimeTypeWhiteList.isEmpty()) {
             boolean mt_match = false;
@@ -211,7 +246,7 @@ public class ParserBolt extends BaseRichBolt {
         }
 
         LinkContentHandler linkHandler = new LinkContentHandler();
-        ContentHandler textHandler = new BodyContentHandler(-1);
+        ContentHandler textHandler = new BodyContentHandler(maxTextLength);
         TeeContentHandler teeHandler = new TeeContentHandler(linkHandler, textHandler);
         ParseContext parseContext = new ParseContext();
 
@@ -219,11 +254,15 @@ public class ParserBolt extends BaseRichBolt {
             parseContext.set(Parser.class, tika.getParser());
         }
 
-        try {
-            parseContext.set(
-                    HtmlMapper.class, InitialisationUtil.initializeFromClass(htmlMapperClass));
-        } catch (Exception e) {
-            LOG.error("Exception while specifying HTMLMapper {}", url, e);
+        // the parse context gets serialized to the child JVMs in fork mode
+        if (supervisor.getMode() != ParseSupervisor.Mode.FORK
+                || Serializable.class.isAssignableFrom(htmlMapperClass)) {
+            try {
+                parseContext.set(
+                        HtmlMapper.class, InitialisationUtil.initializeFromClass(htmlMapperClass));
+            } catch (Exception e) {
+                LOG.error("Exception while specifying HTMLMapper {}", url, e);
+            }
         }
 
         // build a DOM if required by the parseFilters
@@ -241,11 +280,28 @@ public class ParserBolt extends BaseRichBolt {
         // parse
         String text;
         try {
-            tika.getParser().parse(bais, teeHandler, md, parseContext);
+            supervisor.parse(bais, teeHandler, md, parseContext);
             text = textHandler.toString();
-        } catch (Throwable e) {
-            handleException(url, e, metadata, tuple, "parse error");
+        } catch (TimeoutException e) {
+            // the parse may still be running, don't read what it writes to
+            timeoutCounter.scope(getMimeType(httpCT)).incrBy(1);
+            handleException(url, null, metadata, tuple, "parse timeout");
             return;
+        } catch (RejectedExecutionException e) {
+            // too many runaway parses, try again later
+            LOG.warn("Parse of {} rejected: {}", url, e.getMessage());
+            eventCounter.scope("parse_rejected").incrBy(1);
+            collector.fail(tuple);
+            return;
+        } catch (Throwable e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                handleException(url, e, metadata, tuple, "parse error");
+                return;
+            }
+            // keep what has been extracted so far
+            text = textHandler.toString();
+            metadata.setValue("parse.text.truncated", "true");
+            eventCounter.scope("text_truncated").incrBy(1);
         } finally {
             try {
                 bais.close();
@@ -293,6 +349,9 @@ public class ParserBolt extends BaseRichBolt {
             }
         }
 
+        // only now that the document is known to be parsed and indexed successfully
+        unchangedCheck.setHash(contentHash, metadata);
+
         // emit each document/subdocument in the ParseResult object
         // there should be at least one ParseData item for the "parent" URL
 
@@ -312,6 +371,21 @@ public class ParserBolt extends BaseRichBolt {
         eventCounter.scope("tuple_success").incrBy(1);
     }
 
+    /**
+     * Returns the mime-type sent by the server without its parameters, used as scope for the
+     * timeout metrics
+     */
+    private static String getMimeType(String mimeType) {
+        if (StringUtils.isBlank(mimeType)) {
+            return "unknown";
+        }
+        int semicolon = mimeType.indexOf(';');
+        if (semicolon != -1) {
+            mimeType = mimeType.substring(0, semicolon);
+        }
+        return mimeType.trim().toLowerCase(Locale.ROOT);
+    }
+
     private Tika instantiateTika(Map<String, Object> conf) {
         Tika tika = null;
         String tikaConfigFile =
@@ -428,5 +502,11 @@ public class ParserBolt extends BaseRichBolt {
         if (parseFilters != null) {
             parseFilters.cleanup();
         }
+        if (urlFilters != null) {
+            urlFilters.cleanup();
+        }
+        if (supervisor != null) {
+            supervisor.close();
+        }
     }
 }
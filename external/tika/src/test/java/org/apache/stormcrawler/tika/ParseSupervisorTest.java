@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stormcrawler.tika;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AbstractParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+class ParseSupervisorTest {
+
+    /**
+     * Hangs on any input starting with 'loop' until released, writes the input as text and to the
+     * metadata
+     */
+    private static class SlowParser extends AbstractParser {
+
+        private static volatile boolean release = false;
+
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void parse(
+                InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws IOException, SAXException, TikaException {
+            String input = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            if (input.startsWith("loop")) {
+                while (!release) {
+                    // ignores interruptions on purpose
+                }
+            }
+            metadata.set("parsed", input);
+            XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+            xhtml.startDocument();
+            xhtml.element("p", input);
+            xhtml.endDocument();
+        }
+    }
+
+    private static String parse(ParseSupervisor supervisor, String input) throws Exception {
+        BodyContentHandler handler = new BodyContentHandler(-1);
+        supervisor.parse(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                handler,
+                new Metadata(),
+                new ParseContext());
+        return handler.toString().trim();
+    }
+
+    @Test
+    void testTimeoutAndRecycle() throws Exception {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put("parser.tika.isolation", "thread");
+        conf.put("parser.tika.timeout", 200);
+        SlowParser.release = false;
+        try (ParseSupervisor supervisor = new ParseSupervisor(conf, new SlowParser())) {
+            Assertions.assertEquals(ParseSupervisor.Mode.THREAD, supervisor.getMode());
+            Assertions.assertEquals("first", parse(supervisor, "first"));
+            Assertions.assertThrows(TimeoutException.class, () -> parse(supervisor, "loop"));
+            // normal documents keep flowing
+            Assertions.assertEquals("second", parse(supervisor, "second"));
+        } finally {
+            SlowParser.release = true;
+        }
+    }
+
+    @Test
+    void testMetadataAfterTimeout() throws Exception {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put("parser.tika.isolation", "thread");
+        conf.put("parser.tika.timeout", 200);
+        SlowParser.release = false;
+        try (ParseSupervisor supervisor = new ParseSupervisor(conf, new SlowParser())) {
+            Metadata metadata = new Metadata();
+            metadata.set("clue", "value");
+            Assertions.assertThrows(
+                    TimeoutException.class,
+                    () ->
+                            supervisor.parse(
+                                    new ByteArrayInputStream(
+                                            "loop".getBytes(StandardCharsets.UTF_8)),
+                                    new BodyContentHandler(-1),
+                                    metadata,
+                                    new ParseContext()));
+            // the abandoned parse completes later on
+            SlowParser.release = true;
+            Thread.sleep(200);
+            Assertions.assertNull(metadata.get("parsed"));
+            Assertions.assertEquals("value", metadata.get("clue"));
+
+            supervisor.parse(
+                    new ByteArrayInputStream("text".getBytes(StandardCharsets.UTF_8)),
+                    new BodyContentHandler(-1),
+                    metadata,
+                    new ParseContext());
+            Assertions.assertEquals("text", metadata.get("parsed"));
+            Assertions.assertEquals("value", metadata.get("clue"));
+        } finally {
+            SlowParser.release = true;
+        }
+    }
+
+    @Test
+    void testMaxAbandoned() throws Exception {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put("parser.tika.isolation", "thread");
+        conf.put("parser.tika.timeout", 200);
+        conf.put("parser.tika.thread.max.abandoned", 1);
+        SlowParser.release = false;
+        try (ParseSupervisor supervisor = new ParseSupervisor(conf, new SlowParser())) {
+            Assertions.assertThrows(TimeoutException.class, () -> parse(supervisor, "loop"));
+            // the runaway thread is still there
+            Assertions.assertThrows(
+                    RejectedExecutionException.class, () -> parse(supervisor, "text"));
+            SlowParser.release = true;
+            Thread.sleep(200);
+            Assertions.assertEquals("text", parse(supervisor, "text"));
+        } finally {
+            SlowParser.release = true;
+        }
+    }
+
+    @Test
+    void testExceptionsPassedOn() {
+        Map<String, Object> conf = new HashMap<>();
+        conf.put("parser.tika.isolation", "thread");
+        try (ParseSupervisor supervisor = new ParseSupervisor(conf, new SlowParser())) {
+            Assertions.assertThrows(
+                    SAXException.class,
+                    () ->
+                            supervisor.parse(
+                                    new ByteArrayInputStream(
+                                            "too long".getBytes(StandardCharsets.UTF_8)),
+                                    new BodyContentHandler(3),
+                                    new Metadata(),
+                                    new ParseContext()));
+        }
+    }
+
+    @Test
+    void testDefaultMode() throws Exception {
+        try (ParseSupervisor supervisor = new ParseSupervisor(new HashMap<>(), new SlowParser())) {
+            Assertions.assertEquals(ParseSupervisor.Mode.NONE, supervisor.getMode());
+            Assertions.assertEquals("text", parse(supervisor, "text"));
+        }
+    }
+}